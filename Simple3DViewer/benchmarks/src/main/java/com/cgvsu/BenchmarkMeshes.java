@@ -0,0 +1,47 @@
+package com.cgvsu;
+
+import java.util.Locale;
+
+// Модели для замеров, одинаковые от прогона к прогону
+public final class BenchmarkMeshes {
+
+    private BenchmarkMeshes() {
+    }
+
+    // Сфера радиуса 1 из четырехугольников, примерно polygonCount штук, с волнами по поверхности,
+    // чтобы соседние грани освещались по-разному. Текст в формате OBJ, как его пишут редакторы:
+    // вершины, текстурные координаты и грани вида v/vt.
+    public static String sphereObj(int polygonCount) {
+        final int segments = Math.max(4, (int) Math.sqrt(2.0 * polygonCount));
+        final int rings = Math.max(2, segments / 2);
+        StringBuilder result = new StringBuilder(64 * segments * rings);
+        for (int ring = 0; ring <= rings; ring++) {
+            final double theta = Math.PI * ring / rings;
+            for (int segment = 0; segment < segments; segment++) {
+                final double phi = 2 * Math.PI * segment / segments;
+                final double radius = 1 + 0.05 * Math.sin(8 * phi) * Math.sin(8 * theta);
+                result.append(String.format(Locale.ROOT, "v %.6f %.6f %.6f%n",
+                        radius * Math.sin(theta) * Math.cos(phi),
+                        radius * Math.cos(theta),
+                        radius * Math.sin(theta) * Math.sin(phi)));
+                result.append(String.format(Locale.ROOT, "vt %.6f %.6f%n",
+                        (double) segment / segments, (double) ring / rings));
+            }
+        }
+        for (int ring = 0; ring < rings; ring++) {
+            for (int segment = 0; segment < segments; segment++) {
+                // Индексы в OBJ начинаются с единицы
+                final int a = ring * segments + segment + 1;
+                final int b = ring * segments + (segment + 1) % segments + 1;
+                final int c = b + segments;
+                final int d = a + segments;
+                result.append("f ")
+                        .append(a).append('/').append(a).append(' ')
+                        .append(b).append('/').append(b).append(' ')
+                        .append(c).append('/').append(c).append(' ')
+                        .append(d).append('/').append(d).append('\n');
+            }
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,87 @@
+package com.cgvsu.math;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Операции с матрицами и векторами в том виде, в каком их вызывает рендер: на месте, в заранее созданные объекты.
+// Для сравнения есть и варианты, создающие новый объект на каждый вызов.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MathBenchmark {
+
+    private final Matrix4f left = new Matrix4f();
+    private final Matrix4f right = new Matrix4f();
+    private final Matrix4f result = new Matrix4f();
+    private final Vector3f eye = new Vector3f(3, 4, 5);
+    private final Vector3f target = new Vector3f(0, 0, 0);
+    private final Vector3f up = new Vector3f(0, 1, 0);
+    private final Vector3f first = new Vector3f(1, 2, 3);
+    private final Vector3f second = new Vector3f(-4, 5, 0.5F);
+    private final Vector3f vectorResult = new Vector3f();
+    private final Vector4f pointResult = new Vector4f();
+
+    @Setup
+    public void setup() {
+        left.setPerspective(1.0F, 1.5F, 0.1F, 100);
+        right.setLookAt(eye, target, up);
+    }
+
+    @Benchmark
+    public Matrix4f mul() {
+        return result.mul(left, right);
+    }
+
+    @Benchmark
+    public Matrix4f multiplyAllocating() {
+        return left.multiply(right);
+    }
+
+    @Benchmark
+    public Matrix4f inverse() {
+        return result.setInverse(right);
+    }
+
+    @Benchmark
+    public Matrix4f lookAt() {
+        return result.setLookAt(eye, target, up);
+    }
+
+    @Benchmark
+    public Matrix4f perspective() {
+        return result.setPerspective(1.0F, 1.5F, 0.1F, 100);
+    }
+
+    @Benchmark
+    public Vector4f transformPoint() {
+        return left.transformPoint(first, pointResult);
+    }
+
+    @Benchmark
+    public Vector3f cross() {
+        return first.cross(second, vectorResult);
+    }
+
+    @Benchmark
+    public Vector3f crossAllocating() {
+        return first.cross(second);
+    }
+
+    @Benchmark
+    public Vector3f normalize() {
+        return second.normalize(vectorResult);
+    }
+}
@@ -0,0 +1,87 @@
+package com.cgvsu.objreader;
+
+import com.cgvsu.BenchmarkMeshes;
+import com.cgvsu.model.Model;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Разбор OBJ с диска: последовательный и параллельный. Кроме разборов в секунду JMH выводит
+// megabytes и faces - те же величины в мегабайтах и гранях в секунду.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ObjReaderBenchmark {
+
+    @Param({"10000", "1000000"})
+    public int polygonCount;
+
+    private Path file;
+    private long fileSize;
+    private int faceCount;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Throughput {
+        public double megabytes;
+        public long faces;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            megabytes = 0;
+            faces = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void createFile() throws IOException {
+        file = Files.createTempFile("benchmark", ".obj");
+        Files.writeString(file, BenchmarkMeshes.sphereObj(polygonCount), StandardCharsets.UTF_8);
+        fileSize = Files.size(file);
+        faceCount = ObjReader.read(file).getPolygonCount();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public Model read(Throughput throughput) throws IOException {
+        Model result = ObjReader.read(file);
+        count(throughput);
+        return result;
+    }
+
+    @Benchmark
+    public Model readParallel(Throughput throughput) throws IOException {
+        Model result = ObjReader.readParallel(file);
+        count(throughput);
+        return result;
+    }
+
+    private void count(Throughput throughput) {
+        throughput.megabytes += fileSize / (1024.0 * 1024.0);
+        throughput.faces += faceCount;
+    }
+}
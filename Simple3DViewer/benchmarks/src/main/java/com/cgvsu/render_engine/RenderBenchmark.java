@@ -0,0 +1,73 @@
+package com.cgvsu.render_engine;
+
+import com.cgvsu.BenchmarkMeshes;
+import com.cgvsu.math.Vector3f;
+import com.cgvsu.model.Model;
+import com.cgvsu.objreader.ObjReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Полный кадр закраской в FrameBuffer, без JavaFX: отсечение кусков, перевод вершин, построение треугольников
+// и растеризация. Камера смотрит на сферу целиком, уровни детализации не строятся.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Thread)
+public class RenderBenchmark {
+
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+
+    @Param({"10000", "100000", "1000000"})
+    public int polygonCount;
+
+    @Param({"1", "4"})
+    public int threadCount;
+
+    @Param({"false", "true"})
+    public boolean backFaceCulling;
+
+    private Model mesh;
+    private Camera camera;
+    private RenderEngine renderEngine;
+    private FrameBuffer frameBuffer;
+
+    @Setup
+    public void setup() {
+        mesh = ObjReader.read(BenchmarkMeshes.sphereObj(polygonCount));
+        MeshRenderData.of(mesh);
+        camera = new Camera(new Vector3f(0, 1, 3), new Vector3f(0, 0, 0), 1.0F, (float) WIDTH / HEIGHT, 0.01F, 100);
+        renderEngine = new RenderEngine();
+        renderEngine.setRenderMode(RenderMode.FILLED);
+        renderEngine.setLevelOfDetail(false);
+        renderEngine.setThreadCount(threadCount);
+        renderEngine.setBackFaceCulling(backFaceCulling);
+        frameBuffer = new FrameBuffer(WIDTH, HEIGHT);
+    }
+
+    @TearDown
+    public void tearDown() {
+        // Освобождает пул потоков закраски
+        renderEngine.setThreadCount(1);
+    }
+
+    @Benchmark
+    public FrameBuffer render() {
+        renderEngine.render(frameBuffer, camera, mesh);
+        return frameBuffer;
+    }
+}
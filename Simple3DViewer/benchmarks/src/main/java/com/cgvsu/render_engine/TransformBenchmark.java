@@ -0,0 +1,94 @@
+package com.cgvsu.render_engine;
+
+import com.cgvsu.math.Matrix4f;
+import com.cgvsu.math.Vector2f;
+import com.cgvsu.math.Vector3f;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Перевод вершин на экран: по одной через multiplyMatrix4ByVector3 и vertexToPoint, пакетно по разложенным
+// координатам скалярным циклом и пакетно через transformVertices, который в этом форке векторный:
+// JVM запускается с jdk.incubator.vector.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Thread)
+public class TransformBenchmark {
+
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 800;
+
+    @Param({"4096", "1048576"})
+    public int vertexCount;
+
+    private Matrix4f matrix;
+    private float[] xs;
+    private float[] ys;
+    private float[] zs;
+    private float[] screenXs;
+    private float[] screenYs;
+    private float[] depths;
+    private float[] ws;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        xs = new float[vertexCount];
+        ys = new float[vertexCount];
+        zs = new float[vertexCount];
+        for (int i = 0; i < vertexCount; i++) {
+            xs[i] = random.nextFloat() * 10 - 5;
+            ys[i] = random.nextFloat() * 10 - 5;
+            zs[i] = random.nextFloat() * 10 - 5;
+        }
+        matrix = GraphicConveyor.perspective(1.0F, 1, 0.1F, 100)
+                .mul(GraphicConveyor.lookAt(new Vector3f(0, 0, 20), new Vector3f(0, 0, 0)));
+        screenXs = new float[vertexCount];
+        screenYs = new float[vertexCount];
+        depths = new float[vertexCount];
+        ws = new float[vertexCount];
+    }
+
+    @Benchmark
+    public void perVertex(Blackhole blackhole) {
+        for (int i = 0; i < vertexCount; i++) {
+            Vector3f projected = GraphicConveyor.multiplyMatrix4ByVector3(matrix, new Vector3f(xs[i], ys[i], zs[i]));
+            Vector2f point = GraphicConveyor.vertexToPoint(projected, WIDTH, HEIGHT);
+            screenXs[i] = point.getX();
+            screenYs[i] = point.getY();
+        }
+        blackhole.consume(screenXs);
+    }
+
+    @Benchmark
+    public void batchScalar(Blackhole blackhole) {
+        GraphicConveyor.transformVerticesScalar(
+                matrix, xs, ys, zs, 0, vertexCount, 0, WIDTH, HEIGHT, screenXs, screenYs, depths, ws);
+        blackhole.consume(screenXs);
+    }
+
+    @Benchmark
+    public void batchVectorized(Blackhole blackhole) {
+        if (!GraphicConveyor.isVectorized()) {
+            throw new IllegalStateException("Модуль jdk.incubator.vector не подключен");
+        }
+        GraphicConveyor.transformVertices(
+                matrix, xs, ys, zs, 0, vertexCount, WIDTH, HEIGHT, screenXs, screenYs, depths, ws);
+        blackhole.consume(screenXs);
+    }
+}
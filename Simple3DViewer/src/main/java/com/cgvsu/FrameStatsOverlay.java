@@ -0,0 +1,94 @@
+package com.cgvsu;
+
+import com.cgvsu.render_engine.FrameStats;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+
+import java.util.Locale;
+
+// Панель поверх кадра: FPS, медиана и 99-й процентиль времени кадра, стадии последнего кадра и график
+// времени последних GRAPH_FRAMES кадров. Рисуется тем же GraphicsContext сразу после кадра.
+class FrameStatsOverlay {
+
+    private static final int GRAPH_FRAMES = 120;
+    private static final double MARGIN = 10;
+    private static final double PADDING = 8;
+    private static final double LINE_HEIGHT = 16;
+    private static final double WIDTH = 2 * PADDING + 2 * GRAPH_FRAMES;
+    private static final double GRAPH_HEIGHT = 60;
+    // Линия на графике - бюджет кадра при 60 FPS
+    private static final double TARGET_FRAME_MS = 1000.0 / 60;
+
+    private static final Color BACKGROUND = Color.rgb(0, 0, 0, 0.65);
+    private static final Color TEXT = Color.WHITE;
+    private static final Color BAR = Color.rgb(120, 200, 120);
+    private static final Color SLOW_BAR = Color.rgb(230, 110, 90);
+    private static final Color TARGET_LINE = Color.rgb(255, 255, 255, 0.5);
+    private static final Font FONT = Font.font("Monospaced", 12);
+
+    void draw(GraphicsContext graphicsContext, FrameStats stats) {
+        final int size = stats.size();
+        String[] lines;
+        if (size == 0) {
+            lines = new String[]{"No frames yet"};
+        } else {
+            final int last = size - 1;
+            final long allocated = stats.getAllocatedBytes(last);
+            lines = new String[]{
+                    String.format(Locale.ROOT, "FPS %.1f", stats.getFramesPerSecond()),
+                    String.format(Locale.ROOT, "frame p50 %.2f ms  p99 %.2f ms",
+                            toMillis(stats.getFrameTimePercentile(50)), toMillis(stats.getFrameTimePercentile(99))),
+                    String.format(Locale.ROOT, "last  %.2f ms", toMillis(stats.getFrameTime(last))),
+                    String.format(Locale.ROOT, "  setup %.2f  transform %.2f",
+                            toMillis(stats.getStageTime(last, FrameStats.Stage.SETUP)),
+                            toMillis(stats.getStageTime(last, FrameStats.Stage.TRANSFORM))),
+                    String.format(Locale.ROOT, "  draw %.2f  present %.2f",
+                            toMillis(stats.getStageTime(last, FrameStats.Stage.DRAW)),
+                            toMillis(stats.getStageTime(last, FrameStats.Stage.PRESENT))),
+                    String.format(Locale.ROOT, "vertices %d  polygons %d",
+                            stats.getVertexCount(last), stats.getPolygonCount(last)),
+                    allocated == FrameStats.NOT_AVAILABLE
+                            ? "allocated n/a"
+                            : String.format(Locale.ROOT, "allocated %.1f KB", allocated / 1024.0)
+            };
+        }
+
+        final double height = 2 * PADDING + lines.length * LINE_HEIGHT + PADDING + GRAPH_HEIGHT;
+        graphicsContext.save();
+        graphicsContext.setFill(BACKGROUND);
+        graphicsContext.fillRect(MARGIN, MARGIN, WIDTH, height);
+
+        graphicsContext.setFont(FONT);
+        graphicsContext.setFill(TEXT);
+        double y = MARGIN + PADDING;
+        for (String line : lines) {
+            y += LINE_HEIGHT;
+            graphicsContext.fillText(line, MARGIN + PADDING, y - 4);
+        }
+
+        // Масштаб графика такой, чтобы линия бюджета кадра и самые долгие кадры помещались
+        final int graphFrames = Math.min(size, GRAPH_FRAMES);
+        double maxMillis = 2 * TARGET_FRAME_MS;
+        for (int i = size - graphFrames; i < size; ++i) {
+            maxMillis = Math.max(maxMillis, toMillis(stats.getFrameTime(i)));
+        }
+        final double graphBottom = y + PADDING + GRAPH_HEIGHT;
+        final double barWidth = (WIDTH - 2 * PADDING) / GRAPH_FRAMES;
+        for (int i = 0; i < graphFrames; ++i) {
+            final double millis = toMillis(stats.getFrameTime(size - graphFrames + i));
+            final double barHeight = GRAPH_HEIGHT * millis / maxMillis;
+            graphicsContext.setFill(millis > TARGET_FRAME_MS ? SLOW_BAR : BAR);
+            graphicsContext.fillRect(MARGIN + PADDING + i * barWidth, graphBottom - barHeight, barWidth, barHeight);
+        }
+        final double targetY = graphBottom - GRAPH_HEIGHT * TARGET_FRAME_MS / maxMillis;
+        graphicsContext.setStroke(TARGET_LINE);
+        graphicsContext.setLineWidth(1);
+        graphicsContext.strokeLine(MARGIN + PADDING, targetY, MARGIN + WIDTH - PADDING, targetY);
+        graphicsContext.restore();
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -1,29 +1,43 @@
 package com.cgvsu;
 
+import com.cgvsu.render_engine.MeshRenderData;
 import com.cgvsu.render_engine.RenderEngine;
+import com.cgvsu.render_engine.RenderMode;
 import javafx.fxml.FXML;
-import javafx.animation.Animation;
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
+import javafx.animation.AnimationTimer;
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.scene.canvas.Canvas;
+import javafx.scene.control.Alert;
+import javafx.scene.control.CheckMenuItem;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.control.TextInputDialog;
 import javafx.scene.layout.AnchorPane;
 import javafx.stage.Stage;
 import javafx.stage.FileChooser;
-import javafx.util.Duration;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.io.IOException;
+import java.io.Writer;
 import java.io.File;
-import javax.vecmath.Vector3f;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import com.cgvsu.math.Vector3f;
 
 import com.cgvsu.model.Model;
-import com.cgvsu.objreader.ObjReader;
+import com.cgvsu.objreader.LoadMonitor;
+import com.cgvsu.objreader.ModelCache;
 import com.cgvsu.render_engine.Camera;
+import com.cgvsu.render_engine.LevelOfDetail;
+import com.cgvsu.scene.ModelInstance;
+import com.cgvsu.scene.Scene;
 
 public class GuiController {
 
     final private float TRANSLATION = 0.5F;
+    // Расстояние между копиями в сетке, в размерах модели
+    final private float COPY_SPACING = 1.5F;
+    final private int MAX_COPIES = 100_000;
 
     @FXML
     AnchorPane anchorPane;
@@ -31,37 +45,122 @@ public class GuiController {
     @FXML
     private Canvas canvas;
 
+    @FXML
+    private ProgressBar loadProgressBar;
+
+    @FXML
+    private CheckMenuItem filledModeMenuItem;
+
+    @FXML
+    private CheckMenuItem backFaceCullingMenuItem;
+
+    @FXML
+    private CheckMenuItem levelOfDetailMenuItem;
+
+    @FXML
+    private CheckMenuItem frameStatsMenuItem;
+
+    // Меняется только в потоке JavaFX, поэтому пока новая модель грузится, рисуется старая
     private Model mesh = null;
+    // Копии mesh, которые рисуются в кадре. После загрузки модели копия одна.
+    private final Scene scene = new Scene();
+
+    // Недавно открытые модели держим в памяти, чтобы переключение между ними не читало файл заново.
+    // В бюджет входят и данные для рендера с уровнями детализации: они живут, пока кэш держит модель.
+    private final ModelCache modelCache =
+            new ModelCache(Runtime.getRuntime().maxMemory() / 4, RenderEngine::estimateRetainedBytes);
 
     private Camera camera = new Camera(
             new Vector3f(0, 00, 100),
             new Vector3f(0, 0, 0),
             1.0F, 1, 0.01F, 100);
 
-    private Timeline timeline;
+    private final RenderEngine renderEngine = new RenderEngine();
+    private final FrameStatsOverlay frameStatsOverlay = new FrameStatsOverlay();
+
+    // Кадр рисуется, только если с прошлого кадра поменялись камера, размер холста, модель или режим.
+    // Все, что может их поменять, будит таймер через requestRender, а таймер засыпает, как только рисовать нечего,
+    // так что в простое окно не тратит процессор.
+    private final AnimationTimer renderTimer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            if (!renderIfChanged()) {
+                stop();
+            }
+        }
+    };
+
+    private long renderedCameraVersion = -1;
+    private double renderedWidth = -1;
+    private double renderedHeight = -1;
+    private long renderedSceneVersion = -1;
+    private RenderMode renderedMode = null;
+    private boolean renderedBackFaceCulling = false;
+    private boolean renderedLevelOfDetail = true;
+    private boolean renderedFrameStats = false;
+
+    // Модели читаются в отдельном фоновом потоке, чтобы окно не зависало на время загрузки
+    private final ExecutorService loadExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "model-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ModelLoadTask loadTask;
+
+    // Упрощенные версии модели строятся в своем потоке, чтобы не задерживать загрузку следующей модели
+    private final ExecutorService levelOfDetailExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "level-of-detail-builder");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
 
     @FXML
     private void initialize() {
         anchorPane.prefWidthProperty().addListener((ov, oldValue, newValue) -> canvas.setWidth(newValue.doubleValue()));
         anchorPane.prefHeightProperty().addListener((ov, oldValue, newValue) -> canvas.setHeight(newValue.doubleValue()));
 
-        timeline = new Timeline();
-        timeline.setCycleCount(Animation.INDEFINITE);
+        canvas.widthProperty().addListener((ov, oldValue, newValue) -> requestRender());
+        canvas.heightProperty().addListener((ov, oldValue, newValue) -> requestRender());
 
-        KeyFrame frame = new KeyFrame(Duration.millis(15), event -> {
-            double width = canvas.getWidth();
-            double height = canvas.getHeight();
+        requestRender();
+    }
 
-            canvas.getGraphicsContext2D().clearRect(0, 0, width, height);
-            camera.setAspectRatio((float) (width / height));
+    private void requestRender() {
+        renderTimer.start();
+    }
 
-            if (mesh != null) {
-                RenderEngine.render(canvas.getGraphicsContext2D(), camera, mesh, (int) width, (int) height);
-            }
-        });
+    private boolean renderIfChanged() {
+        double width = canvas.getWidth();
+        double height = canvas.getHeight();
+        camera.setAspectRatio((float) (width / height));
 
-        timeline.getKeyFrames().add(frame);
-        timeline.play();
+        if (camera.getVersion() == renderedCameraVersion
+                && width == renderedWidth && height == renderedHeight
+                && scene.getVersion() == renderedSceneVersion && renderEngine.getRenderMode() == renderedMode
+                && renderEngine.isBackFaceCulling() == renderedBackFaceCulling
+                && renderEngine.isLevelOfDetail() == renderedLevelOfDetail
+                && frameStatsMenuItem.isSelected() == renderedFrameStats) {
+            return false;
+        }
+        renderedCameraVersion = camera.getVersion();
+        renderedWidth = width;
+        renderedHeight = height;
+        renderedSceneVersion = scene.getVersion();
+        renderedMode = renderEngine.getRenderMode();
+        renderedBackFaceCulling = renderEngine.isBackFaceCulling();
+        renderedLevelOfDetail = renderEngine.isLevelOfDetail();
+        renderedFrameStats = frameStatsMenuItem.isSelected();
+
+        canvas.getGraphicsContext2D().clearRect(0, 0, width, height);
+        if (!scene.isEmpty()) {
+            renderEngine.render(canvas.getGraphicsContext2D(), camera, scene, (int) width, (int) height);
+        }
+        if (renderedFrameStats) {
+            frameStatsOverlay.draw(canvas.getGraphicsContext2D(), renderEngine.getFrameStats());
+        }
+        return true;
     }
 
     @FXML
@@ -76,43 +175,239 @@ public class GuiController {
         }
 
         Path fileName = Path.of(file.getAbsolutePath());
+        loadModel(fileName);
+    }
+
+    @FXML
+    private void onFilledModeMenuItemClick() {
+        renderEngine.setRenderMode(filledModeMenuItem.isSelected() ? RenderMode.FILLED : RenderMode.WIREFRAME);
+        requestRender();
+    }
+
+    @FXML
+    private void onBackFaceCullingMenuItemClick() {
+        renderEngine.setBackFaceCulling(backFaceCullingMenuItem.isSelected());
+        requestRender();
+    }
+
+    @FXML
+    private void onLevelOfDetailMenuItemClick() {
+        renderEngine.setLevelOfDetail(levelOfDetailMenuItem.isSelected());
+        requestRender();
+    }
+
+    @FXML
+    private void onFrameStatsMenuItemClick() {
+        requestRender();
+    }
+
+    // Формат выбирается по расширению: .json или CSV для всего остального
+    @FXML
+    private void onExportFrameStatsMenuItemClick() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("CSV (*.csv)", "*.csv"),
+                new FileChooser.ExtensionFilter("JSON (*.json)", "*.json"));
+        fileChooser.setTitle("Export Frame Stats");
+        fileChooser.setInitialFileName("frame-stats.csv");
+
+        File file = fileChooser.showSaveDialog((Stage) canvas.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
 
-        try {
-            String fileContent = Files.readString(fileName);
-            mesh = ObjReader.read(fileContent);
-            // todo: обработка ошибок
-        } catch (IOException exception) {
+        try (Writer writer = Files.newBufferedWriter(file.toPath())) {
+            if (file.getName().toLowerCase().endsWith(".json")) {
+                renderEngine.getFrameStats().writeJson(writer);
+            } else {
+                renderEngine.getFrameStats().writeCsv(writer);
+            }
+        } catch (IOException e) {
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Export Frame Stats");
+            alert.setHeaderText("Не удалось сохранить " + file.getName());
+            alert.setContentText(String.valueOf(e.getMessage()));
+            alert.show();
+        }
+    }
 
+    // Копии модели ставятся квадратной сеткой в плоскости xz, первая остается на месте модели
+    @FXML
+    private void onCopiesMenuItemClick() {
+        if (mesh == null) {
+            return;
         }
+        TextInputDialog dialog = new TextInputDialog(String.valueOf(scene.size()));
+        dialog.setTitle("Copies");
+        dialog.setHeaderText("Number of model copies");
+        dialog.showAndWait().ifPresent(text -> {
+            final int count;
+            try {
+                count = Integer.parseInt(text.trim());
+            } catch (NumberFormatException e) {
+                showCopiesError("Не число: " + text);
+                return;
+            }
+            if (count < 1 || count > MAX_COPIES) {
+                showCopiesError("Число копий должно быть от 1 до " + MAX_COPIES);
+                return;
+            }
+            arrangeCopies(count);
+            requestRender();
+        });
+    }
+
+    private void arrangeCopies(int count) {
+        final float[] bounds = MeshRenderData.of(mesh).getBounds();
+        final float size = Math.max(bounds[3] - bounds[0], bounds[5] - bounds[2]);
+        final float step = size > 0 ? COPY_SPACING * size : 1;
+        final int columns = (int) Math.ceil(Math.sqrt(count));
+
+        scene.clear();
+        for (int i = 0; i < count; ++i) {
+            ModelInstance instance = scene.add(mesh);
+            instance.setTranslation((i % columns) * step, 0, -(i / columns) * step);
+        }
+    }
+
+    private void showCopiesError(String message) {
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.setTitle("Copies");
+        alert.setHeaderText(message);
+        alert.show();
+    }
+
+    @FXML
+    private void onCancelLoadingMenuItemClick() {
+        if (loadTask != null) {
+            loadTask.cancel();
+        }
+    }
+
+    private void loadModel(Path fileName) {
+        // Новая загрузка заменяет незаконченную предыдущую
+        onCancelLoadingMenuItemClick();
+
+        ModelLoadTask task = new ModelLoadTask(modelCache, fileName);
+
+        task.setOnSucceeded(event -> {
+            mesh = task.getValue();
+            scene.clear();
+            scene.add(mesh);
+            finishLoading(task);
+            requestRender();
+            buildLevelOfDetail(mesh);
+        });
+        task.setOnFailed(event -> {
+            finishLoading(task);
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Load Model");
+            alert.setHeaderText("Не удалось загрузить " + fileName.getFileName());
+            alert.setContentText(String.valueOf(task.getException().getMessage()));
+            alert.show();
+        });
+        task.setOnCancelled(event -> finishLoading(task));
+
+        loadTask = task;
+        loadProgressBar.progressProperty().bind(task.progressProperty());
+        loadProgressBar.setVisible(true);
+        loadExecutor.execute(task);
+    }
+
+    private void finishLoading(ModelLoadTask task) {
+        if (loadTask != task) {
+            return;
+        }
+        loadTask = null;
+        loadProgressBar.progressProperty().unbind();
+        loadProgressBar.setVisible(false);
     }
 
     @FXML
     public void handleCameraForward(ActionEvent actionEvent) {
         camera.movePosition(new Vector3f(0, 0, -TRANSLATION));
+        requestRender();
     }
 
     @FXML
     public void handleCameraBackward(ActionEvent actionEvent) {
         camera.movePosition(new Vector3f(0, 0, TRANSLATION));
+        requestRender();
     }
 
     @FXML
     public void handleCameraLeft(ActionEvent actionEvent) {
         camera.movePosition(new Vector3f(TRANSLATION, 0, 0));
+        requestRender();
     }
 
     @FXML
     public void handleCameraRight(ActionEvent actionEvent) {
         camera.movePosition(new Vector3f(-TRANSLATION, 0, 0));
+        requestRender();
     }
 
     @FXML
     public void handleCameraUp(ActionEvent actionEvent) {
         camera.movePosition(new Vector3f(0, TRANSLATION, 0));
+        requestRender();
     }
 
     @FXML
     public void handleCameraDown(ActionEvent actionEvent) {
         camera.movePosition(new Vector3f(0, -TRANSLATION, 0));
+        requestRender();
+    }
+
+    private void buildLevelOfDetail(Model model) {
+        Task<LevelOfDetail> task = new Task<>() {
+            @Override
+            protected LevelOfDetail call() {
+                LevelOfDetail result = LevelOfDetail.build(model);
+                modelCache.remeasure();
+                return result;
+            }
+        };
+        task.setOnSucceeded(event -> {
+            // Камера могла не двигаться, тогда кадр надо перерисовать явно, чтобы подхватить уровни
+            if (mesh == model) {
+                renderedSceneVersion = -1;
+                requestRender();
+            }
+        });
+        task.setOnFailed(event -> {
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Level of Detail");
+            alert.setHeaderText("Не удалось построить упрощенные уровни модели");
+            alert.setContentText(String.valueOf(task.getException().getMessage()));
+            alert.show();
+        });
+        levelOfDetailExecutor.execute(task);
+    }
+
+    // isCancelled у LoadMonitor совпадает с методом самой задачи, так что отмена задачи прерывает и разбор файла
+    private static class ModelLoadTask extends Task<Model> implements LoadMonitor {
+
+        private final ModelCache modelCache;
+        private final Path path;
+
+        ModelLoadTask(ModelCache modelCache, Path path) {
+            this.modelCache = modelCache;
+            this.path = path;
+        }
+
+        @Override
+        protected Model call() throws IOException {
+            Model model = modelCache.load(path, this);
+            // Список ребер для больших моделей строится заметное время, пусть это случится здесь, а не в первом кадре
+            MeshRenderData.of(model);
+            modelCache.remeasure();
+            return model;
+        }
+
+        @Override
+        public void progress(long processedBytes, long totalBytes) {
+            updateProgress(processedBytes, totalBytes);
+        }
     }
-}
\ No newline at end of file
+}
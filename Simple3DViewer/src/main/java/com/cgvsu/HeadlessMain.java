@@ -0,0 +1,290 @@
+package com.cgvsu;
+
+import com.cgvsu.math.Vector3f;
+import com.cgvsu.model.Model;
+import com.cgvsu.objreader.MeshCache;
+import com.cgvsu.objreader.ObjReader;
+import com.cgvsu.render_engine.Camera;
+import com.cgvsu.render_engine.FrameBuffer;
+import com.cgvsu.render_engine.GraphicConveyor;
+import com.cgvsu.render_engine.RenderEngine;
+import com.cgvsu.render_engine.RenderMode;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Превью OBJ файлов в PNG без окна и без JavaFX: модель рисуется закраской в FrameBuffer и сохраняется через ImageIO.
+// java -cp cgvsu.jar com.cgvsu.HeadlessMain [ключи] <файл.obj | папка>...   (или java -jar cgvsu.jar --headless ...)
+//
+// Файлы рисуются параллельно, каждый поток со своим RenderEngine и кадром. Одновременно загруженные модели
+// ограничены бюджетом памяти: поток берет из него оценку размера модели до чтения и возвращает после записи PNG.
+// Модель больше всего бюджета рисуется, когда остальные потоки его освободят. Перед возвратом бюджета
+// RenderEngine забывает модель, иначе она оставалась бы в памяти до следующего файла сверх бюджета.
+//
+// Кэш разобранных моделей (.meshcache рядом с OBJ) включается ключом --cache: без него в папках
+// с моделями ничего не пишется.
+public class HeadlessMain {
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: HeadlessMain [options] <file.obj | directory>...",
+            "  -o, --output <dir>     where to write PNG files (default: next to each OBJ file)",
+            "  -s, --size <W>x<H>     image size (default: 512x512)",
+            "  -t, --threads <n>      files rendered at once (default: number of processors)",
+            "  -m, --memory <MB>      memory budget for loaded models (default: half of the heap)",
+            "      --cache            read and write .meshcache files next to the OBJ files (default: always parse OBJ)");
+
+    private static final int DEFAULT_SIZE = 512;
+    // Модель со всеми данными для рендера занимает в памяти примерно вдвое больше текста OBJ, берем с запасом
+    private static final int FILE_MEMORY_FACTOR = 3;
+    // Бюджет считается в килобайтах, чтобы поместиться в int разрешений Semaphore
+    private static final int PERMIT_BYTES = 1024;
+
+    // Сфера, описанная вокруг модели, занимает по меньшей стороне кадра такую долю
+    private static final float FILL_RATIO = 0.9F;
+    private static final float FOV = 1.0F;
+    // Модель видна немного сверху и сбоку
+    private static final Vector3f VIEW_DIRECTION = new Vector3f(1.0F, 0.7F, 1.5F).normalize();
+
+    private final List<Path> inputs = new ArrayList<>();
+    private final List<Path> outputs = new ArrayList<>();
+    private Path outputDirectory;
+    private int width = DEFAULT_SIZE;
+    private int height = DEFAULT_SIZE;
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+    private long memoryBudget = Runtime.getRuntime().maxMemory() / 2;
+    private boolean useMeshCache;
+
+    private final AtomicInteger nextFileInd = new AtomicInteger();
+    private final AtomicInteger renderedCount = new AtomicInteger();
+    private Semaphore memoryPermits;
+
+    public static void main(String[] args) {
+        HeadlessMain main = new HeadlessMain();
+        try {
+            main.collectInputs(main.parseArguments(args));
+        } catch (IllegalArgumentException | IOException | UncheckedIOException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        System.exit(main.run() ? 0 : 1);
+    }
+
+    // Разбирает ключи и возвращает остальные аргументы - пути к файлам и папкам
+    private List<String> parseArguments(String[] args) {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; ++i) {
+            switch (args[i]) {
+                case "-o", "--output" -> outputDirectory = Path.of(value(args, ++i));
+                case "-s", "--size" -> {
+                    final String[] size = value(args, ++i).split("x");
+                    if (size.length != 2) {
+                        throw new IllegalArgumentException("Размер задается как ШИРИНАxВЫСОТА: " + args[i]);
+                    }
+                    width = positive(size[0]);
+                    height = positive(size[1]);
+                }
+                case "-t", "--threads" -> threadCount = positive(value(args, ++i));
+                case "-m", "--memory" -> memoryBudget = (long) positive(value(args, ++i)) << 20;
+                case "--cache" -> useMeshCache = true;
+                default -> {
+                    if (args[i].startsWith("-")) {
+                        throw new IllegalArgumentException("Неизвестный ключ: " + args[i]);
+                    }
+                    paths.add(args[i]);
+                }
+            }
+        }
+        return paths;
+    }
+
+    private static String value(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Не хватает значения у ключа " + args[i - 1]);
+        }
+        return args[i];
+    }
+
+    private static int positive(String value) {
+        try {
+            final int result = Integer.parseInt(value);
+            if (result > 0) {
+                return result;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        throw new IllegalArgumentException("Ожидалось положительное целое число: " + value);
+    }
+
+    // Файлы берутся как есть, папки обходятся целиком. PNG для файла из папки ложится в --output
+    // по тому же относительному пути, так что одинаковые имена в разных подпапках не перезаписывают друг друга.
+    private void collectInputs(List<String> paths) throws IOException {
+        for (String path : paths) {
+            final Path input = Path.of(path);
+            if (Files.isDirectory(input)) {
+                List<Path> files;
+                try (Stream<Path> stream = Files.walk(input)) {
+                    files = stream.filter(file -> Files.isRegularFile(file) && isObj(file))
+                            .sorted()
+                            .collect(Collectors.toList());
+                }
+                for (Path file : files) {
+                    addInput(file, outputDirectory == null ? null : outputDirectory.resolve(input.relativize(file)));
+                }
+            } else if (Files.isRegularFile(input)) {
+                addInput(input, outputDirectory == null ? null : outputDirectory.resolve(input.getFileName()));
+            } else {
+                throw new IllegalArgumentException("Нет такого файла или папки: " + input);
+            }
+        }
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("Не найдено ни одного OBJ файла");
+        }
+    }
+
+    private static boolean isObj(Path path) {
+        return path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".obj");
+    }
+
+    // output - путь OBJ файла внутри --output или null, тогда PNG пишется рядом с самим файлом
+    private void addInput(Path file, Path output) {
+        final Path target = output == null ? file : output;
+        final String name = target.getFileName().toString();
+        final String baseName = isObj(target) ? name.substring(0, name.length() - ".obj".length()) : name;
+        inputs.add(file);
+        outputs.add(target.resolveSibling(baseName + ".png"));
+    }
+
+    private boolean run() {
+        final int threads = Math.min(threadCount, inputs.size());
+        memoryPermits = new Semaphore(toPermits(memoryBudget), true);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Callable<Void>> workers = new ArrayList<>();
+        for (int i = 0; i < threads; ++i) {
+            workers.add(this::renderFiles);
+        }
+
+        final long start = System.nanoTime();
+        try {
+            for (Future<Void> future : executor.invokeAll(workers)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Отрисовка прервана", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        final int rendered = renderedCount.get();
+        System.out.printf(Locale.ROOT, "Отрисовано %d из %d моделей за %.2f с, %.2f моделей/с (потоков: %d)%n",
+                rendered, inputs.size(), seconds, rendered / seconds, threads);
+        return rendered == inputs.size();
+    }
+
+    // Цикл одного потока: берет следующий файл, пока они не кончатся
+    private Void renderFiles() throws InterruptedException {
+        RenderEngine renderEngine = new RenderEngine();
+        renderEngine.setRenderMode(RenderMode.FILLED);
+        // Параллельность уже по файлам, а уровни детализации для одного кадра строить незачем
+        renderEngine.setThreadCount(1);
+        renderEngine.setLevelOfDetail(false);
+        FrameBuffer frameBuffer = new FrameBuffer(width, height);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+
+        int fileInd;
+        while ((fileInd = nextFileInd.getAndIncrement()) < inputs.size()) {
+            final Path input = inputs.get(fileInd);
+            final Path output = outputs.get(fileInd);
+            final long start = System.nanoTime();
+            int permits = 0;
+            try {
+                final int required =
+                        Math.min(toPermits(FILE_MEMORY_FACTOR * Files.size(input)), toPermits(memoryBudget));
+                memoryPermits.acquire(required);
+                // Только после acquire: если ожидание прервано, в finally возвращать нечего
+                permits = required;
+                Model model = useMeshCache ? MeshCache.load(input) : ObjReader.read(input);
+                renderEngine.render(frameBuffer, createCamera(model), model);
+
+                System.arraycopy(frameBuffer.getColors(), 0,
+                        ((DataBufferInt) image.getRaster().getDataBuffer()).getData(), 0, width * height);
+                if (output.getParent() != null) {
+                    Files.createDirectories(output.getParent());
+                }
+                ImageIO.write(image, "png", output.toFile());
+                renderedCount.incrementAndGet();
+                System.out.printf(Locale.ROOT, "%s -> %s (%d полигонов, %.0f мс)%n",
+                        input, output, model.getPolygonCount(), (System.nanoTime() - start) / 1e6);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Не удалось отрисовать " + input + ": " + e.getMessage());
+            } finally {
+                renderEngine.clear();
+                memoryPermits.release(permits);
+            }
+        }
+        return null;
+    }
+
+    private static int toPermits(long bytes) {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, bytes / PERMIT_BYTES));
+    }
+
+    // Камера смотрит в центр ограничивающего параллелепипеда с такого расстояния, что описанная сфера
+    // целиком помещается в кадр. Видна только часть [-VIEWPORT_EXTENT, VIEWPORT_EXTENT] координат после деления
+    // на w, поэтому тангенс половины видимого угла - это VIEWPORT_EXTENT * tan(fov / 2).
+    private Camera createCamera(Model model) {
+        final float[] vertices = model.getVertexData();
+        float minX = Float.POSITIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY;
+        float minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+        float maxZ = Float.NEGATIVE_INFINITY;
+        for (int vertexInd = 0; vertexInd < model.getVertexCount(); ++vertexInd) {
+            minX = Math.min(minX, vertices[3 * vertexInd]);
+            minY = Math.min(minY, vertices[3 * vertexInd + 1]);
+            minZ = Math.min(minZ, vertices[3 * vertexInd + 2]);
+            maxX = Math.max(maxX, vertices[3 * vertexInd]);
+            maxY = Math.max(maxY, vertices[3 * vertexInd + 1]);
+            maxZ = Math.max(maxZ, vertices[3 * vertexInd + 2]);
+        }
+        if (model.getVertexCount() == 0) {
+            minX = minY = minZ = maxX = maxY = maxZ = 0;
+        }
+        final float sizeX = maxX - minX;
+        final float sizeY = maxY - minY;
+        final float sizeZ = maxZ - minZ;
+        // У модели из одной точки радиус нулевой, тогда камера все равно должна стоять на каком-то расстоянии
+        final float radius = Math.max(1e-3F, (float) Math.sqrt(sizeX * sizeX + sizeY * sizeY + sizeZ * sizeZ) / 2);
+
+        final float aspectRatio = (float) width / height;
+        final float halfTangent = GraphicConveyor.VIEWPORT_EXTENT
+                * (float) Math.tan(FOV / 2) * Math.min(1, aspectRatio) * FILL_RATIO;
+        final float distance = radius * (float) Math.sqrt(1 + 1 / (halfTangent * halfTangent));
+
+        final Vector3f target = new Vector3f((minX + maxX) / 2, (minY + maxY) / 2, (minZ + maxZ) / 2);
+        final Vector3f position = target.add(VIEW_DIRECTION.multiply(distance));
+        return new Camera(position, target, FOV, aspectRatio, (distance - radius) / 2, distance + 2 * radius);
+    }
+}
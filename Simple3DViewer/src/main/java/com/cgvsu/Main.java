@@ -1,7 +1,20 @@
 package com.cgvsu;
 
+import com.cgvsu.objreader.ObjGenerator;
+
+import java.util.Arrays;
+
 public class Main {
     public static void main(String[] args) {
+        // Собранный jar запускает Main, поэтому превью без окна включается первым аргументом
+        if (args.length > 0 && args[0].equals("--headless")) {
+            HeadlessMain.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--generate")) {
+            ObjGenerator.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         Simple3DViewer.main(args);
     }
 }
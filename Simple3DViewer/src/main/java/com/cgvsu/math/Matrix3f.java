@@ -2,34 +2,53 @@ package com.cgvsu.math;
 
 import com.cgvsu.math.Vector3f;
 
+// Хранение и соглашения те же, что у Matrix4f: один массив по строкам, векторы-столбцы,
+// методы set* и mul меняют саму матрицу.
 public class Matrix3f implements Matrix {
-    private final float[][] data;
+    private static final float EPS = 1e-7f;
+
+    private final float[] data = new float[9];
+
+    // Нулевая матрица
+    public Matrix3f() {
+    }
 
     public Matrix3f(float[][] data) {
         if (data.length != 3 || data[0].length != 3) {
             throw new IllegalArgumentException("Матрица должна быть размером 3x3");
         }
-        this.data = data;
+        for (int i = 0; i < 3; i++) {
+            if (data[i].length != 3) {
+                throw new IllegalArgumentException("Матрица должна быть размером 3x3");
+            }
+            System.arraycopy(data[i], 0, this.data, 3 * i, 3);
+        }
+    }
+
+    public Matrix3f(Matrix3f other) {
+        set(other);
     }
 
     public float get(int row, int col) {
-        return data[row][col];
+        return data[3 * row + col];
+    }
+
+    public void set(int row, int col, float value) {
+        data[3 * row + col] = value;
+    }
+
+    public float[] getData() {
+        return data;
     }
 
     public static Matrix3f identity() {
-        return new Matrix3f(new float[][]{
-                {1.0f, 0.0f, 0.0f},
-                {0.0f, 1.0f, 0.0f},
-                {0.0f, 0.0f, 1.0f}
-        });
+        Matrix3f result = new Matrix3f();
+        result.setIdentity();
+        return result;
     }
 
     public static Matrix3f zero() {
-        return new Matrix3f(new float[][]{
-                {0.0f, 0.0f, 0.0f},
-                {0.0f, 0.0f, 0.0f},
-                {0.0f, 0.0f, 0.0f}
-        });
+        return new Matrix3f();
     }
 
     @Override
@@ -38,13 +57,11 @@ public class Matrix3f implements Matrix {
             throw new IllegalArgumentException("Можем складывать только матрицу 3x3 с матрицей 3x3)");
         }
         Matrix3f otherMatrix = (Matrix3f) other;
-        float[][] result = new float[3][3];
-        for (int i = 0; i < 3; i++) {
-            for (int j = 0; j < 3; j++) {
-                result[i][j] = this.data[i][j] + otherMatrix.data[i][j];
-            }
+        Matrix3f result = new Matrix3f();
+        for (int i = 0; i < 9; i++) {
+            result.data[i] = this.data[i] + otherMatrix.data[i];
         }
-        return new Matrix3f(result);
+        return result;
     }
 
     // Вычитание
@@ -54,20 +71,27 @@ public class Matrix3f implements Matrix {
             throw new IllegalArgumentException("Можем вычитать только матрицу 3x3 из матрицы 3x3)");
         }
         Matrix3f otherMatrix = (Matrix3f) other;
-        float[][] result = new float[3][3];
-        for (int i = 0; i < 3; i++) {
-            for (int j = 0; j < 3; j++) {
-                result[i][j] = this.data[i][j] - otherMatrix.data[i][j];
-            }
+        Matrix3f result = new Matrix3f();
+        for (int i = 0; i < 9; i++) {
+            result.data[i] = this.data[i] - otherMatrix.data[i];
         }
-        return new Matrix3f(result);
+        return result;
     }
 
     public Vector3f multiply(Vector3f vector) {
-        float x = data[0][0] * vector.getX() + data[0][1] * vector.getY() + data[0][2] * vector.getZ();
-        float y = data[1][0] * vector.getX() + data[1][1] * vector.getY() + data[1][2] * vector.getZ();
-        float z = data[2][0] * vector.getX() + data[2][1] * vector.getY() + data[2][2] * vector.getZ();
-        return new Vector3f(x, y, z);
+        return multiply(vector, new Vector3f(0, 0, 0));
+    }
+
+    // dest может совпадать с vector
+    public Vector3f multiply(Vector3f vector, Vector3f dest) {
+        final float vx = vector.getX();
+        final float vy = vector.getY();
+        final float vz = vector.getZ();
+        dest.set(
+                data[0] * vx + data[1] * vy + data[2] * vz,
+                data[3] * vx + data[4] * vy + data[5] * vz,
+                data[6] * vx + data[7] * vy + data[8] * vz);
+        return dest;
     }
 
     @Override
@@ -75,27 +99,126 @@ public class Matrix3f implements Matrix {
         if (!(other instanceof Matrix3f)) {
             throw new IllegalArgumentException("Можем умножать только матрицу 3x3 с матрицей 3x3)");
         }
-        Matrix3f otherMatrix = (Matrix3f) other;
-        float[][] result = new float[3][3];
-        for (int i = 0; i < 3; i++) {
-            for (int j = 0; j < 3; j++) {
-                for (int k = 0; k < 3; k++) {
-                    result[i][j] += this.data[i][k] * otherMatrix.data[k][j];
-                }
-            }
-        }
-        return new Matrix3f(result);
+        Matrix3f result = new Matrix3f();
+        result.mul(this, (Matrix3f) other);
+        return result;
     }
 
     @Override
     public Matrix3f transpose() {
-        float[][] result = new float[3][3];
-        for (int i = 0; i < 3; i++) {
-            for (int j = 0; j < 3; j++) {
-                result[i][j] = this.data[j][i];
-            }
+        Matrix3f result = new Matrix3f();
+        result.setTranspose(this);
+        return result;
+    }
+
+    public Matrix3f set(Matrix3f other) {
+        System.arraycopy(other.data, 0, data, 0, 9);
+        return this;
+    }
+
+    public Matrix3f setZero() {
+        for (int i = 0; i < 9; i++) {
+            data[i] = 0;
+        }
+        return this;
+    }
+
+    public Matrix3f setIdentity() {
+        setZero();
+        data[0] = 1;
+        data[4] = 1;
+        data[8] = 1;
+        return this;
+    }
+
+    // this = left * right. Любая из матриц может совпадать с this.
+    public Matrix3f mul(Matrix3f left, Matrix3f right) {
+        final float[] a = left.data;
+        final float[] b = right.data;
+        float r00 = a[0] * b[0] + a[1] * b[3] + a[2] * b[6];
+        float r01 = a[0] * b[1] + a[1] * b[4] + a[2] * b[7];
+        float r02 = a[0] * b[2] + a[1] * b[5] + a[2] * b[8];
+        float r10 = a[3] * b[0] + a[4] * b[3] + a[5] * b[6];
+        float r11 = a[3] * b[1] + a[4] * b[4] + a[5] * b[7];
+        float r12 = a[3] * b[2] + a[4] * b[5] + a[5] * b[8];
+        float r20 = a[6] * b[0] + a[7] * b[3] + a[8] * b[6];
+        float r21 = a[6] * b[1] + a[7] * b[4] + a[8] * b[7];
+        float r22 = a[6] * b[2] + a[7] * b[5] + a[8] * b[8];
+        data[0] = r00;
+        data[1] = r01;
+        data[2] = r02;
+        data[3] = r10;
+        data[4] = r11;
+        data[5] = r12;
+        data[6] = r20;
+        data[7] = r21;
+        data[8] = r22;
+        return this;
+    }
+
+    // this = this * right
+    public Matrix3f mul(Matrix3f right) {
+        return mul(this, right);
+    }
+
+    public Matrix3f setTranspose(Matrix3f source) {
+        final float[] s = source.data;
+        float t;
+        data[0] = s[0];
+        data[4] = s[4];
+        data[8] = s[8];
+        t = s[1]; data[1] = s[3]; data[3] = t;
+        t = s[2]; data[2] = s[6]; data[6] = t;
+        t = s[5]; data[5] = s[7]; data[7] = t;
+        return this;
+    }
+
+    public float determinant() {
+        return data[0] * (data[4] * data[8] - data[5] * data[7])
+                - data[1] * (data[3] * data[8] - data[5] * data[6])
+                + data[2] * (data[3] * data[7] - data[4] * data[6]);
+    }
+
+    // this = source^-1. source может совпадать с this.
+    public Matrix3f setInverse(Matrix3f source) {
+        final float[] m = source.data;
+        final float determinant = source.determinant();
+        // Порог относительный, как в Matrix4f.setInverse: от масштаба матрицы вырожденность не зависит
+        final float columnNormProduct = columnNorm(m, 0) * columnNorm(m, 1) * columnNorm(m, 2);
+        final float inverse = 1.0f / determinant;
+        if (!(Math.abs(determinant) > EPS * columnNormProduct) || !Float.isFinite(inverse)) {
+            throw new ArithmeticException("Вырожденную матрицу обратить нельзя");
         }
-        return new Matrix3f(result);
+        float r00 = (m[4] * m[8] - m[5] * m[7]) * inverse;
+        float r01 = (m[2] * m[7] - m[1] * m[8]) * inverse;
+        float r02 = (m[1] * m[5] - m[2] * m[4]) * inverse;
+        float r10 = (m[5] * m[6] - m[3] * m[8]) * inverse;
+        float r11 = (m[0] * m[8] - m[2] * m[6]) * inverse;
+        float r12 = (m[2] * m[3] - m[0] * m[5]) * inverse;
+        float r20 = (m[3] * m[7] - m[4] * m[6]) * inverse;
+        float r21 = (m[1] * m[6] - m[0] * m[7]) * inverse;
+        float r22 = (m[0] * m[4] - m[1] * m[3]) * inverse;
+        data[0] = r00;
+        data[1] = r01;
+        data[2] = r02;
+        data[3] = r10;
+        data[4] = r11;
+        data[5] = r12;
+        data[6] = r20;
+        data[7] = r21;
+        data[8] = r22;
+        return this;
+    }
+
+    private static float columnNorm(float[] m, int column) {
+        final float x = m[column];
+        final float y = m[3 + column];
+        final float z = m[6 + column];
+        return (float) Math.sqrt(x * x + y * y + z * z);
+    }
+
+    public Matrix3f invert() {
+        return setInverse(this);
     }
 
     @Override
@@ -104,7 +227,7 @@ public class Matrix3f implements Matrix {
         for (int i = 0; i < 3; i++) {
             sb.append("[");
             for (int j = 0; j < 3; j++) {
-                sb.append(String.format("%.2f", data[i][j]));
+                sb.append(String.format("%.2f", data[3 * i + j]));
                 if (j < 2) sb.append(", ");
             }
             sb.append("]\n");
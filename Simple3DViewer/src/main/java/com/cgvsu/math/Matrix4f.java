@@ -2,36 +2,56 @@ package com.cgvsu.math;
 
 import com.cgvsu.math.Vector4f;
 
+// Матрица хранится одним массивом по строкам: элемент (row, col) лежит в data[4 * row + col].
+// Векторы считаются столбцами, то есть преобразование точки - это M * v, а у композиции A * B
+// сначала применяется B. Методы add/subtract/multiply/transpose из Matrix возвращают новую матрицу,
+// а методы set* и mul пишут результат в саму матрицу и ничего не создают.
 public class Matrix4f implements Matrix {
-    private final float[][] data;
+    private static final float EPS = 1e-7f;
+
+    private final float[] data = new float[16];
+
+    // Нулевая матрица
+    public Matrix4f() {
+    }
 
     public Matrix4f(float[][] data) {
         if (data.length != 4 || data[0].length != 4) {
             throw new IllegalArgumentException("Матрица должна быть строго 4x4");
         }
-        this.data = data;
+        for (int i = 0; i < 4; i++) {
+            if (data[i].length != 4) {
+                throw new IllegalArgumentException("Матрица должна быть строго 4x4");
+            }
+            System.arraycopy(data[i], 0, this.data, 4 * i, 4);
+        }
+    }
+
+    public Matrix4f(Matrix4f other) {
+        set(other);
     }
 
     public float get(int row, int col) {
-        return data[row][col];
+        return data[4 * row + col];
+    }
+
+    public void set(int row, int col, float value) {
+        data[4 * row + col] = value;
+    }
+
+    // Внутренний массив без копирования, для циклов, где важна каждая операция
+    public float[] getData() {
+        return data;
     }
 
     public static Matrix4f identity() {
-        return new Matrix4f(new float[][]{
-                {1.0f, 0.0f, 0.0f, 0.0f},
-                {0.0f, 1.0f, 0.0f, 0.0f},
-                {0.0f, 0.0f, 1.0f, 0.0f},
-                {0.0f, 0.0f, 0.0f, 1.0f}
-        });
+        Matrix4f result = new Matrix4f();
+        result.setIdentity();
+        return result;
     }
 
     public static Matrix4f zero() {
-        return new Matrix4f(new float[][]{
-                {0.0f, 0.0f, 0.0f, 0.0f},
-                {0.0f, 0.0f, 0.0f, 0.0f},
-                {0.0f, 0.0f, 0.0f, 0.0f},
-                {0.0f, 0.0f, 0.0f, 0.0f}
-        });
+        return new Matrix4f();
     }
 
     @Override
@@ -40,13 +60,11 @@ public class Matrix4f implements Matrix {
             throw new IllegalArgumentException("Можем складывать только матрицу 4x4 с матрицей 4x4)");
         }
         Matrix4f otherMatrix = (Matrix4f) other;
-        float[][] result = new float[4][4];
-        for (int i = 0; i < 4; i++) {
-            for (int j = 0; j < 4; j++) {
-                result[i][j] = this.data[i][j] + otherMatrix.data[i][j];
-            }
+        Matrix4f result = new Matrix4f();
+        for (int i = 0; i < 16; i++) {
+            result.data[i] = this.data[i] + otherMatrix.data[i];
         }
-        return new Matrix4f(result);
+        return result;
     }
 
     @Override
@@ -55,25 +73,42 @@ public class Matrix4f implements Matrix {
             throw new IllegalArgumentException("Можем вычитать только матрицу 4x4 из матрицы 4x4)");
         }
         Matrix4f otherMatrix = (Matrix4f) other;
-        float[][] result = new float[4][4];
-        for (int i = 0; i < 4; i++) {
-            for (int j = 0; j < 4; j++) {
-                result[i][j] = this.data[i][j] - otherMatrix.data[i][j];
-            }
+        Matrix4f result = new Matrix4f();
+        for (int i = 0; i < 16; i++) {
+            result.data[i] = this.data[i] - otherMatrix.data[i];
         }
-        return new Matrix4f(result);
+        return result;
     }
 
     public Vector4f multiply(Vector4f vector) {
-        float x = data[0][0] * vector.getX() + data[0][1] * vector.getY() +
-                data[0][2] * vector.getZ() + data[0][3] * vector.getW();
-        float y = data[1][0] * vector.getX() + data[1][1] * vector.getY() +
-                data[1][2] * vector.getZ() + data[1][3] * vector.getW();
-        float z = data[2][0] * vector.getX() + data[2][1] * vector.getY() +
-                data[2][2] * vector.getZ() + data[2][3] * vector.getW();
-        float w = data[3][0] * vector.getX() + data[3][1] * vector.getY() +
-                data[3][2] * vector.getZ() + data[3][3] * vector.getW();
-        return new Vector4f(x, y, z, w);
+        return multiply(vector, new Vector4f(0, 0, 0, 0));
+    }
+
+    // dest может совпадать с vector
+    public Vector4f multiply(Vector4f vector, Vector4f dest) {
+        final float vx = vector.getX();
+        final float vy = vector.getY();
+        final float vz = vector.getZ();
+        final float vw = vector.getW();
+        dest.set(
+                data[0] * vx + data[1] * vy + data[2] * vz + data[3] * vw,
+                data[4] * vx + data[5] * vy + data[6] * vz + data[7] * vw,
+                data[8] * vx + data[9] * vy + data[10] * vz + data[11] * vw,
+                data[12] * vx + data[13] * vy + data[14] * vz + data[15] * vw);
+        return dest;
+    }
+
+    // Точка (x, y, z, 1) без деления на w
+    public Vector4f transformPoint(Vector3f point, Vector4f dest) {
+        final float px = point.getX();
+        final float py = point.getY();
+        final float pz = point.getZ();
+        dest.set(
+                data[0] * px + data[1] * py + data[2] * pz + data[3],
+                data[4] * px + data[5] * py + data[6] * pz + data[7],
+                data[8] * px + data[9] * py + data[10] * pz + data[11],
+                data[12] * px + data[13] * py + data[14] * pz + data[15]);
+        return dest;
     }
 
     @Override
@@ -81,27 +116,311 @@ public class Matrix4f implements Matrix {
         if (!(other instanceof Matrix4f)) {
             throw new IllegalArgumentException("Можем умножать только матрицу 4x4 на матрицу 4x4)");
         }
-        Matrix4f otherMatrix = (Matrix4f) other;
-        float[][] result = new float[4][4];
-        for (int i = 0; i < 4; i++) {
-            for (int j = 0; j < 4; j++) {
-                for (int k = 0; k < 4; k++) {
-                    result[i][j] += this.data[i][k] * otherMatrix.data[k][j];
-                }
-            }
-        }
-        return new Matrix4f(result);
+        Matrix4f result = new Matrix4f();
+        result.mul(this, (Matrix4f) other);
+        return result;
     }
 
     @Override
     public Matrix4f transpose() {
-        float[][] result = new float[4][4];
-        for (int i = 0; i < 4; i++) {
-            for (int j = 0; j < 4; j++) {
-                result[i][j] = this.data[j][i];
-            }
+        Matrix4f result = new Matrix4f();
+        result.setTranspose(this);
+        return result;
+    }
+
+    public Matrix4f set(Matrix4f other) {
+        System.arraycopy(other.data, 0, data, 0, 16);
+        return this;
+    }
+
+    public Matrix4f setZero() {
+        for (int i = 0; i < 16; i++) {
+            data[i] = 0;
         }
-        return new Matrix4f(result);
+        return this;
+    }
+
+    public Matrix4f setIdentity() {
+        setZero();
+        data[0] = 1;
+        data[5] = 1;
+        data[10] = 1;
+        data[15] = 1;
+        return this;
+    }
+
+    // this = left * right. Любая из матриц может совпадать с this.
+    public Matrix4f mul(Matrix4f left, Matrix4f right) {
+        final float[] a = left.data;
+        final float[] b = right.data;
+        float r00 = a[0] * b[0] + a[1] * b[4] + a[2] * b[8] + a[3] * b[12];
+        float r01 = a[0] * b[1] + a[1] * b[5] + a[2] * b[9] + a[3] * b[13];
+        float r02 = a[0] * b[2] + a[1] * b[6] + a[2] * b[10] + a[3] * b[14];
+        float r03 = a[0] * b[3] + a[1] * b[7] + a[2] * b[11] + a[3] * b[15];
+        float r10 = a[4] * b[0] + a[5] * b[4] + a[6] * b[8] + a[7] * b[12];
+        float r11 = a[4] * b[1] + a[5] * b[5] + a[6] * b[9] + a[7] * b[13];
+        float r12 = a[4] * b[2] + a[5] * b[6] + a[6] * b[10] + a[7] * b[14];
+        float r13 = a[4] * b[3] + a[5] * b[7] + a[6] * b[11] + a[7] * b[15];
+        float r20 = a[8] * b[0] + a[9] * b[4] + a[10] * b[8] + a[11] * b[12];
+        float r21 = a[8] * b[1] + a[9] * b[5] + a[10] * b[9] + a[11] * b[13];
+        float r22 = a[8] * b[2] + a[9] * b[6] + a[10] * b[10] + a[11] * b[14];
+        float r23 = a[8] * b[3] + a[9] * b[7] + a[10] * b[11] + a[11] * b[15];
+        float r30 = a[12] * b[0] + a[13] * b[4] + a[14] * b[8] + a[15] * b[12];
+        float r31 = a[12] * b[1] + a[13] * b[5] + a[14] * b[9] + a[15] * b[13];
+        float r32 = a[12] * b[2] + a[13] * b[6] + a[14] * b[10] + a[15] * b[14];
+        float r33 = a[12] * b[3] + a[13] * b[7] + a[14] * b[11] + a[15] * b[15];
+        data[0] = r00;
+        data[1] = r01;
+        data[2] = r02;
+        data[3] = r03;
+        data[4] = r10;
+        data[5] = r11;
+        data[6] = r12;
+        data[7] = r13;
+        data[8] = r20;
+        data[9] = r21;
+        data[10] = r22;
+        data[11] = r23;
+        data[12] = r30;
+        data[13] = r31;
+        data[14] = r32;
+        data[15] = r33;
+        return this;
+    }
+
+    // this = this * right
+    public Matrix4f mul(Matrix4f right) {
+        return mul(this, right);
+    }
+
+    public Matrix4f setTranspose(Matrix4f source) {
+        final float[] s = source.data;
+        float t;
+        data[0] = s[0];
+        data[5] = s[5];
+        data[10] = s[10];
+        data[15] = s[15];
+        t = s[1]; data[1] = s[4]; data[4] = t;
+        t = s[2]; data[2] = s[8]; data[8] = t;
+        t = s[3]; data[3] = s[12]; data[12] = t;
+        t = s[6]; data[6] = s[9]; data[9] = t;
+        t = s[7]; data[7] = s[13]; data[13] = t;
+        t = s[11]; data[11] = s[14]; data[14] = t;
+        return this;
+    }
+
+    // this = source^-1 через алгебраические дополнения. source может совпадать с this.
+    public Matrix4f setInverse(Matrix4f source) {
+        final float[] m = source.data;
+        final float a0 = m[0] * m[5] - m[1] * m[4];
+        final float a1 = m[0] * m[6] - m[2] * m[4];
+        final float a2 = m[0] * m[7] - m[3] * m[4];
+        final float a3 = m[1] * m[6] - m[2] * m[5];
+        final float a4 = m[1] * m[7] - m[3] * m[5];
+        final float a5 = m[2] * m[7] - m[3] * m[6];
+        final float b0 = m[8] * m[13] - m[9] * m[12];
+        final float b1 = m[8] * m[14] - m[10] * m[12];
+        final float b2 = m[8] * m[15] - m[11] * m[12];
+        final float b3 = m[9] * m[14] - m[10] * m[13];
+        final float b4 = m[9] * m[15] - m[11] * m[13];
+        final float b5 = m[10] * m[15] - m[11] * m[14];
+
+        final float determinant = a0 * b5 - a1 * b4 + a2 * b3 + a3 * b2 - a4 * b1 + a5 * b0;
+        // Определитель сравнивается с произведением длин столбцов, а не с константой: по модулю он не больше
+        // этого произведения, и их отношение не зависит от масштаба. Иначе пропадали бы модели,
+        // уменьшенные, например, в тысячу раз при переводе миллиметров в метры.
+        final float columnNormProduct = columnNorm(m, 0) * columnNorm(m, 1) * columnNorm(m, 2) * columnNorm(m, 3);
+        final float inverse = 1.0f / determinant;
+        if (!(Math.abs(determinant) > EPS * columnNormProduct) || !Float.isFinite(inverse)) {
+            throw new ArithmeticException("Вырожденную матрицу обратить нельзя");
+        }
+
+        final float r00 = (m[5] * b5 - m[6] * b4 + m[7] * b3) * inverse;
+        final float r01 = (-m[1] * b5 + m[2] * b4 - m[3] * b3) * inverse;
+        final float r02 = (m[13] * a5 - m[14] * a4 + m[15] * a3) * inverse;
+        final float r03 = (-m[9] * a5 + m[10] * a4 - m[11] * a3) * inverse;
+        final float r10 = (-m[4] * b5 + m[6] * b2 - m[7] * b1) * inverse;
+        final float r11 = (m[0] * b5 - m[2] * b2 + m[3] * b1) * inverse;
+        final float r12 = (-m[12] * a5 + m[14] * a2 - m[15] * a1) * inverse;
+        final float r13 = (m[8] * a5 - m[10] * a2 + m[11] * a1) * inverse;
+        final float r20 = (m[4] * b4 - m[5] * b2 + m[7] * b0) * inverse;
+        final float r21 = (-m[0] * b4 + m[1] * b2 - m[3] * b0) * inverse;
+        final float r22 = (m[12] * a4 - m[13] * a2 + m[15] * a0) * inverse;
+        final float r23 = (-m[8] * a4 + m[9] * a2 - m[11] * a0) * inverse;
+        final float r30 = (-m[4] * b3 + m[5] * b1 - m[6] * b0) * inverse;
+        final float r31 = (m[0] * b3 - m[1] * b1 + m[2] * b0) * inverse;
+        final float r32 = (-m[12] * a3 + m[13] * a1 - m[14] * a0) * inverse;
+        final float r33 = (m[8] * a3 - m[9] * a1 + m[10] * a0) * inverse;
+
+        data[0] = r00;
+        data[1] = r01;
+        data[2] = r02;
+        data[3] = r03;
+        data[4] = r10;
+        data[5] = r11;
+        data[6] = r12;
+        data[7] = r13;
+        data[8] = r20;
+        data[9] = r21;
+        data[10] = r22;
+        data[11] = r23;
+        data[12] = r30;
+        data[13] = r31;
+        data[14] = r32;
+        data[15] = r33;
+        return this;
+    }
+
+    private static float columnNorm(float[] m, int column) {
+        final float x = m[column];
+        final float y = m[4 + column];
+        final float z = m[8 + column];
+        final float w = m[12 + column];
+        return (float) Math.sqrt(x * x + y * y + z * z + w * w);
+    }
+
+    public Matrix4f invert() {
+        return setInverse(this);
+    }
+
+    public Matrix4f setTranslation(float x, float y, float z) {
+        setIdentity();
+        data[3] = x;
+        data[7] = y;
+        data[11] = z;
+        return this;
+    }
+
+    public Matrix4f setScale(float x, float y, float z) {
+        setZero();
+        data[0] = x;
+        data[5] = y;
+        data[10] = z;
+        data[15] = 1;
+        return this;
+    }
+
+    // Повороты на angle радиан против часовой стрелки, если смотреть с конца оси
+    public Matrix4f setRotationX(float angle) {
+        final float cos = (float) Math.cos(angle);
+        final float sin = (float) Math.sin(angle);
+        setIdentity();
+        data[5] = cos;
+        data[6] = -sin;
+        data[9] = sin;
+        data[10] = cos;
+        return this;
+    }
+
+    public Matrix4f setRotationY(float angle) {
+        final float cos = (float) Math.cos(angle);
+        final float sin = (float) Math.sin(angle);
+        setIdentity();
+        data[0] = cos;
+        data[2] = sin;
+        data[8] = -sin;
+        data[10] = cos;
+        return this;
+    }
+
+    public Matrix4f setRotationZ(float angle) {
+        final float cos = (float) Math.cos(angle);
+        final float sin = (float) Math.sin(angle);
+        setIdentity();
+        data[0] = cos;
+        data[1] = -sin;
+        data[4] = sin;
+        data[5] = cos;
+        return this;
+    }
+
+    // Матрица модели T * R * S: сначала масштаб по осям, потом поворот, потом перенос.
+    // R = Rz * Ry * Rx, то есть поворот сначала вокруг x, потом вокруг y, потом вокруг z, углы в радианах.
+    public Matrix4f setRotateScaleTranslate(
+            float scaleX, float scaleY, float scaleZ,
+            float angleX, float angleY, float angleZ,
+            float translationX, float translationY, float translationZ) {
+        final float cosX = (float) Math.cos(angleX);
+        final float sinX = (float) Math.sin(angleX);
+        final float cosY = (float) Math.cos(angleY);
+        final float sinY = (float) Math.sin(angleY);
+        final float cosZ = (float) Math.cos(angleZ);
+        final float sinZ = (float) Math.sin(angleZ);
+
+        data[0] = cosZ * cosY * scaleX;
+        data[1] = (cosZ * sinY * sinX - sinZ * cosX) * scaleY;
+        data[2] = (cosZ * sinY * cosX + sinZ * sinX) * scaleZ;
+        data[3] = translationX;
+        data[4] = sinZ * cosY * scaleX;
+        data[5] = (sinZ * sinY * sinX + cosZ * cosX) * scaleY;
+        data[6] = (sinZ * sinY * cosX - cosZ * sinX) * scaleZ;
+        data[7] = translationY;
+        data[8] = -sinY * scaleX;
+        data[9] = cosY * sinX * scaleY;
+        data[10] = cosY * cosX * scaleZ;
+        data[11] = translationZ;
+        data[12] = 0;
+        data[13] = 0;
+        data[14] = 0;
+        data[15] = 1;
+        return this;
+    }
+
+    // Матрица вида: камера в eye смотрит на target, ось z направлена от камеры к цели
+    public Matrix4f setLookAt(Vector3f eye, Vector3f target, Vector3f up) {
+        float zX = target.getX() - eye.getX();
+        float zY = target.getY() - eye.getY();
+        float zZ = target.getZ() - eye.getZ();
+        float xX = up.getY() * zZ - up.getZ() * zY;
+        float xY = up.getZ() * zX - up.getX() * zZ;
+        float xZ = up.getX() * zY - up.getY() * zX;
+        float yX = zY * xZ - zZ * xY;
+        float yY = zZ * xX - zX * xZ;
+        float yZ = zX * xY - zY * xX;
+
+        final float xLength = (float) Math.sqrt(xX * xX + xY * xY + xZ * xZ);
+        xX /= xLength;
+        xY /= xLength;
+        xZ /= xLength;
+        final float yLength = (float) Math.sqrt(yX * yX + yY * yY + yZ * yZ);
+        yX /= yLength;
+        yY /= yLength;
+        yZ /= yLength;
+        final float zLength = (float) Math.sqrt(zX * zX + zY * zY + zZ * zZ);
+        zX /= zLength;
+        zY /= zLength;
+        zZ /= zLength;
+
+        data[0] = xX;
+        data[1] = xY;
+        data[2] = xZ;
+        data[3] = -(xX * eye.getX() + xY * eye.getY() + xZ * eye.getZ());
+        data[4] = yX;
+        data[5] = yY;
+        data[6] = yZ;
+        data[7] = -(yX * eye.getX() + yY * eye.getY() + yZ * eye.getZ());
+        data[8] = zX;
+        data[9] = zY;
+        data[10] = zZ;
+        data[11] = -(zX * eye.getX() + zY * eye.getY() + zZ * eye.getZ());
+        data[12] = 0;
+        data[13] = 0;
+        data[14] = 0;
+        data[15] = 1;
+        return this;
+    }
+
+    // Перспектива: w становится глубиной точки перед камерой, а z / w идет от -1 на ближней плоскости
+    // до 1 на дальней. fov - угол обзора по вертикали в радианах.
+    public Matrix4f setPerspective(float fov, float aspectRatio, float nearPlane, float farPlane) {
+        final float tangentMinusOnDegree = (float) (1.0F / (Math.tan(fov * 0.5F)));
+        setZero();
+        data[0] = tangentMinusOnDegree / aspectRatio;
+        data[5] = tangentMinusOnDegree;
+        data[10] = (farPlane + nearPlane) / (farPlane - nearPlane);
+        data[11] = 2 * (nearPlane * farPlane) / (nearPlane - farPlane);
+        data[14] = 1.0F;
+        return this;
     }
 
     @Override
@@ -110,11 +429,11 @@ public class Matrix4f implements Matrix {
         for (int i = 0; i < 4; i++) {
             sb.append("[");
             for (int j = 0; j < 4; j++) {
-                sb.append(String.format("%.2f", data[i][j]));
+                sb.append(String.format("%.2f", data[4 * i + j]));
                 if (j < 3) sb.append(", ");
             }
             sb.append("]\n");
         }
         return sb.toString();
     }
-}
\ No newline at end of file
+}
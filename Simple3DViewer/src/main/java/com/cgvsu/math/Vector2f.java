@@ -1,16 +1,38 @@
 package com.cgvsu.math;
 
+// Соглашения те же, что у Vector3f: методы с dest пишут результат в него
 public class Vector2f implements Vector {
     private static final float EPS = 1e-7f;
 
-    private final float x;
-    private final float y;
+    private float x;
+    private float y;
+
+    public Vector2f() {
+    }
 
     public Vector2f(float x, float y) {
         this.x = x;
         this.y = y;
     }
 
+    public Vector2f set(float x, float y) {
+        this.x = x;
+        this.y = y;
+        return this;
+    }
+
+    public Vector2f set(Vector2f other) {
+        return set(other.x, other.y);
+    }
+
+    public void setX(float x) {
+        this.x = x;
+    }
+
+    public void setY(float y) {
+        this.y = y;
+    }
+
     public float getX() {
         return x;
     }
@@ -23,10 +45,22 @@ public class Vector2f implements Vector {
         return new Vector2f(this.x + other.x, this.y + other.y);
     }
 
+    public Vector2f add(Vector2f other, Vector2f dest) {
+        return dest.set(this.x + other.x, this.y + other.y);
+    }
+
     public Vector2f subtract(Vector2f other) {
         return new Vector2f(this.x - other.x, this.y - other.y);
     }
 
+    public Vector2f subtract(Vector2f other, Vector2f dest) {
+        return dest.set(this.x - other.x, this.y - other.y);
+    }
+
+    public Vector2f multiply(float scalar, Vector2f dest) {
+        return dest.set(this.x * scalar, this.y * scalar);
+    }
+
     @Override
     public float length() {
         return (float) Math.sqrt(x * x + y * y);
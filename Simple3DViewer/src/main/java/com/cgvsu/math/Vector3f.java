@@ -1,11 +1,16 @@
 package com.cgvsu.math;
 
+// Методы без параметра dest возвращают новый вектор. Методы с dest пишут результат в него и возвращают его же,
+// dest может быть и самим вектором, и аргументом.
 public class Vector3f implements Vector {
     private static final float EPS = 1e-7f; // порог для сравнения с нулём
 
-    private final float x;
-    private final float y;
-    private final float z;
+    private float x;
+    private float y;
+    private float z;
+
+    public Vector3f() {
+    }
 
     public Vector3f(float x, float y, float z) {
         this.x = x;
@@ -13,6 +18,33 @@ public class Vector3f implements Vector {
         this.z = z;
     }
 
+    public Vector3f(Vector3f other) {
+        this(other.x, other.y, other.z);
+    }
+
+    public Vector3f set(float x, float y, float z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        return this;
+    }
+
+    public Vector3f set(Vector3f other) {
+        return set(other.x, other.y, other.z);
+    }
+
+    public void setX(float x) {
+        this.x = x;
+    }
+
+    public void setY(float y) {
+        this.y = y;
+    }
+
+    public void setZ(float z) {
+        this.z = z;
+    }
+
     public float getX() {
         return x;
     }
@@ -29,15 +61,27 @@ public class Vector3f implements Vector {
         return new Vector3f(this.x + other.x, this.y + other.y, this.z + other.z);
     }
 
+    public Vector3f add(Vector3f other, Vector3f dest) {
+        return dest.set(this.x + other.x, this.y + other.y, this.z + other.z);
+    }
+
     public Vector3f subtract(Vector3f other) {
         return new Vector3f(this.x - other.x, this.y - other.y, this.z - other.z);
     }
 
+    public Vector3f subtract(Vector3f other, Vector3f dest) {
+        return dest.set(this.x - other.x, this.y - other.y, this.z - other.z);
+    }
+
     @Override
     public Vector3f multiply(float scalar) {
         return new Vector3f(this.x * scalar, this.y * scalar, this.z * scalar);
     }
 
+    public Vector3f multiply(float scalar, Vector3f dest) {
+        return dest.set(this.x * scalar, this.y * scalar, this.z * scalar);
+    }
+
     @Override
     public Vector3f divide(float scalar) {
         if (Math.abs(scalar) < EPS) {
@@ -60,12 +104,24 @@ public class Vector3f implements Vector {
         return new Vector3f(x / len, y / len, z / len);
     }
 
+    public Vector3f normalize(Vector3f dest) {
+        float len = length();
+        if (len < EPS) {
+            throw new ArithmeticException("К сожалению, мы не можем нормализовывать нулевой вектор");
+        }
+        return dest.set(x / len, y / len, z / len);
+    }
+
     public float dot(Vector3f other) {
         return this.x * other.x + this.y * other.y + this.z * other.z;
     }
 
     public Vector3f cross(Vector3f other) {
-        return new Vector3f(
+        return cross(other, new Vector3f());
+    }
+
+    public Vector3f cross(Vector3f other, Vector3f dest) {
+        return dest.set(
                 this.y * other.z - this.z * other.y,
                 this.z * other.x - this.x * other.z,
                 this.x * other.y - this.y * other.x
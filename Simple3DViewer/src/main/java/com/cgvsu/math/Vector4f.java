@@ -1,12 +1,16 @@
 package com.cgvsu.math;
 
+// Соглашения те же, что у Vector3f: методы с dest пишут результат в него
 public class Vector4f implements Vector {
     private static final float EPS = 1e-7f; // порог для сравнения с нулём
 
-    private final float x;
-    private final float y;
-    private final float z;
-    private final float w;
+    private float x;
+    private float y;
+    private float z;
+    private float w;
+
+    public Vector4f() {
+    }
 
     public Vector4f(float x, float y, float z, float w) {
         this.x = x;
@@ -15,6 +19,18 @@ public class Vector4f implements Vector {
         this.w = w;
     }
 
+    public Vector4f set(float x, float y, float z, float w) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.w = w;
+        return this;
+    }
+
+    public Vector4f set(Vector4f other) {
+        return set(other.x, other.y, other.z, other.w);
+    }
+
     public float getX() {
         return x;
     }
@@ -40,6 +56,18 @@ public class Vector4f implements Vector {
         );
     }
 
+    public Vector4f add(Vector4f other, Vector4f dest) {
+        return dest.set(this.x + other.x, this.y + other.y, this.z + other.z, this.w + other.w);
+    }
+
+    public Vector4f subtract(Vector4f other, Vector4f dest) {
+        return dest.set(this.x - other.x, this.y - other.y, this.z - other.z, this.w - other.w);
+    }
+
+    public Vector4f multiply(float scalar, Vector4f dest) {
+        return dest.set(this.x * scalar, this.y * scalar, this.z * scalar, this.w * scalar);
+    }
+
     public Vector4f subtract(Vector4f other) {
         return new Vector4f(
                 this.x - other.x,
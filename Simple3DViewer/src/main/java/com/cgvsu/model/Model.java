@@ -1,13 +1,379 @@
 package com.cgvsu.model;
 import com.cgvsu.math.Vector2f;
 import com.cgvsu.math.Vector3f;
+import com.cgvsu.util.FloatList;
+import com.cgvsu.util.IntList;
 
 import java.util.*;
 
 public class Model {
 
-    public ArrayList<Vector3f> vertices = new ArrayList<Vector3f>();
-    public ArrayList<Vector2f> textureVertices = new ArrayList<Vector2f>();
-    public ArrayList<Vector3f> normals = new ArrayList<Vector3f>();
-    public ArrayList<Polygon> polygons = new ArrayList<Polygon>();
+    // Так помечается отсутствующий индекс текстурной координаты или нормали у угла полигона
+    public static final int NO_INDEX = -1;
+
+    // Сам объект модели, списки, обертки и заголовки массивов
+    private static final long MODEL_OVERHEAD_BYTES = 512;
+
+    // Координаты лежат подряд в плоских массивах: x0, y0, z0, x1, y1, z1, ...
+    // Так вершина стоит 12 байт, а не объект Vector3f со ссылкой на него, и при обходе вершины идут в памяти подряд.
+    private final FloatList vertexData;
+    private final FloatList textureVertexData;
+    private final FloatList normalData;
+
+    // Полигоны хранятся так же плоско (как CSR матрица): индексы всех углов всех полигонов идут подряд,
+    // а углы полигона i занимают диапазон [polygonStarts[i], polygonStarts[i + 1]).
+    // Массивы индексов текстурных координат и нормалей идут параллельно индексам вершин,
+    // NO_INDEX означает, что у угла их нет. Пока ни у одного угла их нет, массив остается пустым.
+    private final IntList polygonStarts;
+    private final IntList polygonVertexIndices;
+    private final IntList polygonTextureVertexIndices;
+    private final IntList polygonNormalIndices;
+
+    // Списки векторов остались для совместимости со старым кодом. Векторы создаются на лету при get,
+    // а add и set пишут прямо в массивы. В циклах по всей модели лучше брать массивы через get*Data.
+    public final List<Vector3f> vertices;
+    public final List<Vector2f> textureVertices;
+    public final List<Vector3f> normals;
+    public final List<Polygon> polygons;
+
+    public Model() {
+        this(new float[0], new float[0], new float[0], new int[]{0}, new int[0], new int[0], new int[0]);
+    }
+
+    // Собирает модель из готовых массивов без копирования, например при чтении кэша с диска.
+    // Массивы должны быть заполнены целиком, в том же формате, что отдают get*Data и getPolygon*.
+    // Пустой массив индексов текстурных координат или нормалей значит, что их нет ни у одного угла.
+    public Model(
+            float[] vertexData,
+            float[] textureVertexData,
+            float[] normalData,
+            int[] polygonStarts,
+            int[] polygonVertexIndices,
+            int[] polygonTextureVertexIndices,
+            int[] polygonNormalIndices) {
+        if (vertexData.length % 3 != 0 || textureVertexData.length % 2 != 0 || normalData.length % 3 != 0) {
+            throw new IllegalArgumentException("Длина массива координат не кратна размерности");
+        }
+        if (polygonStarts.length == 0 || polygonStarts[0] != 0
+                || polygonStarts[polygonStarts.length - 1] != polygonVertexIndices.length) {
+            throw new IllegalArgumentException("Смещения полигонов не согласованы с массивом индексов");
+        }
+        if ((polygonTextureVertexIndices.length != 0 && polygonTextureVertexIndices.length != polygonVertexIndices.length)
+                || (polygonNormalIndices.length != 0 && polygonNormalIndices.length != polygonVertexIndices.length)) {
+            throw new IllegalArgumentException("Массивы индексов углов разной длины");
+        }
+        this.vertexData = FloatList.wrap(vertexData);
+        this.textureVertexData = FloatList.wrap(textureVertexData);
+        this.normalData = FloatList.wrap(normalData);
+        this.polygonStarts = IntList.wrap(polygonStarts);
+        this.polygonVertexIndices = IntList.wrap(polygonVertexIndices);
+        this.polygonTextureVertexIndices = IntList.wrap(polygonTextureVertexIndices);
+        this.polygonNormalIndices = IntList.wrap(polygonNormalIndices);
+
+        this.vertices = new Vector3fView(this.vertexData);
+        this.textureVertices = new Vector2fView(this.textureVertexData);
+        this.normals = new Vector3fView(this.normalData);
+        this.polygons = new PolygonView();
+    }
+
+    public int getVertexCount() {
+        return vertexData.size() / 3;
+    }
+
+    public int getTextureVertexCount() {
+        return textureVertexData.size() / 2;
+    }
+
+    public int getNormalCount() {
+        return normalData.size() / 3;
+    }
+
+    // Массивы возвращаются без копирования, значащие в них только первые 3 * getVertexCount() элементов
+    // (2 * getTextureVertexCount() для текстурных координат)
+    public float[] getVertexData() {
+        return vertexData.elements();
+    }
+
+    public float[] getTextureVertexData() {
+        return textureVertexData.elements();
+    }
+
+    public float[] getNormalData() {
+        return normalData.elements();
+    }
+
+    public int getPolygonCount() {
+        return polygonStarts.size() - 1;
+    }
+
+    public int getPolygonVertexCount(int polygonInd) {
+        Objects.checkIndex(polygonInd, getPolygonCount());
+        final int[] starts = polygonStarts.elements();
+        return starts[polygonInd + 1] - starts[polygonInd];
+    }
+
+    // Общее число углов во всех полигонах
+    public int getPolygonCornerCount() {
+        return polygonVertexIndices.size();
+    }
+
+    // Как и массивы координат, отдаются без копирования. В getPolygonStarts значащие первые getPolygonCount() + 1
+    // элементов, в массивах индексов - первые getPolygonCornerCount().
+    public int[] getPolygonStarts() {
+        return polygonStarts.elements();
+    }
+
+    public int[] getPolygonVertexIndices() {
+        return polygonVertexIndices.elements();
+    }
+
+    public boolean hasPolygonTextureVertexIndices() {
+        return !polygonTextureVertexIndices.isEmpty();
+    }
+
+    public boolean hasPolygonNormalIndices() {
+        return !polygonNormalIndices.isEmpty();
+    }
+
+    // Если hasPolygonTextureVertexIndices() == false, в массиве нет значащих элементов
+    public int[] getPolygonTextureVertexIndices() {
+        return polygonTextureVertexIndices.elements();
+    }
+
+    public int[] getPolygonNormalIndices() {
+        return polygonNormalIndices.elements();
+    }
+
+    // textureVertexIndices и normalIndices могут быть null, если у полигона их нет
+    public void addPolygon(int[] vertexIndices, int[] textureVertexIndices, int[] normalIndices, int vertexCount) {
+        final int cornersBefore = polygonVertexIndices.size();
+        polygonVertexIndices.addAll(vertexIndices, 0, vertexCount);
+        addCornerIndices(polygonTextureVertexIndices, textureVertexIndices, vertexCount, cornersBefore);
+        addCornerIndices(polygonNormalIndices, normalIndices, vertexCount, cornersBefore);
+        polygonStarts.add(polygonVertexIndices.size());
+    }
+
+    private static void addCornerIndices(IntList target, int[] indices, int vertexCount, int cornersBefore) {
+        if (indices == null || !containsIndex(indices, vertexCount)) {
+            if (!target.isEmpty()) {
+                target.addRepeated(NO_INDEX, vertexCount);
+            }
+            return;
+        }
+        if (target.isEmpty()) {
+            target.addRepeated(NO_INDEX, cornersBefore);
+        }
+        target.addAll(indices, 0, vertexCount);
+    }
+
+    private static boolean containsIndex(int[] indices, int count) {
+        for (int i = 0; i < count; ++i) {
+            if (indices[i] != NO_INDEX) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void addVertex(float x, float y, float z) {
+        vertexData.add(x, y, z);
+    }
+
+    public void addTextureVertex(float u, float v) {
+        textureVertexData.add(u, v);
+    }
+
+    public void addNormal(float x, float y, float z) {
+        normalData.add(x, y, z);
+    }
+
+    // Дописывает в конец этой модели все данные другой. Индексы в полигонах копируются как есть,
+    // как если бы склеили два куска одного OBJ файла.
+    public void append(Model other) {
+        vertexData.addAll(other.vertexData);
+        textureVertexData.addAll(other.textureVertexData);
+        normalData.addAll(other.normalData);
+
+        final int cornersBefore = polygonVertexIndices.size();
+        final int otherCorners = other.polygonVertexIndices.size();
+        polygonVertexIndices.addAll(other.polygonVertexIndices);
+        appendCornerIndices(polygonTextureVertexIndices, other.polygonTextureVertexIndices, cornersBefore, otherCorners);
+        appendCornerIndices(polygonNormalIndices, other.polygonNormalIndices, cornersBefore, otherCorners);
+        final int[] otherStarts = other.polygonStarts.elements();
+        for (int i = 1; i < other.polygonStarts.size(); ++i) {
+            polygonStarts.add(cornersBefore + otherStarts[i]);
+        }
+    }
+
+    private static void appendCornerIndices(IntList target, IntList source, int cornersBefore, int sourceCorners) {
+        if (source.isEmpty()) {
+            if (!target.isEmpty()) {
+                target.addRepeated(NO_INDEX, sourceCorners);
+            }
+            return;
+        }
+        if (target.isEmpty()) {
+            target.addRepeated(NO_INDEX, cornersBefore);
+        }
+        target.addAll(source);
+    }
+
+    public void ensureCapacity(int vertexCount, int textureVertexCount, int normalCount, int polygonCount, int cornerCount) {
+        vertexData.ensureCapacity(3 * vertexCount);
+        textureVertexData.ensureCapacity(2 * textureVertexCount);
+        normalData.ensureCapacity(3 * normalCount);
+        polygonStarts.ensureCapacity(polygonCount + 1);
+        polygonVertexIndices.ensureCapacity(cornerCount);
+    }
+
+    // Примерный объем памяти под массивы модели в байтах, вместе с запасом вместимости
+    public long estimateMemoryBytes() {
+        final long floats = (long) vertexData.elements().length
+                + textureVertexData.elements().length
+                + normalData.elements().length;
+        final long ints = (long) polygonStarts.elements().length
+                + polygonVertexIndices.elements().length
+                + polygonTextureVertexIndices.elements().length
+                + polygonNormalIndices.elements().length;
+        return MODEL_OVERHEAD_BYTES + Float.BYTES * floats + Integer.BYTES * ints;
+    }
+
+    // Отдает запас вместимости, который остался после чтения
+    public void trimToSize() {
+        vertexData.trimToSize();
+        textureVertexData.trimToSize();
+        normalData.trimToSize();
+        polygonStarts.trimToSize();
+        polygonVertexIndices.trimToSize();
+        polygonTextureVertexIndices.trimToSize();
+        polygonNormalIndices.trimToSize();
+    }
+
+    private static class Vector3fView extends AbstractList<Vector3f> implements RandomAccess {
+        private final FloatList data;
+
+        Vector3fView(FloatList data) {
+            this.data = data;
+        }
+
+        @Override
+        public Vector3f get(int index) {
+            Objects.checkIndex(index, size());
+            final float[] elements = data.elements();
+            return new Vector3f(elements[3 * index], elements[3 * index + 1], elements[3 * index + 2]);
+        }
+
+        @Override
+        public Vector3f set(int index, Vector3f vector) {
+            final Vector3f previous = get(index);
+            data.set(3 * index, vector.getX());
+            data.set(3 * index + 1, vector.getY());
+            data.set(3 * index + 2, vector.getZ());
+            return previous;
+        }
+
+        @Override
+        public boolean add(Vector3f vector) {
+            data.add(vector.getX(), vector.getY(), vector.getZ());
+            ++modCount;
+            return true;
+        }
+
+        @Override
+        public int size() {
+            return data.size() / 3;
+        }
+    }
+
+    private static class Vector2fView extends AbstractList<Vector2f> implements RandomAccess {
+        private final FloatList data;
+
+        Vector2fView(FloatList data) {
+            this.data = data;
+        }
+
+        @Override
+        public Vector2f get(int index) {
+            Objects.checkIndex(index, size());
+            final float[] elements = data.elements();
+            return new Vector2f(elements[2 * index], elements[2 * index + 1]);
+        }
+
+        @Override
+        public Vector2f set(int index, Vector2f vector) {
+            final Vector2f previous = get(index);
+            data.set(2 * index, vector.getX());
+            data.set(2 * index + 1, vector.getY());
+            return previous;
+        }
+
+        @Override
+        public boolean add(Vector2f vector) {
+            data.add(vector.getX(), vector.getY());
+            ++modCount;
+            return true;
+        }
+
+        @Override
+        public int size() {
+            return data.size() / 2;
+        }
+    }
+
+    // Polygon здесь только обертка для старого кода: get собирает списки индексов одного полигона,
+    // а add раскладывает их по плоским массивам. Правки в полученном полигоне обратно в модель не попадают.
+    private class PolygonView extends AbstractList<Polygon> implements RandomAccess {
+        @Override
+        public Polygon get(int index) {
+            Objects.checkIndex(index, size());
+            final int start = polygonStarts.get(index);
+            final int end = polygonStarts.get(index + 1);
+            final int[] vertexIndices = polygonVertexIndices.elements();
+            ArrayList<Integer> onePolygonVertexIndices = new ArrayList<Integer>(end - start);
+            ArrayList<Integer> onePolygonTextureVertexIndices = new ArrayList<Integer>();
+            ArrayList<Integer> onePolygonNormalIndices = new ArrayList<Integer>();
+            for (int i = start; i < end; ++i) {
+                onePolygonVertexIndices.add(vertexIndices[i]);
+                if (hasPolygonTextureVertexIndices() && polygonTextureVertexIndices.get(i) != NO_INDEX) {
+                    onePolygonTextureVertexIndices.add(polygonTextureVertexIndices.get(i));
+                }
+                if (hasPolygonNormalIndices() && polygonNormalIndices.get(i) != NO_INDEX) {
+                    onePolygonNormalIndices.add(polygonNormalIndices.get(i));
+                }
+            }
+
+            Polygon result = new Polygon();
+            result.setVertexIndices(onePolygonVertexIndices);
+            result.setTextureVertexIndices(onePolygonTextureVertexIndices);
+            result.setNormalIndices(onePolygonNormalIndices);
+            return result;
+        }
+
+        // Если у полигона текстурных координат или нормалей меньше, чем вершин, они достаются первым углам
+        @Override
+        public boolean add(Polygon polygon) {
+            final int vertexCount = polygon.getVertexIndices().size();
+            addPolygon(
+                    toCornerArray(polygon.getVertexIndices(), vertexCount),
+                    toCornerArray(polygon.getTextureVertexIndices(), vertexCount),
+                    toCornerArray(polygon.getNormalIndices(), vertexCount),
+                    vertexCount);
+            ++modCount;
+            return true;
+        }
+
+        @Override
+        public int size() {
+            return getPolygonCount();
+        }
+
+        private int[] toCornerArray(List<Integer> indices, int vertexCount) {
+            final int[] result = new int[vertexCount];
+            Arrays.fill(result, NO_INDEX);
+            for (int i = 0; i < Math.min(vertexCount, indices.size()); ++i) {
+                result[i] = indices.get(i);
+            }
+            return result;
+        }
+    }
 }
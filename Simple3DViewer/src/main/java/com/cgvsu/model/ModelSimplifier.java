@@ -0,0 +1,223 @@
+package com.cgvsu.model;
+
+import com.cgvsu.util.IntList;
+import com.cgvsu.util.LongIntHashMap;
+
+// Упрощение сетки кластеризацией вершин: пространство делится на одинаковые кубы, все вершины одного куба
+// сливаются в одну, а полигоны, у которых после этого осталось меньше трех разных вершин, пропадают.
+// Работает за один проход по модели, в отличие от стягивания ребер по очереди.
+//
+// Новая вершина ставится по квадрикам ошибки (Garland, Heckbert) полигонов, задевших куб: в точку,
+// сумма квадратов расстояний от которой до их плоскостей наименьшая. Так острые ребра и углы сохраняются
+// лучше, чем при усреднении. Если такая точка не единственна (плоский кусок) или уходит из куба,
+// берется среднее вершин куба.
+//
+// Текстурные координаты и нормали в упрощенную модель не переносятся.
+public final class ModelSimplifier {
+
+    // Сколько кубов на ось помещается в ключ ячейки: по 21 биту на ось
+    public static final int MAX_CELLS_PER_AXIS = 1 << 21;
+
+    // Квадрика - симметричная матрица 4x4, хранятся 10 элементов верхнего треугольника
+    private static final int QUADRIC_SIZE = 10;
+    // Вырожденность системы для положения вершины оценивается относительно следа матрицы
+    private static final double SINGULAR_THRESHOLD = 1e-3;
+
+    private ModelSimplifier() {
+    }
+
+    // Сетка начинается в (originX, originY, originZ), ребро куба cellSize. Сетки с одним началом и кратным
+    // ребром вложены друг в друга, поэтому модель можно упрощать по шагам, каждый раз от предыдущего результата.
+    public static Model simplify(Model model, float originX, float originY, float originZ, float cellSize) {
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException("Размер ячейки должен быть положительным: " + cellSize);
+        }
+        final float[] vertices = model.getVertexData();
+        final int nVertices = model.getVertexCount();
+        final int[] polygonStarts = model.getPolygonStarts();
+        final int[] polygonVertexIndices = model.getPolygonVertexIndices();
+        final int nPolygons = model.getPolygonCount();
+
+        // Номер кластера для каждой вершины
+        LongIntHashMap clusterOfCell = new LongIntHashMap(nVertices / 4, -1);
+        int[] vertexClusters = new int[nVertices];
+        IntList cellIndices = new IntList();
+        for (int vertexInd = 0; vertexInd < nVertices; ++vertexInd) {
+            final long cellX = cellIndex(vertices[3 * vertexInd], originX, cellSize);
+            final long cellY = cellIndex(vertices[3 * vertexInd + 1], originY, cellSize);
+            final long cellZ = cellIndex(vertices[3 * vertexInd + 2], originZ, cellSize);
+            final long key = (cellX << 42) | (cellY << 21) | cellZ;
+            final int nextCluster = clusterOfCell.size();
+            final int existing = clusterOfCell.putIfAbsent(key, nextCluster);
+            if (existing < 0) {
+                vertexClusters[vertexInd] = nextCluster;
+                cellIndices.add((int) cellX, (int) cellY, (int) cellZ);
+            } else {
+                vertexClusters[vertexInd] = existing;
+            }
+        }
+        final int nClusters = clusterOfCell.size();
+
+        double[] sums = new double[4 * nClusters];
+        for (int vertexInd = 0; vertexInd < nVertices; ++vertexInd) {
+            final int offset = 4 * vertexClusters[vertexInd];
+            sums[offset] += vertices[3 * vertexInd];
+            sums[offset + 1] += vertices[3 * vertexInd + 1];
+            sums[offset + 2] += vertices[3 * vertexInd + 2];
+            sums[offset + 3] += 1;
+        }
+
+        double[] quadrics = new double[QUADRIC_SIZE * nClusters];
+        for (int polygonInd = 0; polygonInd < nPolygons; ++polygonInd) {
+            addPolygonQuadric(vertices, polygonVertexIndices,
+                    polygonStarts[polygonInd], polygonStarts[polygonInd + 1], vertexClusters, quadrics);
+        }
+
+        float[] resultVertices = new float[3 * nClusters];
+        for (int clusterInd = 0; clusterInd < nClusters; ++clusterInd) {
+            placeVertex(clusterInd, sums, quadrics,
+                    originX + cellIndices.get(3 * clusterInd) * cellSize,
+                    originY + cellIndices.get(3 * clusterInd + 1) * cellSize,
+                    originZ + cellIndices.get(3 * clusterInd + 2) * cellSize,
+                    cellSize, resultVertices);
+        }
+
+        IntList resultStarts = new IntList(nPolygons / 2 + 1);
+        IntList resultIndices = new IntList(polygonVertexIndices.length / 2);
+        resultStarts.add(0);
+        for (int polygonInd = 0; polygonInd < nPolygons; ++polygonInd) {
+            final int start = resultIndices.size();
+            for (int cornerInd = polygonStarts[polygonInd]; cornerInd < polygonStarts[polygonInd + 1]; ++cornerInd) {
+                final int clusterInd = vertexClusters[polygonVertexIndices[cornerInd]];
+                if (resultIndices.size() == start || resultIndices.get(resultIndices.size() - 1) != clusterInd) {
+                    resultIndices.add(clusterInd);
+                }
+            }
+            int end = resultIndices.size();
+            if (end - start > 1 && resultIndices.get(end - 1) == resultIndices.get(start)) {
+                --end;
+            }
+            if (end - start < 3) {
+                // Полигон стянулся в точку или отрезок
+                resultIndices.truncate(start);
+                continue;
+            }
+            resultIndices.truncate(end);
+            resultStarts.add(end);
+        }
+
+        resultStarts.trimToSize();
+        resultIndices.trimToSize();
+        return new Model(resultVertices, new float[0], new float[0],
+                resultStarts.elements(), resultIndices.elements(), new int[0], new int[0]);
+    }
+
+    private static long cellIndex(float coordinate, float origin, float cellSize) {
+        final long cell = (long) Math.floor((coordinate - origin) / cellSize);
+        return Math.max(0, Math.min(MAX_CELLS_PER_AXIS - 1, cell));
+    }
+
+    // Квадрика плоскости полигона с весом, пропорциональным его площади, добавляется всем кластерам его вершин
+    private static void addPolygonQuadric(
+            final float[] vertices, final int[] polygonVertexIndices,
+            final int polygonStart, final int polygonEnd,
+            final int[] vertexClusters, final double[] quadrics) {
+        if (polygonEnd - polygonStart < 3) {
+            return;
+        }
+        double normalX = 0;
+        double normalY = 0;
+        double normalZ = 0;
+        int previousInd = polygonVertexIndices[polygonEnd - 1];
+        for (int cornerInd = polygonStart; cornerInd < polygonEnd; ++cornerInd) {
+            final int vertexInd = polygonVertexIndices[cornerInd];
+            normalX += (vertices[3 * previousInd + 1] - vertices[3 * vertexInd + 1])
+                    * ((double) vertices[3 * previousInd + 2] + vertices[3 * vertexInd + 2]);
+            normalY += (vertices[3 * previousInd + 2] - vertices[3 * vertexInd + 2])
+                    * ((double) vertices[3 * previousInd] + vertices[3 * vertexInd]);
+            normalZ += (vertices[3 * previousInd] - vertices[3 * vertexInd])
+                    * ((double) vertices[3 * previousInd + 1] + vertices[3 * vertexInd + 1]);
+            previousInd = vertexInd;
+        }
+        final double length = Math.sqrt(normalX * normalX + normalY * normalY + normalZ * normalZ);
+        if (length == 0) {
+            return;
+        }
+        // Длина нормали Ньюэла - удвоенная площадь
+        final double weight = length / 2;
+        final double a = normalX / length;
+        final double b = normalY / length;
+        final double c = normalZ / length;
+        final int firstInd = polygonVertexIndices[polygonStart];
+        final double d = -(a * vertices[3 * firstInd] + b * vertices[3 * firstInd + 1] + c * vertices[3 * firstInd + 2]);
+
+        int previousCluster = -1;
+        for (int cornerInd = polygonStart; cornerInd < polygonEnd; ++cornerInd) {
+            final int clusterInd = vertexClusters[polygonVertexIndices[cornerInd]];
+            if (clusterInd == previousCluster) {
+                continue;
+            }
+            previousCluster = clusterInd;
+            final int offset = QUADRIC_SIZE * clusterInd;
+            quadrics[offset] += weight * a * a;
+            quadrics[offset + 1] += weight * a * b;
+            quadrics[offset + 2] += weight * a * c;
+            quadrics[offset + 3] += weight * a * d;
+            quadrics[offset + 4] += weight * b * b;
+            quadrics[offset + 5] += weight * b * c;
+            quadrics[offset + 6] += weight * b * d;
+            quadrics[offset + 7] += weight * c * c;
+            quadrics[offset + 8] += weight * c * d;
+            quadrics[offset + 9] += weight * d * d;
+        }
+    }
+
+    private static void placeVertex(
+            final int clusterInd, final double[] sums, final double[] quadrics,
+            final float cellMinX, final float cellMinY, final float cellMinZ, final float cellSize,
+            final float[] result) {
+        final double count = sums[4 * clusterInd + 3];
+        double x = sums[4 * clusterInd] / count;
+        double y = sums[4 * clusterInd + 1] / count;
+        double z = sums[4 * clusterInd + 2] / count;
+
+        // Минимум квадрики: решение системы A * p = -b, где A - левый верхний блок 3x3, b - последний столбец
+        final int q = QUADRIC_SIZE * clusterInd;
+        final double a11 = quadrics[q];
+        final double a12 = quadrics[q + 1];
+        final double a13 = quadrics[q + 2];
+        final double a22 = quadrics[q + 4];
+        final double a23 = quadrics[q + 5];
+        final double a33 = quadrics[q + 7];
+        final double b1 = -quadrics[q + 3];
+        final double b2 = -quadrics[q + 6];
+        final double b3 = -quadrics[q + 8];
+        final double trace = a11 + a22 + a33;
+        final double cofactor11 = a22 * a33 - a23 * a23;
+        final double cofactor12 = a13 * a23 - a12 * a33;
+        final double cofactor13 = a12 * a23 - a13 * a22;
+        final double determinant = a11 * cofactor11 + a12 * cofactor12 + a13 * cofactor13;
+        if (trace > 0 && determinant > SINGULAR_THRESHOLD * trace * trace * trace) {
+            final double cofactor22 = a11 * a33 - a13 * a13;
+            final double cofactor23 = a12 * a13 - a11 * a23;
+            final double cofactor33 = a11 * a22 - a12 * a12;
+            final double solutionX = (cofactor11 * b1 + cofactor12 * b2 + cofactor13 * b3) / determinant;
+            final double solutionY = (cofactor12 * b1 + cofactor22 * b2 + cofactor23 * b3) / determinant;
+            final double solutionZ = (cofactor13 * b1 + cofactor23 * b2 + cofactor33 * b3) / determinant;
+            // Точка вне куба обычно значит почти параллельные плоскости, и тогда среднее надежнее
+            if (isInCell(solutionX, cellMinX, cellSize) && isInCell(solutionY, cellMinY, cellSize)
+                    && isInCell(solutionZ, cellMinZ, cellSize)) {
+                x = solutionX;
+                y = solutionY;
+                z = solutionZ;
+            }
+        }
+        result[3 * clusterInd] = (float) x;
+        result[3 * clusterInd + 1] = (float) y;
+        result[3 * clusterInd + 2] = (float) z;
+    }
+
+    private static boolean isInCell(double coordinate, float cellMin, float cellSize) {
+        return coordinate >= cellMin && coordinate <= cellMin + cellSize;
+    }
+}
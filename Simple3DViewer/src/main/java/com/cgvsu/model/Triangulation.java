@@ -0,0 +1,285 @@
+package com.cgvsu.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Разбиение всех полигонов модели на треугольники, один раз на модель, а не каждый кадр.
+// Полигон из n вершин (n >= 3) дает ровно n - 2 треугольника, поэтому заранее известно, куда писать треугольники
+// каждого полигона, и полигоны разбиваются независимо, в ForkJoinPool.
+//
+// Выпуклый полигон режется веером из первой вершины: (v0, v1, v2), (v0, v2, v3), ...
+// Невыпуклый - отрезанием ушей в проекции на плоскость, к которой полигон ближе всего. Вершины треугольника
+// идут в том же направлении, что и у полигона. Если уха не нашлось (самопересечение, вырожденный полигон),
+// остаток режется веером, так что треугольников все равно n - 2.
+public final class Triangulation {
+
+    // Меньше этого полигонов на задачу не делим
+    private static final int MIN_PARALLEL_POLYGONS = 1 << 14;
+
+    // Треугольник i - вершины triangleVertexIndices[3 * i .. 3 * i + 3)
+    private final int[] triangleVertexIndices;
+    // Номер полигона, из которого получен треугольник
+    private final int[] trianglePolygons;
+    // Треугольники полигона i имеют номера polygonTriangleStarts[i] .. polygonTriangleStarts[i + 1]
+    private final int[] polygonTriangleStarts;
+
+    private Triangulation(int[] triangleVertexIndices, int[] trianglePolygons, int[] polygonTriangleStarts) {
+        this.triangleVertexIndices = triangleVertexIndices;
+        this.trianglePolygons = trianglePolygons;
+        this.polygonTriangleStarts = polygonTriangleStarts;
+    }
+
+    public static Triangulation of(Model model) {
+        return of(model, ForkJoinPool.commonPool());
+    }
+
+    public static Triangulation of(Model model, ForkJoinPool pool) {
+        final int[] polygonStarts = model.getPolygonStarts();
+        final int nPolygons = model.getPolygonCount();
+
+        int[] polygonTriangleStarts = new int[nPolygons + 1];
+        long triangleCount = 0;
+        for (int polygonInd = 0; polygonInd < nPolygons; ++polygonInd) {
+            polygonTriangleStarts[polygonInd] = (int) triangleCount;
+            triangleCount += Math.max(0, polygonStarts[polygonInd + 1] - polygonStarts[polygonInd] - 2);
+        }
+        if (3 * triangleCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Слишком много треугольников: " + triangleCount);
+        }
+        polygonTriangleStarts[nPolygons] = (int) triangleCount;
+
+        Triangulation result = new Triangulation(
+                new int[3 * (int) triangleCount], new int[(int) triangleCount], polygonTriangleStarts);
+        TriangulateTask task = new TriangulateTask(model, result, 0, nPolygons);
+        if (nPolygons < 2 * MIN_PARALLEL_POLYGONS) {
+            task.compute();
+        } else {
+            pool.invoke(task);
+        }
+        return result;
+    }
+
+    public int getTriangleCount() {
+        return trianglePolygons.length;
+    }
+
+    public int[] getTriangleVertexIndices() {
+        return triangleVertexIndices;
+    }
+
+    public int[] getTrianglePolygons() {
+        return trianglePolygons;
+    }
+
+    public int[] getPolygonTriangleStarts() {
+        return polygonTriangleStarts;
+    }
+
+    // Примерный объем памяти под массивы в байтах
+    public long estimateMemoryBytes() {
+        return (long) Integer.BYTES
+                * (triangleVertexIndices.length + trianglePolygons.length + polygonTriangleStarts.length);
+    }
+
+    private static class TriangulateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Model model;
+        private final Triangulation result;
+        private final int from;
+        private final int to;
+
+        TriangulateTask(Model model, Triangulation result, int from, int to) {
+            this.model = model;
+            this.result = result;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from >= 2 * MIN_PARALLEL_POLYGONS) {
+                final int middle = (from + to) >>> 1;
+                invokeAll(new TriangulateTask(model, result, from, middle),
+                        new TriangulateTask(model, result, middle, to));
+                return;
+            }
+            EarClipper earClipper = new EarClipper();
+            for (int polygonInd = from; polygonInd < to; ++polygonInd) {
+                earClipper.triangulate(model, polygonInd, result);
+            }
+        }
+    }
+
+    // Рабочие массивы одного потока, растут под самый большой встреченный полигон
+    private static class EarClipper {
+        private float[] us = new float[16];
+        private float[] vs = new float[16];
+        private int[] previous = new int[16];
+        private int[] next = new int[16];
+
+        void triangulate(Model model, int polygonInd, Triangulation result) {
+            final int[] polygonStarts = model.getPolygonStarts();
+            final int[] polygonVertexIndices = model.getPolygonVertexIndices();
+            final int polygonStart = polygonStarts[polygonInd];
+            final int n = polygonStarts[polygonInd + 1] - polygonStart;
+            if (n < 3) {
+                return;
+            }
+            final int firstTriangle = result.polygonTriangleStarts[polygonInd];
+            Arrays.fill(result.trianglePolygons, firstTriangle, firstTriangle + n - 2, polygonInd);
+            if (n == 3 || !project(model.getVertexData(), polygonVertexIndices, polygonStart, n) || isConvex(n)) {
+                for (int i = 2; i < n; ++i) {
+                    writeTriangle(result, firstTriangle + i - 2, polygonVertexIndices, polygonStart, 0, i - 1, i);
+                }
+                return;
+            }
+
+            for (int i = 0; i < n; ++i) {
+                previous[i] = i == 0 ? n - 1 : i - 1;
+                next[i] = i == n - 1 ? 0 : i + 1;
+            }
+            int triangleInd = firstTriangle;
+            int remaining = n;
+            int current = 0;
+            // Сколько вершин подряд проверено без успеха: полный круг значит, что ушей больше нет
+            int failures = 0;
+            while (remaining > 3 && failures < remaining) {
+                if (isEar(current)) {
+                    writeTriangle(result, triangleInd++, polygonVertexIndices, polygonStart,
+                            previous[current], current, next[current]);
+                    next[previous[current]] = next[current];
+                    previous[next[current]] = previous[current];
+                    --remaining;
+                    failures = 0;
+                    current = next[current];
+                } else {
+                    ++failures;
+                    current = next[current];
+                }
+            }
+            final int first = current;
+            for (int second = next[first]; next[second] != first; second = next[second]) {
+                writeTriangle(result, triangleInd++, polygonVertexIndices, polygonStart, first, second, next[second]);
+            }
+        }
+
+        // Проекция на координатную плоскость, поперечную самой длинной оси нормали Ньюэла. Оси берутся в таком
+        // порядке, что в проекции полигон обходится против часовой стрелки. false, если нормаль нулевая.
+        private boolean project(float[] vertices, int[] polygonVertexIndices, int polygonStart, int n) {
+            if (us.length < n) {
+                final int capacity = Math.max(n, 2 * us.length);
+                us = new float[capacity];
+                vs = new float[capacity];
+                previous = new int[capacity];
+                next = new int[capacity];
+            }
+            float normalX = 0;
+            float normalY = 0;
+            float normalZ = 0;
+            int previousInd = polygonVertexIndices[polygonStart + n - 1];
+            for (int i = 0; i < n; ++i) {
+                final int vertexInd = polygonVertexIndices[polygonStart + i];
+                normalX += (vertices[3 * previousInd + 1] - vertices[3 * vertexInd + 1])
+                        * (vertices[3 * previousInd + 2] + vertices[3 * vertexInd + 2]);
+                normalY += (vertices[3 * previousInd + 2] - vertices[3 * vertexInd + 2])
+                        * (vertices[3 * previousInd] + vertices[3 * vertexInd]);
+                normalZ += (vertices[3 * previousInd] - vertices[3 * vertexInd])
+                        * (vertices[3 * previousInd + 1] + vertices[3 * vertexInd + 1]);
+                previousInd = vertexInd;
+            }
+            final float absX = Math.abs(normalX);
+            final float absY = Math.abs(normalY);
+            final float absZ = Math.abs(normalZ);
+            int uAxis;
+            int vAxis;
+            float sign;
+            if (absX >= absY && absX >= absZ) {
+                uAxis = 1;
+                vAxis = 2;
+                sign = normalX;
+            } else if (absY >= absZ) {
+                uAxis = 2;
+                vAxis = 0;
+                sign = normalY;
+            } else {
+                uAxis = 0;
+                vAxis = 1;
+                sign = normalZ;
+            }
+            if (sign == 0) {
+                return false;
+            }
+            if (sign < 0) {
+                final int swap = uAxis;
+                uAxis = vAxis;
+                vAxis = swap;
+            }
+            for (int i = 0; i < n; ++i) {
+                final int vertexInd = polygonVertexIndices[polygonStart + i];
+                us[i] = vertices[3 * vertexInd + uAxis];
+                vs[i] = vertices[3 * vertexInd + vAxis];
+            }
+            return true;
+        }
+
+        // Все повороты налево и направление по u меняется не больше двух раз, иначе это, например, звезда
+        private boolean isConvex(int n) {
+            int directionChanges = 0;
+            float previousDu = us[0] - us[n - 1];
+            for (int i = 0; i < n; ++i) {
+                final int before = i == 0 ? n - 1 : i - 1;
+                final int after = i == n - 1 ? 0 : i + 1;
+                if (cross(before, i, after) < 0) {
+                    return false;
+                }
+                final float du = us[after] - us[i];
+                if (du != 0) {
+                    if (previousDu != 0 && (du > 0) != (previousDu > 0)) {
+                        ++directionChanges;
+                    }
+                    previousDu = du;
+                }
+            }
+            return directionChanges <= 2;
+        }
+
+        // Ухо - выпуклая вершина, в треугольнике которой с соседями нет других оставшихся вершин
+        private boolean isEar(int vertex) {
+            final int before = previous[vertex];
+            final int after = next[vertex];
+            if (cross(before, vertex, after) <= 0) {
+                return false;
+            }
+            for (int other = next[after]; other != before; other = next[other]) {
+                if (isInTriangle(other, before, vertex, after)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Точка, совпавшая с вершиной треугольника, не мешает: иначе полигоны с повторной вершиной не режутся
+        private boolean isInTriangle(int point, int a, int b, int c) {
+            if ((us[point] == us[a] && vs[point] == vs[a]) || (us[point] == us[b] && vs[point] == vs[b])
+                    || (us[point] == us[c] && vs[point] == vs[c])) {
+                return false;
+            }
+            return cross(a, b, point) >= 0 && cross(b, c, point) >= 0 && cross(c, a, point) >= 0;
+        }
+
+        private float cross(int a, int b, int c) {
+            return (us[b] - us[a]) * (vs[c] - vs[a]) - (vs[b] - vs[a]) * (us[c] - us[a]);
+        }
+
+        private static void writeTriangle(
+                Triangulation result, int triangleInd, int[] polygonVertexIndices, int polygonStart,
+                int first, int second, int third) {
+            final int offset = 3 * triangleInd;
+            result.triangleVertexIndices[offset] = polygonVertexIndices[polygonStart + first];
+            result.triangleVertexIndices[offset + 1] = polygonVertexIndices[polygonStart + second];
+            result.triangleVertexIndices[offset + 2] = polygonVertexIndices[polygonStart + third];
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.cgvsu.objreader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+// Канал, который читает только кусок [start, end) файла позиционным чтением.
+// Позиционное чтение FileChannel потокобезопасно, поэтому несколько таких каналов могут одновременно
+// читать разные куски одного открытого файла.
+class FileRegionChannel implements ReadableByteChannel {
+
+    private final FileChannel channel;
+    private final long end;
+    private long position;
+
+    FileRegionChannel(FileChannel channel, long start, long end) {
+        this.channel = channel;
+        this.position = start;
+        this.end = end;
+    }
+
+    @Override
+    public int read(ByteBuffer target) throws IOException {
+        if (position >= end) {
+            return -1;
+        }
+        final int oldLimit = target.limit();
+        final int length = (int) Math.min(target.remaining(), end - position);
+        target.limit(target.position() + length);
+        try {
+            final int read = channel.read(target, position);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        } finally {
+            target.limit(oldLimit);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() {
+        // Сам файл закрывает тот, кто его открыл
+    }
+}
@@ -0,0 +1,22 @@
+package com.cgvsu.objreader;
+
+// Через него загрузчик сообщает, сколько байт файла уже разобрано, и узнает, не отменили ли загрузку.
+// Методы могут вызываться из нескольких потоков сразу, если файл читается параллельно.
+public interface LoadMonitor {
+
+    LoadMonitor NONE = new LoadMonitor() {
+        @Override
+        public void progress(long processedBytes, long totalBytes) {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
+    void progress(long processedBytes, long totalBytes);
+
+    // Если вернет true, загрузка прервется с CancellationException
+    boolean isCancelled();
+}
@@ -0,0 +1,332 @@
+package com.cgvsu.objreader;
+
+import com.cgvsu.model.Model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.zip.CRC32C;
+
+// Двоичный кэш разобранной модели. Лежит рядом с OBJ файлом в <имя>.obj.meshcache, и при следующем
+// открытии массивы модели копируются из отображенного в память файла как есть, без разбора текста.
+//
+// Формат (все числа little-endian):
+//   int    MAGIC, int VERSION
+//   long   размер исходного файла, long время его изменения (мс), long контрольная сумма исходного файла
+//   int    число вершин, текстурных координат, нормалей, полигонов и углов
+//   int    флаги: есть ли индексы текстурных координат и нормалей у углов
+//   дальше подряд массивы: вершины (float x3), текстурные координаты (float x2), нормали (float x3),
+//   смещения полигонов (int, полигонов + 1), индексы вершин, текстурных координат и нормалей (int, по углу)
+public class MeshCache {
+
+    private static final String CACHE_SUFFIX = ".meshcache";
+    private static final int MAGIC = 0x4D564743; // "CGVM" в little-endian
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8 + 5 * 4 + 4;
+
+    private static final int FLAG_TEXTURE_VERTEX_INDICES = 1;
+    private static final int FLAG_NORMAL_INDICES = 1 << 1;
+
+    // Считать сумму по всему файлу в несколько гигабайт - это те же секунды, от которых кэш и спасает.
+    // Поэтому сумма считается по SAMPLE_COUNT кускам, равномерно разбросанным по файлу, включая начало и конец.
+    private static final int SAMPLE_COUNT = 64;
+    private static final int SAMPLE_SIZE = 1 << 12;
+
+    // Один кусок отображения, FileChannel.map не умеет больше 2 ГБ за раз
+    private static final int MAP_CHUNK_SIZE = 1 << 30;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    // Берет модель из кэша, если он есть и подходит к файлу, иначе читает OBJ и сохраняет кэш рядом
+    public static Model load(Path objPath) throws IOException {
+        return load(objPath, LoadMonitor.NONE);
+    }
+
+    public static Model load(Path objPath, LoadMonitor monitor) throws IOException {
+        final Path cachePath = cachePathFor(objPath);
+        final SourceStamp stamp = SourceStamp.of(objPath);
+
+        try {
+            Model cached = read(cachePath, stamp);
+            if (cached != null) {
+                final long size = Files.size(cachePath);
+                monitor.progress(size, size);
+                return cached;
+            }
+        } catch (IOException e) {
+            // Нечитаемый кэш - тот же промах: нет прав на файл, другой процесс как раз подменяет его и т.п.
+            // Сам OBJ при этом может быть в порядке.
+        }
+
+        Model model = ObjReader.readParallel(objPath, monitor);
+        try {
+            write(model, cachePath, stamp);
+        } catch (IOException e) {
+            // Кэш необязателен: например, папка с моделью может быть только для чтения
+        }
+        return model;
+    }
+
+    public static Path cachePathFor(Path objPath) {
+        return objPath.resolveSibling(objPath.getFileName() + CACHE_SUFFIX);
+    }
+
+    public static void write(Model model, Path cachePath, Path objPath) throws IOException {
+        write(model, cachePath, SourceStamp.of(objPath));
+    }
+
+    // Возвращает null, если кэша нет или он не подходит к текущей версии OBJ файла
+    public static Model read(Path cachePath, Path objPath) throws IOException {
+        return read(cachePath, SourceStamp.of(objPath));
+    }
+
+    private static void write(Model model, Path cachePath, SourceStamp stamp) throws IOException {
+        final int cornerCount = model.getPolygonCornerCount();
+        int flags = 0;
+        if (model.hasPolygonTextureVertexIndices()) {
+            flags |= FLAG_TEXTURE_VERTEX_INDICES;
+        }
+        if (model.hasPolygonNormalIndices()) {
+            flags |= FLAG_NORMAL_INDICES;
+        }
+
+        // Сначала пишем во временный файл и только потом подменяем кэш, чтобы не оставить его недописанным.
+        // Имя временного файла уникально, чтобы два процесса, сохраняющие кэш одной модели, не мешали друг другу.
+        final Path temporary = Files.createTempFile(
+                cachePath.toAbsolutePath().getParent(), cachePath.getFileName() + ".", ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putLong(stamp.size);
+            buffer.putLong(stamp.modifiedMillis);
+            buffer.putLong(stamp.checksum);
+            buffer.putInt(model.getVertexCount());
+            buffer.putInt(model.getTextureVertexCount());
+            buffer.putInt(model.getNormalCount());
+            buffer.putInt(model.getPolygonCount());
+            buffer.putInt(cornerCount);
+            buffer.putInt(flags);
+
+            writeFloats(channel, buffer, model.getVertexData(), 3 * model.getVertexCount());
+            writeFloats(channel, buffer, model.getTextureVertexData(), 2 * model.getTextureVertexCount());
+            writeFloats(channel, buffer, model.getNormalData(), 3 * model.getNormalCount());
+            writeInts(channel, buffer, model.getPolygonStarts(), model.getPolygonCount() + 1);
+            writeInts(channel, buffer, model.getPolygonVertexIndices(), cornerCount);
+            if ((flags & FLAG_TEXTURE_VERTEX_INDICES) != 0) {
+                writeInts(channel, buffer, model.getPolygonTextureVertexIndices(), cornerCount);
+            }
+            if ((flags & FLAG_NORMAL_INDICES) != 0) {
+                writeInts(channel, buffer, model.getPolygonNormalIndices(), cornerCount);
+            }
+            flush(channel, buffer);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+
+        try {
+            try {
+                Files.move(temporary, cachePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, cachePath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+    }
+
+    private static Model read(Path cachePath, SourceStamp stamp) throws IOException {
+        try (FileChannel channel = FileChannel.open(cachePath, StandardOpenOption.READ)) {
+            final long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                return null;
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                return null;
+            }
+            if (header.getLong() != stamp.size
+                    || header.getLong() != stamp.modifiedMillis
+                    || header.getLong() != stamp.checksum) {
+                return null;
+            }
+            final int vertexCount = header.getInt();
+            final int textureVertexCount = header.getInt();
+            final int normalCount = header.getInt();
+            final int polygonCount = header.getInt();
+            final int cornerCount = header.getInt();
+            final int flags = header.getInt();
+            if (vertexCount < 0 || textureVertexCount < 0 || normalCount < 0 || polygonCount < 0 || cornerCount < 0) {
+                return null;
+            }
+            final int textureIndexCount = (flags & FLAG_TEXTURE_VERTEX_INDICES) != 0 ? cornerCount : 0;
+            final int normalIndexCount = (flags & FLAG_NORMAL_INDICES) != 0 ? cornerCount : 0;
+
+            // Обрезанный или чужой файл отсекаем до выделения памяти под массивы
+            final long expectedSize = HEADER_SIZE + 4L * (
+                    3L * vertexCount + 2L * textureVertexCount + 3L * normalCount
+                    + polygonCount + 1L + cornerCount + textureIndexCount + normalIndexCount);
+            if (expectedSize != fileSize) {
+                return null;
+            }
+
+            long position = HEADER_SIZE;
+            final float[] vertexData = new float[3 * vertexCount];
+            position = readFloats(channel, position, vertexData);
+            final float[] textureVertexData = new float[2 * textureVertexCount];
+            position = readFloats(channel, position, textureVertexData);
+            final float[] normalData = new float[3 * normalCount];
+            position = readFloats(channel, position, normalData);
+            final int[] polygonStarts = new int[polygonCount + 1];
+            position = readInts(channel, position, polygonStarts);
+            final int[] polygonVertexIndices = new int[cornerCount];
+            position = readInts(channel, position, polygonVertexIndices);
+            final int[] polygonTextureVertexIndices = new int[textureIndexCount];
+            position = readInts(channel, position, polygonTextureVertexIndices);
+            final int[] polygonNormalIndices = new int[normalIndexCount];
+            readInts(channel, position, polygonNormalIndices);
+
+            // Совпадение размера и суммы исходника не гарантирует целость самого кэша, а индекс за пределами
+            // массива всплывет только при рендере. Такой кэш считаем негодным, и модель перечитается из OBJ.
+            if (!isMonotonic(polygonStarts)
+                    || !isInRange(polygonVertexIndices, vertexCount, false)
+                    || !isInRange(polygonTextureVertexIndices, textureVertexCount, true)
+                    || !isInRange(polygonNormalIndices, normalCount, true)) {
+                return null;
+            }
+
+            try {
+                return new Model(vertexData, textureVertexData, normalData,
+                        polygonStarts, polygonVertexIndices, polygonTextureVertexIndices, polygonNormalIndices);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private static boolean isMonotonic(int[] starts) {
+        for (int i = 1; i < starts.length; ++i) {
+            if (starts[i] < starts[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isInRange(int[] indices, int count, boolean allowMissing) {
+        for (int index : indices) {
+            if ((index < 0 || index >= count) && !(allowMissing && index == Model.NO_INDEX)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long readFloats(FileChannel channel, long position, float[] target) throws IOException {
+        int offset = 0;
+        while (offset < target.length) {
+            final int count = Math.min(target.length - offset, MAP_CHUNK_SIZE / Float.BYTES);
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, (long) count * Float.BYTES);
+            mapped.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(target, offset, count);
+            position += (long) count * Float.BYTES;
+            offset += count;
+        }
+        return position;
+    }
+
+    private static long readInts(FileChannel channel, long position, int[] target) throws IOException {
+        int offset = 0;
+        while (offset < target.length) {
+            final int count = Math.min(target.length - offset, MAP_CHUNK_SIZE / Integer.BYTES);
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, (long) count * Integer.BYTES);
+            mapped.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(target, offset, count);
+            position += (long) count * Integer.BYTES;
+            offset += count;
+        }
+        return position;
+    }
+
+    private static void writeFloats(FileChannel channel, ByteBuffer buffer, float[] values, int count) throws IOException {
+        int offset = 0;
+        while (offset < count) {
+            if (buffer.remaining() < Float.BYTES) {
+                flush(channel, buffer);
+            }
+            final int portion = Math.min(count - offset, buffer.remaining() / Float.BYTES);
+            buffer.asFloatBuffer().put(values, offset, portion);
+            buffer.position(buffer.position() + portion * Float.BYTES);
+            offset += portion;
+        }
+    }
+
+    private static void writeInts(FileChannel channel, ByteBuffer buffer, int[] values, int count) throws IOException {
+        int offset = 0;
+        while (offset < count) {
+            if (buffer.remaining() < Integer.BYTES) {
+                flush(channel, buffer);
+            }
+            final int portion = Math.min(count - offset, buffer.remaining() / Integer.BYTES);
+            buffer.asIntBuffer().put(values, offset, portion);
+            buffer.position(buffer.position() + portion * Integer.BYTES);
+            offset += portion;
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Размер, время изменения и контрольная сумма OBJ файла, по которым проверяется, что кэш не устарел
+    private static class SourceStamp {
+        private final long size;
+        private final long modifiedMillis;
+        private final long checksum;
+
+        private SourceStamp(long size, long modifiedMillis, long checksum) {
+            this.size = size;
+            this.modifiedMillis = modifiedMillis;
+            this.checksum = checksum;
+        }
+
+        static SourceStamp of(Path objPath) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(objPath, BasicFileAttributes.class);
+            final long size = attributes.size();
+
+            CRC32C crc = new CRC32C();
+            try (FileChannel channel = FileChannel.open(objPath, StandardOpenOption.READ)) {
+                ByteBuffer sample = ByteBuffer.allocate(SAMPLE_SIZE);
+                final long lastSampleStart = Math.max(0, size - SAMPLE_SIZE);
+                for (int i = 0; i < SAMPLE_COUNT; ++i) {
+                    final long position = lastSampleStart * i / (SAMPLE_COUNT - 1);
+                    sample.clear();
+                    int read;
+                    do {
+                        read = channel.read(sample, position + sample.position());
+                    } while (read > 0 && sample.hasRemaining());
+                    sample.flip();
+                    crc.update(sample);
+                    if (lastSampleStart == 0) {
+                        break;
+                    }
+                }
+            }
+            return new SourceStamp(size, attributes.lastModifiedTime().toMillis(), crc.getValue());
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.cgvsu.objreader;
+
+import com.cgvsu.model.Model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+// Кэш уже загруженных моделей в памяти процесса, стоит перед MeshCache и ObjReader.
+// Ключ - канонический путь, размер и время изменения файла, так что измененный файл будет прочитан заново.
+// Ограничен не числом моделей, а их примерным размером в байтах: при превышении вытесняются модели,
+// которые дольше всех не открывали.
+//
+// Размер модели считает sizeOf. Кроме самих массивов модели, память держит и построенное по ней позже
+// (например, данные для рендера): оно живет, пока кэш держит модель. Поэтому sizeOf должен считать и это,
+// а после того как такие данные построены, нужно вызвать remeasure.
+public class ModelCache {
+
+    private final long maxBytes;
+    private final ToLongFunction<Model> sizeOf;
+    // accessOrder = true: get переносит запись в конец, поэтому первой в обходе всегда идет самая старая
+    private final LinkedHashMap<Key, Entry> models = new LinkedHashMap<>(16, 0.75f, true);
+    private long currentBytes;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public ModelCache(long maxBytes) {
+        this(maxBytes, Model::estimateMemoryBytes);
+    }
+
+    public ModelCache(long maxBytes, ToLongFunction<Model> sizeOf) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Размер кэша не может быть отрицательным: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        this.sizeOf = sizeOf;
+    }
+
+    // Сама загрузка идет без блокировки, поэтому пока читается одна модель, другие можно брать из кэша.
+    // Если одну и ту же модель одновременно попросят два потока, прочитают ее оба, а в кэше останется одна.
+    public Model load(Path path) throws IOException {
+        return load(path, LoadMonitor.NONE);
+    }
+
+    public Model load(Path path, LoadMonitor monitor) throws IOException {
+        final Key key = Key.of(path);
+        synchronized (this) {
+            Entry cached = models.get(key);
+            if (cached != null) {
+                hitCount.incrementAndGet();
+                return cached.model;
+            }
+        }
+        missCount.incrementAndGet();
+
+        Model model = MeshCache.load(path, monitor);
+        put(key, model);
+        return model;
+    }
+
+    private synchronized void put(Key key, Model model) {
+        final long size = sizeOf.applyAsLong(model);
+        if (size > maxBytes) {
+            // Модель больше всего бюджета: держать ее ради следующего открытия значило бы выкинуть все остальное
+            return;
+        }
+
+        // Старые версии того же файла больше не понадобятся
+        for (Iterator<Map.Entry<Key, Entry>> it = models.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Key, Entry> entry = it.next();
+            if (entry.getKey().path.equals(key.path)) {
+                currentBytes -= entry.getValue().size;
+                it.remove();
+            }
+        }
+
+        models.put(key, new Entry(model, size));
+        currentBytes += size;
+        evictOverBudget();
+    }
+
+    // Пересчитывает размеры моделей в кэше и вытесняет лишние. Нужен, когда по модели из кэша построили
+    // что-то, что sizeOf тоже считает: при загрузке этого еще не было, и модель учтена меньшим размером.
+    public synchronized void remeasure() {
+        currentBytes = 0;
+        for (Iterator<Entry> it = models.values().iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            entry.size = sizeOf.applyAsLong(entry.model);
+            if (entry.size > maxBytes) {
+                it.remove();
+                evictionCount.incrementAndGet();
+            } else {
+                currentBytes += entry.size;
+            }
+        }
+        evictOverBudget();
+    }
+
+    private void evictOverBudget() {
+        for (Iterator<Entry> it = models.values().iterator(); currentBytes > maxBytes && it.hasNext(); ) {
+            currentBytes -= it.next().size;
+            it.remove();
+            evictionCount.incrementAndGet();
+        }
+    }
+
+    public synchronized void clear() {
+        models.clear();
+        currentBytes = 0;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public synchronized int getModelCount() {
+        return models.size();
+    }
+
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    // Размер запоминается при добавлении, чтобы при вытеснении вычесть ровно то, что было прибавлено
+    private static class Entry {
+        private final Model model;
+        private long size;
+
+        private Entry(Model model, long size) {
+            this.model = model;
+            this.size = size;
+        }
+    }
+
+    private static class Key {
+        private final Path path;
+        private final long size;
+        private final long modifiedMillis;
+
+        private Key(Path path, long size, long modifiedMillis) {
+            this.path = path;
+            this.size = size;
+            this.modifiedMillis = modifiedMillis;
+        }
+
+        static Key of(Path path) throws IOException {
+            final Path canonicalPath = path.toRealPath();
+            BasicFileAttributes attributes = Files.readAttributes(canonicalPath, BasicFileAttributes.class);
+            return new Key(canonicalPath, attributes.size(), attributes.lastModifiedTime().toMillis());
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return size == key.size && modifiedMillis == key.modifiedMillis && path.equals(key.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, size, modifiedMillis);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package com.cgvsu.objreader;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+// Большие OBJ файлы для проверки загрузки и рендера на миллионах граней. При одинаковых аргументах файл
+// получается одинаковым байт в байт, так что замеры на разных машинах и в разных прогонах сравнимы.
+// java -cp cgvsu.jar com.cgvsu.objreader.ObjGenerator <sphere | terrain | soup> <граней> <файл.obj> [seed]
+// (или java -jar cgvsu.jar --generate ...)
+//
+// Фигуры дают разные нагрузки на ObjReader и рендер:
+// SPHERE  - куб, каждая грань которого разбита на n x n четырехугольников и выгнута на сферу; v, vt, vn и грани v/vt/vn
+// TERRAIN - сетка высот из треугольников; v и vt, грани v/vt
+// SOUP    - независимые треугольники в кубе [-1, 1]; v, vt и vn вперемешку с гранями, и у каждой грани свой
+//           формат из v, v/vt, v//vn и v/vt/vn
+public final class ObjGenerator {
+
+    public enum Shape {
+        SPHERE,
+        TERRAIN,
+        SOUP
+    }
+
+    private static final String USAGE =
+            "Usage: ObjGenerator <sphere | terrain | soup> <face count> <output.obj> [seed]";
+
+    // Строки копятся в буфере и пишутся кусками такого размера
+    private static final int FLUSH_SIZE = 1 << 16;
+    private static final int FRACTION_DIGITS = 6;
+    private static final double FRACTION_SCALE = 1e6;
+
+    private final Writer writer;
+    private final StringBuilder line = new StringBuilder(FLUSH_SIZE + 256);
+
+    private ObjGenerator(Writer writer) {
+        this.writer = writer;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 3 || args.length > 4) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        final Shape shape;
+        final long faceCount;
+        final long seed;
+        try {
+            shape = Shape.valueOf(args[0].toUpperCase(Locale.ROOT));
+            faceCount = Long.parseLong(args[1]);
+            seed = args.length == 4 ? Long.parseLong(args[3]) : 0;
+        } catch (IllegalArgumentException e) {
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        final long start = System.nanoTime();
+        try {
+            final long written = write(Path.of(args[2]), shape, faceCount, seed);
+            System.out.printf(Locale.ROOT, "%s: %d faces in %.1f s%n",
+                    args[2], written, (System.nanoTime() - start) / 1e9);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    public static long write(Path path, Shape shape, long faceCount, long seed) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            return write(writer, shape, faceCount, seed);
+        }
+    }
+
+    // Граней получается не ровно faceCount, а ближайшее число, которое дает фигура; возвращается, сколько записано
+    public static long write(Writer writer, Shape shape, long faceCount, long seed) throws IOException {
+        if (faceCount < 1) {
+            throw new IllegalArgumentException("Число граней должно быть положительным: " + faceCount);
+        }
+        ObjGenerator generator = new ObjGenerator(writer);
+        final long written = switch (shape) {
+            case SPHERE -> generator.writeSphere(faceCount);
+            case TERRAIN -> generator.writeTerrain(faceCount, seed);
+            case SOUP -> generator.writeSoup(faceCount, seed);
+        };
+        generator.flush();
+        return written;
+    }
+
+    // 6 * n * n четырехугольников. Вершины на ребрах куба не общие: у каждой грани куба свои, как у швов развертки.
+    private long writeSphere(long faceCount) throws IOException {
+        final int n = (int) Math.max(1, Math.round(Math.sqrt(faceCount / 6.0)));
+        checkIndexRange(6L * (n + 1) * (n + 1));
+        line.append("# sphere, ").append(6L * n * n).append(" faces\n");
+        for (int side = 0; side < 6; ++side) {
+            for (int row = 0; row <= n; ++row) {
+                for (int column = 0; column <= n; ++column) {
+                    final double u = 2.0 * column / n - 1;
+                    final double v = 2.0 * row / n - 1;
+                    // Точка грани куба: side / 2 - ось, вдоль которой смотрит грань, четность - направление
+                    final double sign = side % 2 == 0 ? 1 : -1;
+                    double x;
+                    double y;
+                    double z;
+                    switch (side / 2) {
+                        case 0 -> {
+                            x = sign;
+                            y = v;
+                            z = -sign * u;
+                        }
+                        case 1 -> {
+                            x = u;
+                            y = sign;
+                            z = -sign * v;
+                        }
+                        default -> {
+                            x = sign * u;
+                            y = v;
+                            z = sign;
+                        }
+                    }
+                    final double length = Math.sqrt(x * x + y * y + z * z);
+                    x /= length;
+                    y /= length;
+                    z /= length;
+                    appendVertex("v ", x, y, z);
+                    appendTextureVertex((side + (double) column / n) / 6, (double) row / n);
+                    appendVertex("vn ", x, y, z);
+                    flushIfFull();
+                }
+            }
+            final long sideStart = (long) side * (n + 1) * (n + 1) + 1;
+            for (int row = 0; row < n; ++row) {
+                for (int column = 0; column < n; ++column) {
+                    final long a = sideStart + (long) row * (n + 1) + column;
+                    final long b = a + 1;
+                    final long c = b + n + 1;
+                    final long d = a + n + 1;
+                    line.append('f');
+                    appendCorner(a, a, a);
+                    appendCorner(b, b, b);
+                    appendCorner(c, c, c);
+                    appendCorner(d, d, d);
+                    line.append('\n');
+                    flushIfFull();
+                }
+            }
+        }
+        return 6L * n * n;
+    }
+
+    // Квадрат [-1, 1] x [-1, 1] из cells x cells клеток по два треугольника. Высота - сумма синусоид
+    // со случайными направлениями и фазами, а еще мелкий шум.
+    private long writeTerrain(long faceCount, long seed) throws IOException {
+        final int cells = (int) Math.max(1, Math.round(Math.sqrt(faceCount / 2.0)));
+        checkIndexRange((long) (cells + 1) * (cells + 1));
+        SplittableRandom random = new SplittableRandom(seed);
+        final int waveCount = 8;
+        final double[] waves = new double[4 * waveCount];
+        for (int i = 0; i < waveCount; ++i) {
+            final double angle = 2 * Math.PI * random.nextDouble();
+            // Каждая следующая пара волн вдвое чаще и вдвое ниже
+            final double frequency = 2 * Math.PI * (1 << (i / 2)) * (0.5 + random.nextDouble());
+            waves[4 * i] = frequency * Math.cos(angle);
+            waves[4 * i + 1] = frequency * Math.sin(angle);
+            waves[4 * i + 2] = 2 * Math.PI * random.nextDouble();
+            waves[4 * i + 3] = 0.2 / (1 << (i / 2));
+        }
+
+        line.append("# terrain, ").append(2L * cells * cells).append(" faces\n");
+        for (int row = 0; row <= cells; ++row) {
+            for (int column = 0; column <= cells; ++column) {
+                final double x = 2.0 * column / cells - 1;
+                final double z = 2.0 * row / cells - 1;
+                double height = 0.002 * (random.nextDouble() - 0.5);
+                for (int i = 0; i < waveCount; ++i) {
+                    height += waves[4 * i + 3] * Math.sin(waves[4 * i] * x + waves[4 * i + 1] * z + waves[4 * i + 2]);
+                }
+                appendVertex("v ", x, height, z);
+                appendTextureVertex((double) column / cells, (double) row / cells);
+                flushIfFull();
+            }
+        }
+        for (int row = 0; row < cells; ++row) {
+            for (int column = 0; column < cells; ++column) {
+                final long a = (long) row * (cells + 1) + column + 1;
+                final long b = a + 1;
+                final long c = b + cells + 1;
+                final long d = a + cells + 1;
+                line.append('f');
+                appendCorner(a, a, 0);
+                appendCorner(d, d, 0);
+                appendCorner(c, c, 0);
+                line.append("\nf");
+                appendCorner(a, a, 0);
+                appendCorner(c, c, 0);
+                appendCorner(b, b, 0);
+                line.append('\n');
+                flushIfFull();
+            }
+        }
+        return 2L * cells * cells;
+    }
+
+    // У каждого треугольника три свои вершины, три текстурные вершины и нормаль, и они записаны прямо перед ним,
+    // как в файлах, которые склеены из кусков разных программ
+    private long writeSoup(long faceCount, long seed) throws IOException {
+        checkIndexRange(3 * faceCount);
+        SplittableRandom random = new SplittableRandom(seed);
+        final double[] corners = new double[9];
+        line.append("# soup, ").append(faceCount).append(" faces\n");
+        for (long face = 0; face < faceCount; ++face) {
+            // Маленький треугольник в случайном месте: иначе на экране будет сплошная каша из огромных граней
+            final double centerX = 2 * random.nextDouble() - 1;
+            final double centerY = 2 * random.nextDouble() - 1;
+            final double centerZ = 2 * random.nextDouble() - 1;
+            for (int i = 0; i < 9; i += 3) {
+                corners[i] = centerX + 0.1 * (random.nextDouble() - 0.5);
+                corners[i + 1] = centerY + 0.1 * (random.nextDouble() - 0.5);
+                corners[i + 2] = centerZ + 0.1 * (random.nextDouble() - 0.5);
+                appendVertex("v ", corners[i], corners[i + 1], corners[i + 2]);
+                appendTextureVertex(random.nextDouble(), random.nextDouble());
+            }
+            final double ux = corners[3] - corners[0];
+            final double uy = corners[4] - corners[1];
+            final double uz = corners[5] - corners[2];
+            final double vx = corners[6] - corners[0];
+            final double vy = corners[7] - corners[1];
+            final double vz = corners[8] - corners[2];
+            final double nx = uy * vz - uz * vy;
+            final double ny = uz * vx - ux * vz;
+            final double nz = ux * vy - uy * vx;
+            final double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (length > 0) {
+                appendVertex("vn ", nx / length, ny / length, nz / length);
+            } else {
+                appendVertex("vn ", 0, 1, 0);
+            }
+
+            // 0 - только v, 1 - v/vt, 2 - v//vn, 3 - v/vt/vn
+            final int format = random.nextInt(4);
+            final long first = 3 * face + 1;
+            final long normal = (format & 2) != 0 ? face + 1 : 0;
+            line.append('f');
+            for (int i = 0; i < 3; ++i) {
+                appendCorner(first + i, (format & 1) != 0 ? first + i : 0, normal);
+            }
+            line.append('\n');
+            flushIfFull();
+        }
+        return faceCount;
+    }
+
+    // Индексы в OBJ не больше того, что ObjReader хранит в int
+    private static void checkIndexRange(long elementCount) {
+        if (elementCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Слишком много вершин для OBJ: " + elementCount);
+        }
+    }
+
+    private void appendVertex(String token, double x, double y, double z) {
+        line.append(token);
+        appendFixed(x);
+        line.append(' ');
+        appendFixed(y);
+        line.append(' ');
+        appendFixed(z);
+        line.append('\n');
+    }
+
+    private void appendTextureVertex(double u, double v) {
+        line.append("vt ");
+        appendFixed(u);
+        line.append(' ');
+        appendFixed(v);
+        line.append('\n');
+    }
+
+    // Угол грани: 0 вместо индекса текстурной вершины или нормали значит, что его нет
+    private void appendCorner(long vertexInd, long textureVertexInd, long normalInd) {
+        line.append(' ').append(vertexInd);
+        if (textureVertexInd == 0 && normalInd == 0) {
+            return;
+        }
+        line.append('/');
+        if (textureVertexInd != 0) {
+            line.append(textureVertexInd);
+        }
+        if (normalInd != 0) {
+            line.append('/').append(normalInd);
+        }
+    }
+
+    // Шесть знаков после точки без String.format: на десятках миллионов чисел он медленнее самой записи на диск
+    private void appendFixed(double value) {
+        long scaled = Math.round(value * FRACTION_SCALE);
+        if (scaled < 0) {
+            line.append('-');
+            scaled = -scaled;
+        }
+        line.append(scaled / (long) FRACTION_SCALE).append('.');
+        final String fraction = Long.toString(scaled % (long) FRACTION_SCALE);
+        for (int i = fraction.length(); i < FRACTION_DIGITS; ++i) {
+            line.append('0');
+        }
+        line.append(fraction);
+    }
+
+    private void flushIfFull() throws IOException {
+        if (line.length() >= FLUSH_SIZE) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        writer.append(line);
+        line.setLength(0);
+    }
+}
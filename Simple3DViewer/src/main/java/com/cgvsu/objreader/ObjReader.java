@@ -4,10 +4,23 @@ import com.cgvsu.math.Vector2f;
 import com.cgvsu.math.Vector3f;
 import com.cgvsu.model.Model;
 import com.cgvsu.model.Polygon;
+import com.cgvsu.util.IntList;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Scanner;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class ObjReader {
 
@@ -16,97 +29,260 @@ public class ObjReader {
 	private static final String OBJ_NORMAL_TOKEN = "vn";
 	private static final String OBJ_FACE_TOKEN = "f";
 
+	private static final long MIN_PARALLEL_CHUNK_SIZE = 1 << 20;
+	private static final int CHUNKS_PER_THREAD = 4;
+	private static final int BOUND_PROBE_SIZE = 1 << 12;
+
 	public static Model read(String fileContent) {
-		Model result = new Model();
+		final byte[] data = fileContent.getBytes(StandardCharsets.UTF_8);
+		return read(new ObjTokenizer(data, 0, data.length));
+	}
 
-		int lineInd = 0;
-		Scanner scanner = new Scanner(fileContent);
-		while (scanner.hasNextLine()) {
-			final String line = scanner.nextLine();
-			ArrayList<String> wordsInLine = new ArrayList<String>(Arrays.asList(line.split("\\s+")));
-			if (wordsInLine.isEmpty()) {
-				continue;
+	// Файл читается потоком прямо из канала: в памяти одновременно лежит только буфер чтения и уже
+	// разобранная модель, а не весь текст файла целиком
+	public static Model read(Path path) throws IOException {
+		return read(path, LoadMonitor.NONE);
+	}
+
+	public static Model read(Path path, LoadMonitor monitor) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return read(channel, new ReadProgress(monitor, channel.size()));
+		}
+	}
+
+	public static Model read(InputStream inputStream) throws IOException {
+		return read(Channels.newChannel(inputStream), new ReadProgress(LoadMonitor.NONE, -1));
+	}
+
+	private static Model read(ReadableByteChannel channel, ReadProgress progress) throws IOException {
+		try {
+			return read(new ObjTokenizer(channel, progress));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	// Параллельный режим: файл режется на куски по границам строк, куски разбираются в ForkJoinPool
+	// независимо друг от друга, а потом склеиваются по порядку. Индексы в полигонах OBJ абсолютные,
+	// поэтому после склейки модель получается ровно такой же, как при последовательном чтении.
+	public static Model readParallel(Path path) throws IOException {
+		return readParallel(path, ForkJoinPool.commonPool(), LoadMonitor.NONE);
+	}
+
+	public static Model readParallel(Path path, ForkJoinPool pool) throws IOException {
+		return readParallel(path, pool, LoadMonitor.NONE);
+	}
+
+	public static Model readParallel(Path path, LoadMonitor monitor) throws IOException {
+		return readParallel(path, ForkJoinPool.commonPool(), monitor);
+	}
+
+	public static Model readParallel(Path path, ForkJoinPool pool, LoadMonitor monitor) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			final long size = channel.size();
+			final ReadProgress progress = new ReadProgress(monitor, size);
+			final long chunkCount = Math.min((long) pool.getParallelism() * CHUNKS_PER_THREAD, size / MIN_PARALLEL_CHUNK_SIZE);
+			if (chunkCount < 2) {
+				return read(channel, progress);
 			}
 
-			final String token = wordsInLine.get(0);
-			wordsInLine.remove(0);
+			final long[] bounds = findChunkBounds(channel, size, (int) chunkCount);
+			final List<ChunkTask> tasks = new ArrayList<>();
+			for (int i = 0; i + 1 < bounds.length; ++i) {
+				ChunkTask task = new ChunkTask(channel, bounds[i], bounds[i + 1], progress);
+				pool.execute(task);
+				tasks.add(task);
+			}
 
-			++lineInd;
-			switch (token) {
-				// Для структур типа вершин методы написаны так, чтобы ничего не знать о внешней среде.
-				// Они принимают только то, что им нужно для работы, а возвращают только то, что могут создать.
-				// Исключение - индекс строки. Он прокидывается, чтобы выводить сообщение об ошибке.
-				// Могло быть иначе. Например, метод parseVertex мог вместо возвращения вершины принимать вектор вершин
-				// модели или сам класс модели, работать с ним.
-				// Но такой подход может привести к большему количеству ошибок в коде. Например, в нем что-то может
-				// тайно сделаться с классом модели.
-				// А еще это портит читаемость
-				// И не стоит забывать про тесты. Чем проще вам задать данные для теста, проверить, что метод рабочий,
-				// тем лучше.
-				case OBJ_VERTEX_TOKEN -> result.vertices.add(parseVertex(wordsInLine, lineInd));
-				case OBJ_TEXTURE_TOKEN -> result.textureVertices.add(parseTextureVertex(wordsInLine, lineInd));
-				case OBJ_NORMAL_TOKEN -> result.normals.add(parseNormal(wordsInLine, lineInd));
-				case OBJ_FACE_TOKEN -> result.polygons.add(parseFace(wordsInLine, lineInd));
-				default -> {}
+			for (ChunkTask task : tasks) {
+				task.join();
 			}
+			progress.checkCancelled();
+			return mergeChunks(tasks);
 		}
+	}
 
+	// Каждая граница ставится сразу после '\n', поэтому "\r\n" никогда не разрывается между кусками
+	private static long[] findChunkBounds(FileChannel channel, long size, int chunkCount) throws IOException {
+		final long[] bounds = new long[chunkCount + 1];
+		final ByteBuffer probe = ByteBuffer.allocate(BOUND_PROBE_SIZE);
+		int count = 1;
+		for (int i = 1; i < chunkCount; ++i) {
+			long position = Math.max(size / chunkCount * i, bounds[count - 1]);
+			long bound = size;
+			search:
+			while (position < size) {
+				probe.clear();
+				final int read = channel.read(probe, position);
+				if (read <= 0) {
+					break;
+				}
+				for (int j = 0; j < read; ++j) {
+					if (probe.get(j) == '\n') {
+						bound = position + j + 1;
+						break search;
+					}
+				}
+				position += read;
+			}
+			if (bound > bounds[count - 1] && bound < size) {
+				bounds[count++] = bound;
+			}
+		}
+		bounds[count++] = size;
+		return Arrays.copyOf(bounds, count);
+	}
+
+	private static Model mergeChunks(List<ChunkTask> chunks) throws IOException {
+		// Первая по порядку ошибка побеждает, а номер строки пересчитывается от начала файла
+		int linesBefore = 0;
+		for (ChunkTask chunk : chunks) {
+			if (chunk.ioError != null) {
+				throw chunk.ioError;
+			}
+			if (chunk.parseError != null) {
+				throw new ObjReaderException(
+						chunk.parseError.getErrorMessage(), linesBefore + chunk.parseError.getLineInd());
+			}
+			linesBefore += chunk.lineCount;
+		}
+
+		Model result = new Model();
+		int vertexCount = 0, textureVertexCount = 0, normalCount = 0, polygonCount = 0, cornerCount = 0;
+		for (ChunkTask chunk : chunks) {
+			vertexCount += chunk.result.getVertexCount();
+			textureVertexCount += chunk.result.getTextureVertexCount();
+			normalCount += chunk.result.getNormalCount();
+			polygonCount += chunk.result.getPolygonCount();
+			cornerCount += chunk.result.getPolygonCornerCount();
+		}
+		result.ensureCapacity(vertexCount, textureVertexCount, normalCount, polygonCount, cornerCount);
+		for (ChunkTask chunk : chunks) {
+			result.append(chunk.result);
+			chunk.result = null;
+		}
+		result.trimToSize();
 		return result;
 	}
 
-	// Всем методам кроме основного я поставил модификатор доступа protected, чтобы обращаться к ним в тестах
-	protected static Vector3f parseVertex(final ArrayList<String> wordsInLineWithoutToken, int lineInd) {
-		try {
-			return new Vector3f(
-					Float.parseFloat(wordsInLineWithoutToken.get(0)),
-					Float.parseFloat(wordsInLineWithoutToken.get(1)),
-					Float.parseFloat(wordsInLineWithoutToken.get(2)));
+	private static class ChunkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
 
-		} catch(NumberFormatException e) {
-			throw new ObjReaderException("Failed to parse float value.", lineInd);
+		private final FileChannel channel;
+		private final long start;
+		private final long end;
+		private final ReadProgress progress;
+
+		private Model result = new Model();
+		private int lineCount;
+		// Ошибки не бросаются из compute: ForkJoinTask.join может подменить исключение его копией
+		private ObjReaderException parseError;
+		private IOException ioError;
 
-		} catch(IndexOutOfBoundsException e) {
-			throw new ObjReaderException("Too few vertex arguments.", lineInd);
+		ChunkTask(FileChannel channel, long start, long end, ReadProgress progress) {
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+			this.progress = progress;
+		}
+
+		@Override
+		protected void compute() {
+			try {
+				lineCount = parse(new ObjTokenizer(new FileRegionChannel(channel, start, end), progress), result);
+			} catch (ObjReaderException e) {
+				parseError = e;
+			} catch (UncheckedIOException e) {
+				ioError = e.getCause();
+			}
 		}
 	}
 
-	protected static Vector2f parseTextureVertex(final ArrayList<String> wordsInLineWithoutToken, int lineInd) {
-		try {
-			return new Vector2f(
-					Float.parseFloat(wordsInLineWithoutToken.get(0)),
-					Float.parseFloat(wordsInLineWithoutToken.get(1)));
+	private static Model read(ObjTokenizer words) {
+		Model result = new Model();
+		parse(words, result);
+		result.trimToSize();
+		return result;
+	}
 
-		} catch(NumberFormatException e) {
-			throw new ObjReaderException("Failed to parse float value.", lineInd);
+	// Возвращает число строк, которые попали в нумерацию
+	private static int parse(ObjTokenizer words, Model result) {
+		final float[] coordinates = new float[3];
+		final IntList faceVertexIndices = new IntList();
+		final IntList faceTextureVertexIndices = new IntList();
+		final IntList faceNormalIndices = new IntList();
+
+		int lineInd = 0;
+		while (words.nextLine()) {
+			if (words.isBlankLine()) {
+				continue;
+			}
+			words.nextWord();
 
-		} catch(IndexOutOfBoundsException e) {
-			throw new ObjReaderException("Too few texture vertex arguments.", lineInd);
+			++lineInd;
+			// Для структур типа вершин методы написаны так, чтобы ничего не знать о внешней среде.
+			// Они принимают только то, что им нужно для работы, а возвращают только то, что могут создать.
+			// Исключение - индекс строки. Он прокидывается, чтобы выводить сообщение об ошибке.
+			// Могло быть иначе. Например, метод parseVertex мог вместо возвращения вершины принимать вектор вершин
+			// модели или сам класс модели, работать с ним.
+			// Но такой подход может привести к большему количеству ошибок в коде. Например, в нем что-то может
+			// тайно сделаться с классом модели.
+			// А еще это портит читаемость
+			// И не стоит забывать про тесты. Чем проще вам задать данные для теста, проверить, что метод рабочий,
+			// тем лучше.
+			// Координаты пишутся в переиспользуемый массив, а не в новый вектор на каждую строку.
+			if (words.wordEquals(OBJ_VERTEX_TOKEN)) {
+				parseVertex(words, lineInd, coordinates);
+				result.addVertex(coordinates[0], coordinates[1], coordinates[2]);
+			} else if (words.wordEquals(OBJ_TEXTURE_TOKEN)) {
+				parseTextureVertex(words, lineInd, coordinates);
+				result.addTextureVertex(coordinates[0], coordinates[1]);
+			} else if (words.wordEquals(OBJ_NORMAL_TOKEN)) {
+				parseNormal(words, lineInd, coordinates);
+				result.addNormal(coordinates[0], coordinates[1], coordinates[2]);
+			} else if (words.wordEquals(OBJ_FACE_TOKEN)) {
+				parseFace(words, lineInd, faceVertexIndices, faceTextureVertexIndices, faceNormalIndices);
+				result.addPolygon(
+						faceVertexIndices.elements(),
+						faceTextureVertexIndices.elements(),
+						faceNormalIndices.elements(),
+						faceVertexIndices.size());
+			}
 		}
+
+		return lineInd;
 	}
 
-	protected static Vector3f parseNormal(final ArrayList<String> wordsInLineWithoutToken, int lineInd) {
-		try {
-			return new Vector3f(
-					Float.parseFloat(wordsInLineWithoutToken.get(0)),
-					Float.parseFloat(wordsInLineWithoutToken.get(1)),
-					Float.parseFloat(wordsInLineWithoutToken.get(2)));
+	// Всем методам кроме основного я поставил модификатор доступа protected, чтобы обращаться к ним в тестах
+	protected static Vector3f parseVertex(final ArrayList<String> wordsInLineWithoutToken, int lineInd) {
+		final float[] coordinates = new float[3];
+		parseVertex(ObjTokenizer.ofWords(wordsInLineWithoutToken), lineInd, coordinates);
+		return new Vector3f(coordinates[0], coordinates[1], coordinates[2]);
+	}
 
-		} catch(NumberFormatException e) {
-			throw new ObjReaderException("Failed to parse float value.", lineInd);
+	protected static Vector2f parseTextureVertex(final ArrayList<String> wordsInLineWithoutToken, int lineInd) {
+		final float[] coordinates = new float[2];
+		parseTextureVertex(ObjTokenizer.ofWords(wordsInLineWithoutToken), lineInd, coordinates);
+		return new Vector2f(coordinates[0], coordinates[1]);
+	}
 
-		} catch(IndexOutOfBoundsException e) {
-			throw new ObjReaderException("Too few normal arguments.", lineInd);
-		}
+	protected static Vector3f parseNormal(final ArrayList<String> wordsInLineWithoutToken, int lineInd) {
+		final float[] coordinates = new float[3];
+		parseNormal(ObjTokenizer.ofWords(wordsInLineWithoutToken), lineInd, coordinates);
+		return new Vector3f(coordinates[0], coordinates[1], coordinates[2]);
 	}
 
 	protected static Polygon parseFace(final ArrayList<String> wordsInLineWithoutToken, int lineInd) {
+		IntList vertexIndices = new IntList();
+		IntList textureVertexIndices = new IntList();
+		IntList normalIndices = new IntList();
+		parseFace(ObjTokenizer.ofWords(wordsInLineWithoutToken), lineInd, vertexIndices, textureVertexIndices, normalIndices);
+
 		ArrayList<Integer> onePolygonVertexIndices = new ArrayList<Integer>();
 		ArrayList<Integer> onePolygonTextureVertexIndices = new ArrayList<Integer>();
 		ArrayList<Integer> onePolygonNormalIndices = new ArrayList<Integer>();
-
-		for (String s : wordsInLineWithoutToken) {
-			parseFaceWord(s, onePolygonVertexIndices, onePolygonTextureVertexIndices, onePolygonNormalIndices, lineInd);
-		}
+		addCornerIndices(vertexIndices, textureVertexIndices, normalIndices,
+				onePolygonVertexIndices, onePolygonTextureVertexIndices, onePolygonNormalIndices);
 
 		Polygon result = new Polygon();
 		result.setVertexIndices(onePolygonVertexIndices);
@@ -115,6 +291,73 @@ public class ObjReader {
 		return result;
 	}
 
+	// Переводит индексы углов с Model.NO_INDEX на месте отсутствующих в старые списки, где отсутствующих просто нет
+	private static void addCornerIndices(
+			IntList vertexIndices,
+			IntList textureVertexIndices,
+			IntList normalIndices,
+			ArrayList<Integer> onePolygonVertexIndices,
+			ArrayList<Integer> onePolygonTextureVertexIndices,
+			ArrayList<Integer> onePolygonNormalIndices) {
+		for (int i = 0; i < vertexIndices.size(); ++i) {
+			onePolygonVertexIndices.add(vertexIndices.get(i));
+			if (textureVertexIndices.get(i) != Model.NO_INDEX) {
+				onePolygonTextureVertexIndices.add(textureVertexIndices.get(i));
+			}
+			if (normalIndices.get(i) != Model.NO_INDEX) {
+				onePolygonNormalIndices.add(normalIndices.get(i));
+			}
+		}
+	}
+
+	// Дальше те же методы, но слова они берут прямо из курсора по строке, а числа кладут в переданный массив.
+	// Аргументы читаются по порядку, поэтому, как и раньше, "v 1 x" - это ошибка разбора числа,
+	// а "v 1 2" - нехватка аргументов.
+	static void parseVertex(final ObjTokenizer wordsWithoutToken, int lineInd, final float[] coordinates) {
+		coordinates[0] = nextFloat(wordsWithoutToken, "Too few vertex arguments.", lineInd);
+		coordinates[1] = nextFloat(wordsWithoutToken, "Too few vertex arguments.", lineInd);
+		coordinates[2] = nextFloat(wordsWithoutToken, "Too few vertex arguments.", lineInd);
+	}
+
+	static void parseTextureVertex(final ObjTokenizer wordsWithoutToken, int lineInd, final float[] coordinates) {
+		coordinates[0] = nextFloat(wordsWithoutToken, "Too few texture vertex arguments.", lineInd);
+		coordinates[1] = nextFloat(wordsWithoutToken, "Too few texture vertex arguments.", lineInd);
+	}
+
+	static void parseNormal(final ObjTokenizer wordsWithoutToken, int lineInd, final float[] coordinates) {
+		coordinates[0] = nextFloat(wordsWithoutToken, "Too few normal arguments.", lineInd);
+		coordinates[1] = nextFloat(wordsWithoutToken, "Too few normal arguments.", lineInd);
+		coordinates[2] = nextFloat(wordsWithoutToken, "Too few normal arguments.", lineInd);
+	}
+
+	private static float nextFloat(final ObjTokenizer words, final String tooFewMessage, int lineInd) {
+		if (!words.nextWord()) {
+			throw new ObjReaderException(tooFewMessage, lineInd);
+		}
+		try {
+			return words.wordAsFloat();
+
+		} catch(NumberFormatException e) {
+			throw new ObjReaderException("Failed to parse float value.", lineInd);
+		}
+	}
+
+	// Индексы углов кладутся в три параллельных списка, по одному значению на каждое слово.
+	// Отсутствующие индексы текстурных координат и нормалей записываются как Model.NO_INDEX.
+	static void parseFace(
+			final ObjTokenizer wordsWithoutToken,
+			int lineInd,
+			IntList vertexIndices,
+			IntList textureVertexIndices,
+			IntList normalIndices) {
+		vertexIndices.clear();
+		textureVertexIndices.clear();
+		normalIndices.clear();
+		while (wordsWithoutToken.nextWord()) {
+			parseFaceWord(wordsWithoutToken, vertexIndices, textureVertexIndices, normalIndices, lineInd);
+		}
+	}
+
 	// Обратите внимание, что для чтения полигонов я выделил еще один вспомогательный метод.
 	// Это бывает очень полезно и с точки зрения структурирования алгоритма в голове, и с точки зрения тестирования.
 	// В радикальных случаях не бойтесь выносить в отдельные методы и тестировать код из одной-двух строчек.
@@ -124,22 +367,39 @@ public class ObjReader {
 			ArrayList<Integer> onePolygonTextureVertexIndices,
 			ArrayList<Integer> onePolygonNormalIndices,
 			int lineInd) {
+		ObjTokenizer word = ObjTokenizer.ofWords(List.of(wordInLine));
+		word.nextWord();
+		IntList vertexIndices = new IntList(1);
+		IntList textureVertexIndices = new IntList(1);
+		IntList normalIndices = new IntList(1);
+		parseFaceWord(word, vertexIndices, textureVertexIndices, normalIndices, lineInd);
+		addCornerIndices(vertexIndices, textureVertexIndices, normalIndices,
+				onePolygonVertexIndices, onePolygonTextureVertexIndices, onePolygonNormalIndices);
+	}
+
+	static void parseFaceWord(
+			ObjTokenizer word,
+			IntList vertexIndices,
+			IntList textureVertexIndices,
+			IntList normalIndices,
+			int lineInd) {
 		try {
-			String[] wordIndices = wordInLine.split("/");
-			switch (wordIndices.length) {
+			switch (word.splitFaceWord()) {
 				case 1 -> {
-					onePolygonVertexIndices.add(Integer.parseInt(wordIndices[0]) - 1);
+					vertexIndices.add(word.faceWordPartAsInt(0) - 1);
+					textureVertexIndices.add(Model.NO_INDEX);
+					normalIndices.add(Model.NO_INDEX);
 				}
 				case 2 -> {
-					onePolygonVertexIndices.add(Integer.parseInt(wordIndices[0]) - 1);
-					onePolygonTextureVertexIndices.add(Integer.parseInt(wordIndices[1]) - 1);
+					vertexIndices.add(word.faceWordPartAsInt(0) - 1);
+					textureVertexIndices.add(word.faceWordPartAsInt(1) - 1);
+					normalIndices.add(Model.NO_INDEX);
 				}
 				case 3 -> {
-					onePolygonVertexIndices.add(Integer.parseInt(wordIndices[0]) - 1);
-					onePolygonNormalIndices.add(Integer.parseInt(wordIndices[2]) - 1);
-					if (!wordIndices[1].equals("")) {
-						onePolygonTextureVertexIndices.add(Integer.parseInt(wordIndices[1]) - 1);
-					}
+					vertexIndices.add(word.faceWordPartAsInt(0) - 1);
+					final int normalIndex = word.faceWordPartAsInt(2) - 1;
+					textureVertexIndices.add(word.isFaceWordPartEmpty(1) ? Model.NO_INDEX : word.faceWordPartAsInt(1) - 1);
+					normalIndices.add(normalIndex);
 				}
 				default -> {
 					throw new ObjReaderException("Invalid element size.", lineInd);
@@ -148,9 +408,6 @@ public class ObjReader {
 
 		} catch(NumberFormatException e) {
 			throw new ObjReaderException("Failed to parse int value.", lineInd);
-
-		} catch(IndexOutOfBoundsException e) {
-			throw new ObjReaderException("Too few arguments.", lineInd);
 		}
 	}
 }
@@ -0,0 +1,370 @@
+package com.cgvsu.objreader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// Курсор по байтам OBJ файла. Режет поток на строки, а строки на слова, и разбирает числа прямо из буфера,
+// не создавая промежуточных строк. Правила разбиения повторяют старый код на Scanner и split("\\s+"),
+// поэтому номера строк и тексты ошибок у ObjReader остались прежними.
+class ObjTokenizer {
+
+	private static final int INITIAL_BUFFER_SIZE = 1 << 16;
+
+	// Степени десятки, которые представимы в double без погрешности
+	private static final double[] EXACT_POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+	// 10^15 < 2^53: мантисса из стольких цифр представима в double точно
+	private static final int MAX_MANTISSA_DIGITS = 15;
+
+	private final ReadableByteChannel channel;
+	private final ReadProgress progress;
+	private byte[] buffer;
+	private int dataEnd;
+	private boolean endOfInput;
+
+	private int lineStart;
+	private int lineEnd;
+	private int nextLineStart;
+	private boolean skipLineFeed;
+
+	private int wordStart;
+	private int wordEnd;
+	private boolean atLineStart;
+
+	// Границы частей слова вида v/vt/vn, переиспользуются между вызовами
+	private final int[] partStarts = new int[3];
+	private final int[] partEnds = new int[3];
+
+	ObjTokenizer(ReadableByteChannel channel, ReadProgress progress) {
+		this.channel = channel;
+		this.progress = progress;
+		this.buffer = new byte[INITIAL_BUFFER_SIZE];
+	}
+
+	ObjTokenizer(byte[] data, int from, int to) {
+		this.channel = null;
+		this.progress = null;
+		this.buffer = data;
+		this.nextLineStart = from;
+		this.dataEnd = to;
+		this.endOfInput = true;
+	}
+
+	// Нужен для старых методов, которые принимают уже разбитую на слова строку
+	static ObjTokenizer ofWords(List<String> words) {
+		byte[] line = String.join(" ", words).getBytes(StandardCharsets.UTF_8);
+		ObjTokenizer tokenizer = new ObjTokenizer(line, 0, line.length);
+		tokenizer.nextLine();
+		tokenizer.atLineStart = false;
+		return tokenizer;
+	}
+
+	boolean nextLine() {
+		try {
+			return advanceLine();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private boolean advanceLine() throws IOException {
+		int position = nextLineStart;
+		// Байты [position, scanned) уже просмотрены и конца строки в них нет
+		int scanned = position;
+		while (true) {
+			if (skipLineFeed) {
+				// Предыдущая строка закончилась на '\r', и "\r\n" считается одним переводом строки
+				if (position == dataEnd) {
+					if (endOfInput) {
+						nextLineStart = dataEnd;
+						return false;
+					}
+					fill(position);
+					position = 0;
+					scanned = 0;
+					continue;
+				}
+				if (buffer[position] == '\n') {
+					++position;
+				}
+				scanned = position;
+				skipLineFeed = false;
+			}
+
+			int i = scanned;
+			while (i < dataEnd && buffer[i] != '\n' && buffer[i] != '\r') {
+				++i;
+			}
+			if (i < dataEnd) {
+				setLine(position, i, i + 1);
+				skipLineFeed = buffer[i] == '\r';
+				return true;
+			}
+			if (endOfInput) {
+				if (position == dataEnd) {
+					nextLineStart = dataEnd;
+					return false;
+				}
+				setLine(position, dataEnd, dataEnd);
+				return true;
+			}
+			scanned = i - position;
+			fill(position);
+			position = 0;
+		}
+	}
+
+	// Сдвигает непрочитанный хвост начиная с keepFrom в начало буфера и дочитывает данные из канала
+	private void fill(int keepFrom) throws IOException {
+		final int tail = dataEnd - keepFrom;
+		if (tail == buffer.length) {
+			byte[] grown = new byte[buffer.length * 2];
+			System.arraycopy(buffer, keepFrom, grown, 0, tail);
+			buffer = grown;
+		} else if (keepFrom > 0) {
+			System.arraycopy(buffer, keepFrom, buffer, 0, tail);
+		}
+		dataEnd = tail;
+
+		ByteBuffer target = ByteBuffer.wrap(buffer, dataEnd, buffer.length - dataEnd);
+		int read;
+		do {
+			read = channel.read(target);
+		} while (read == 0);
+		if (read < 0) {
+			endOfInput = true;
+		} else {
+			dataEnd += read;
+			progress.advance(read);
+		}
+	}
+
+	private void setLine(int start, int end, int next) {
+		lineStart = start;
+		lineEnd = end;
+		nextLineStart = next;
+		wordStart = start;
+		wordEnd = start;
+		atLineStart = true;
+	}
+
+	// split("\\s+") у непустой строки из одних пробельных символов возвращал пустой массив, и такие строки
+	// не попадали в нумерацию. Пустая строка при этом считалась.
+	boolean isBlankLine() {
+		if (lineStart == lineEnd) {
+			return false;
+		}
+		for (int i = lineStart; i < lineEnd; ++i) {
+			if (!isWhitespace(buffer[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Первое слово строки берется от самого ее начала, как делал split: у строки с ведущими пробелами
+	// первое слово пустое, и такая строка пропускается.
+	boolean nextWord() {
+		int i = wordEnd;
+		if (atLineStart) {
+			atLineStart = false;
+		} else {
+			while (i < lineEnd && isWhitespace(buffer[i])) {
+				++i;
+			}
+			if (i == lineEnd) {
+				wordStart = wordEnd = lineEnd;
+				return false;
+			}
+		}
+		wordStart = i;
+		while (i < lineEnd && !isWhitespace(buffer[i])) {
+			++i;
+		}
+		wordEnd = i;
+		return true;
+	}
+
+	boolean wordEquals(String token) {
+		final int length = wordEnd - wordStart;
+		if (length != token.length()) {
+			return false;
+		}
+		for (int i = 0; i < length; ++i) {
+			if (buffer[wordStart + i] != token.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	float wordAsFloat() {
+		return parseFloat(buffer, wordStart, wordEnd);
+	}
+
+	// Делит текущее слово по '/' так же, как String.split("/"): пустые части в конце отбрасываются.
+	// Возвращает число частей, слова больше чем из трех частей дают -1.
+	int splitFaceWord() {
+		int lastNonEmpty = -1;
+		int part = 0;
+		int start = wordStart;
+		for (int i = wordStart; i <= wordEnd; ++i) {
+			if (i == wordEnd || buffer[i] == '/') {
+				if (i > start) {
+					if (part >= 3) {
+						return -1;
+					}
+					lastNonEmpty = part;
+				}
+				if (part < 3) {
+					partStarts[part] = start;
+					partEnds[part] = i;
+				}
+				++part;
+				start = i + 1;
+			}
+		}
+		return lastNonEmpty + 1;
+	}
+
+	boolean isFaceWordPartEmpty(int part) {
+		return partStarts[part] == partEnds[part];
+	}
+
+	int faceWordPartAsInt(int part) {
+		return parseInt(buffer, partStarts[part], partEnds[part]);
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+	}
+
+	// Повторяет Integer.parseInt, но читает цифры прямо из буфера
+	static int parseInt(byte[] data, int start, int end) {
+		int i = start;
+		boolean negative = false;
+		if (i < end && (data[i] == '-' || data[i] == '+')) {
+			negative = data[i] == '-';
+			++i;
+		}
+		if (i == end) {
+			throw new NumberFormatException();
+		}
+		final long limit = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+		long result = 0;
+		for (; i < end; ++i) {
+			final int digit = data[i] - '0';
+			if (digit < 0 || digit > 9) {
+				throw new NumberFormatException();
+			}
+			result = result * 10 + digit;
+			if (result > limit) {
+				throw new NumberFormatException();
+			}
+		}
+		return (int) (negative ? -result : result);
+	}
+
+	// Быстрый разбор десятичной записи. Если мантисса и порядок помещаются в double без потери точности,
+	// результат совпадает с Float.parseFloat. Все остальные случаи (длинные мантиссы, NaN, Infinity,
+	// шестнадцатеричная запись, суффиксы f/d, ошибки) отдаются самому Float.parseFloat.
+	static float parseFloat(byte[] data, int start, int end) {
+		int i = start;
+		boolean negative = false;
+		if (i < end && (data[i] == '-' || data[i] == '+')) {
+			negative = data[i] == '-';
+			++i;
+		}
+
+		long mantissa = 0;
+		int significantDigits = 0;
+		int exponent = 0;
+		boolean anyDigit = false;
+		boolean exact = true;
+
+		for (; i < end && data[i] >= '0' && data[i] <= '9'; ++i) {
+			anyDigit = true;
+			final int digit = data[i] - '0';
+			if (mantissa == 0 && digit == 0) {
+				continue;
+			}
+			if (significantDigits < MAX_MANTISSA_DIGITS) {
+				mantissa = mantissa * 10 + digit;
+				++significantDigits;
+			} else {
+				++exponent;
+				exact = false;
+			}
+		}
+		if (i < end && data[i] == '.') {
+			++i;
+			for (; i < end && data[i] >= '0' && data[i] <= '9'; ++i) {
+				anyDigit = true;
+				final int digit = data[i] - '0';
+				if (mantissa == 0 && digit == 0) {
+					--exponent;
+					continue;
+				}
+				if (significantDigits < MAX_MANTISSA_DIGITS) {
+					mantissa = mantissa * 10 + digit;
+					++significantDigits;
+					--exponent;
+				} else if (digit != 0) {
+					exact = false;
+				}
+			}
+		}
+		if (!anyDigit) {
+			return parseFloatSlow(data, start, end);
+		}
+		if (i < end && (data[i] == 'e' || data[i] == 'E')) {
+			++i;
+			boolean negativeExponent = false;
+			if (i < end && (data[i] == '-' || data[i] == '+')) {
+				negativeExponent = data[i] == '-';
+				++i;
+			}
+			if (i == end) {
+				return parseFloatSlow(data, start, end);
+			}
+			int explicitExponent = 0;
+			for (; i < end && data[i] >= '0' && data[i] <= '9'; ++i) {
+				if (explicitExponent < 10000) {
+					explicitExponent = explicitExponent * 10 + (data[i] - '0');
+				}
+			}
+			exponent += negativeExponent ? -explicitExponent : explicitExponent;
+		}
+		if (i != end || !exact) {
+			return parseFloatSlow(data, start, end);
+		}
+		if (mantissa == 0) {
+			return negative ? -0.0f : 0.0f;
+		}
+		if (exponent < -22 || exponent > 22) {
+			return parseFloatSlow(data, start, end);
+		}
+
+		// mantissa < 10^15 < 2^53 и степень десятки точна, поэтому value - правильно округленный double
+		final double value = exponent >= 0
+				? mantissa * EXACT_POWERS_OF_TEN[exponent]
+				: mantissa / EXACT_POWERS_OF_TEN[-exponent];
+		// Двойное округление double -> float может ошибиться, только если value ровно посередине
+		// между двумя соседними float. Такие значения и значения вне нормального диапазона разбираем медленно.
+		if ((Double.doubleToRawLongBits(value) & 0x1FFFFFFFL) == 0x10000000L
+				|| value > Float.MAX_VALUE || value < Float.MIN_NORMAL) {
+			return parseFloatSlow(data, start, end);
+		}
+		final float result = (float) value;
+		return negative ? -result : result;
+	}
+
+	private static float parseFloatSlow(byte[] data, int start, int end) {
+		return Float.parseFloat(new String(data, start, end - start, StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,28 @@
+package com.cgvsu.objreader;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Общий счетчик прочитанных байт для одного файла. Его делят между собой все куски при параллельном чтении.
+class ReadProgress {
+
+    private final LoadMonitor monitor;
+    private final long totalBytes;
+    private final AtomicLong processedBytes = new AtomicLong();
+
+    ReadProgress(LoadMonitor monitor, long totalBytes) {
+        this.monitor = monitor;
+        this.totalBytes = totalBytes;
+    }
+
+    void advance(long bytes) {
+        checkCancelled();
+        monitor.progress(processedBytes.addAndGet(bytes), totalBytes);
+    }
+
+    void checkCancelled() {
+        if (monitor.isCancelled()) {
+            throw new CancellationException("Загрузка модели отменена");
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.cgvsu.render_engine;
-import javax.vecmath.Vector3f;
-import javax.vecmath.Matrix4f;
+
+import com.cgvsu.math.Matrix4f;
+import com.cgvsu.math.Vector3f;
 
 public class Camera {
 
@@ -21,14 +22,25 @@ public class Camera {
 
     public void setPosition(final Vector3f position) {
         this.position = position;
+        ++version;
     }
 
     public void setTarget(final Vector3f target) {
         this.target = target;
+        ++version;
     }
 
     public void setAspectRatio(final float aspectRatio) {
-        this.aspectRatio = aspectRatio;
+        if (this.aspectRatio != aspectRatio) {
+            this.aspectRatio = aspectRatio;
+            ++version;
+        }
+    }
+
+    // Растет при каждом изменении камеры через ее методы. Если поменять вектор из getPosition или getTarget
+    // напрямую, версия останется прежней.
+    public long getVersion() {
+        return version;
     }
 
     public Vector3f getPosition() {
@@ -40,11 +52,13 @@ public class Camera {
     }
 
     public void movePosition(final Vector3f translation) {
-        this.position.add(translation);
+        this.position.add(translation, this.position);
+        ++version;
     }
 
     public void moveTarget(final Vector3f translation) {
-        this.target.add(target);
+        this.target.add(translation, this.target);
+        ++version;
     }
 
     Matrix4f getViewMatrix() {
@@ -55,10 +69,19 @@ public class Camera {
         return GraphicConveyor.perspective(fov, aspectRatio, nearPlane, farPlane);
     }
 
+    void getViewMatrix(Matrix4f result) {
+        GraphicConveyor.lookAt(position, target, result);
+    }
+
+    void getProjectionMatrix(Matrix4f result) {
+        GraphicConveyor.perspective(fov, aspectRatio, nearPlane, farPlane, result);
+    }
+
     private Vector3f position;
     private Vector3f target;
     private float fov;
     private float aspectRatio;
     private float nearPlane;
     private float farPlane;
+    private long version;
 }
\ No newline at end of file
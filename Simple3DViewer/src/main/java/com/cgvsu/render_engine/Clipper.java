@@ -0,0 +1,229 @@
+package com.cgvsu.render_engine;
+
+import static com.cgvsu.render_engine.GraphicConveyor.*;
+
+// Отсечение в однородных координатах, то есть до деления на w. Точки за камерой имеют w <= 0, и после деления
+// они улетают в случайные места экрана, поэтому все, что пересекает ближнюю плоскость, сначала обрезается по ней.
+//
+// Каждой вершине сопоставляется маска плоскостей, за которыми она лежит. Если у всех вершин примитива есть общий
+// бит из OUTSIDE_VIEW, примитив целиком не виден. Если хотя бы у одной есть бит из NEEDS_CLIPPING, его надо резать.
+// По бокам режем не по краю экрана, а по широкой полосе вокруг него: лишнее за краем отбросит растеризатор,
+// а полоса нужна только чтобы экранные координаты оставались разумными числами.
+class Clipper {
+
+    static final int LEFT = 1;
+    static final int RIGHT = 1 << 1;
+    static final int BOTTOM = 1 << 2;
+    static final int TOP = 1 << 3;
+    static final int NEAR = 1 << 4;
+    static final int FAR = 1 << 5;
+    static final int GUARD_LEFT = 1 << 6;
+    static final int GUARD_RIGHT = 1 << 7;
+    static final int GUARD_BOTTOM = 1 << 8;
+    static final int GUARD_TOP = 1 << 9;
+
+    static final int OUTSIDE_VIEW = LEFT | RIGHT | BOTTOM | TOP | NEAR | FAR;
+    static final int NEEDS_CLIPPING = NEAR | FAR | GUARD_LEFT | GUARD_RIGHT | GUARD_BOTTOM | GUARD_TOP;
+
+    private static final int PLANE_COUNT = 10;
+    // Во сколько раз полоса отсечения шире видимой области
+    private static final float GUARD_BAND_EXTENT = 64 * VIEWPORT_EXTENT;
+
+    private static final int CLIP_POINT_SIZE = 4;
+    // Экранные x, y и глубина
+    static final int SCREEN_POINT_SIZE = 3;
+
+    // Концы последнего отрезка после clipLine
+    float lineX0;
+    float lineY0;
+    float lineX1;
+    float lineY1;
+
+    // Вершины последнего многоугольника после clipPolygon
+    private float[] screenPoints = new float[SCREEN_POINT_SIZE * 16];
+    private float[] clipPoints = new float[CLIP_POINT_SIZE * 16];
+    private float[] clipPointsSwap = new float[CLIP_POINT_SIZE * 16];
+
+    static void computeOutcodes(
+            final float[] transformed,
+            final int[] vertexIndices, final int from, final int to,
+            final int[] outcodes) {
+        for (int i = from; i < to; ++i) {
+            final int vertexInd = vertexIndices[i];
+            final int offset = TRANSFORMED_VERTEX_SIZE * vertexInd;
+            outcodes[vertexInd] = outcode(
+                    transformed[offset + CLIP_X], transformed[offset + CLIP_Y],
+                    transformed[offset + CLIP_Z], transformed[offset + CLIP_W]);
+        }
+    }
+
+    static int outcode(final float x, final float y, final float z, final float w) {
+        int code = 0;
+        final float view = VIEWPORT_EXTENT * w;
+        final float guard = GUARD_BAND_EXTENT * w;
+        if (x < -view) {
+            code |= x < -guard ? LEFT | GUARD_LEFT : LEFT;
+        }
+        if (x > view) {
+            code |= x > guard ? RIGHT | GUARD_RIGHT : RIGHT;
+        }
+        if (y < -view) {
+            code |= y < -guard ? BOTTOM | GUARD_BOTTOM : BOTTOM;
+        }
+        if (y > view) {
+            code |= y > guard ? TOP | GUARD_TOP : TOP;
+        }
+        if (z < -w) {
+            code |= NEAR;
+        }
+        if (z > w) {
+            code |= FAR;
+        }
+        return code;
+    }
+
+    float[] getScreenPoints() {
+        return screenPoints;
+    }
+
+    // Отрезок между вершинами from и to режется по плоскостям из planeMask (параметрически, как у Лианга-Барски).
+    // Если от него что-то осталось, возвращает true, а экранные концы лежат в lineX0 .. lineY1.
+    boolean clipLine(
+            final float[] transformed, final int fromInd, final int toInd, final int planeMask,
+            final int width, final int height) {
+        final int from = TRANSFORMED_VERTEX_SIZE * fromInd;
+        final int to = TRANSFORMED_VERTEX_SIZE * toInd;
+        final float x0 = transformed[from + CLIP_X];
+        final float y0 = transformed[from + CLIP_Y];
+        final float z0 = transformed[from + CLIP_Z];
+        final float w0 = transformed[from + CLIP_W];
+        final float dx = transformed[to + CLIP_X] - x0;
+        final float dy = transformed[to + CLIP_Y] - y0;
+        final float dz = transformed[to + CLIP_Z] - z0;
+        final float dw = transformed[to + CLIP_W] - w0;
+
+        float tStart = 0;
+        float tEnd = 1;
+        for (int plane = 0; plane < PLANE_COUNT; ++plane) {
+            if ((planeMask & (1 << plane)) == 0) {
+                continue;
+            }
+            final float d0 = distance(plane, x0, y0, z0, w0);
+            final float d1 = distance(plane, x0 + dx, y0 + dy, z0 + dz, w0 + dw);
+            if (d0 < 0 && d1 < 0) {
+                return false;
+            }
+            if (d0 < 0) {
+                tStart = Math.max(tStart, d0 / (d0 - d1));
+            } else if (d1 < 0) {
+                tEnd = Math.min(tEnd, d0 / (d0 - d1));
+            }
+        }
+        if (tStart > tEnd) {
+            return false;
+        }
+
+        final float startW = w0 + tStart * dw;
+        final float endW = w0 + tEnd * dw;
+        lineX0 = (x0 + tStart * dx) / startW * width + width / 2.0F;
+        lineY0 = -(y0 + tStart * dy) / startW * height + height / 2.0F;
+        lineX1 = (x0 + tEnd * dx) / endW * width + width / 2.0F;
+        lineY1 = -(y0 + tEnd * dy) / endW * height + height / 2.0F;
+        return true;
+    }
+
+    // Многоугольник из вершин vertexIndices[from..to) режется по плоскостям из planeMask (Сазерленд-Ходжмен).
+    // Возвращает число оставшихся вершин, их экранные координаты лежат в getScreenPoints().
+    int clipPolygon(
+            final float[] transformed, final int[] vertexIndices, final int from, final int to, final int planeMask,
+            final int width, final int height) {
+        int count = to - from;
+        ensureCapacity(count + PLANE_COUNT);
+        for (int i = 0; i < count; ++i) {
+            final int offset = TRANSFORMED_VERTEX_SIZE * vertexIndices[from + i];
+            System.arraycopy(transformed, offset + CLIP_X, clipPoints, CLIP_POINT_SIZE * i, CLIP_POINT_SIZE);
+        }
+
+        for (int plane = 0; plane < PLANE_COUNT && count > 0; ++plane) {
+            if ((planeMask & (1 << plane)) != 0) {
+                count = clipByPlane(plane, count);
+            }
+        }
+
+        for (int i = 0; i < count; ++i) {
+            final int offset = CLIP_POINT_SIZE * i;
+            clipToScreen(clipPoints[offset], clipPoints[offset + 1], clipPoints[offset + 2], clipPoints[offset + 3],
+                    width, height, screenPoints, SCREEN_POINT_SIZE * i);
+        }
+        return count;
+    }
+
+    private int clipByPlane(final int plane, final int count) {
+        final float[] input = clipPoints;
+        final float[] output = clipPointsSwap;
+        int outputCount = 0;
+
+        int previous = CLIP_POINT_SIZE * (count - 1);
+        float previousDistance = distance(plane, input[previous], input[previous + 1], input[previous + 2], input[previous + 3]);
+        for (int i = 0; i < count; ++i) {
+            final int current = CLIP_POINT_SIZE * i;
+            final float currentDistance = distance(plane, input[current], input[current + 1], input[current + 2], input[current + 3]);
+            if ((previousDistance >= 0) != (currentDistance >= 0)) {
+                // Точка пересечения всегда считается от внутренней вершины, тогда у соседних полигонов
+                // с общим ребром она получается одной и той же
+                final int inside = previousDistance >= 0 ? previous : current;
+                final int outside = previousDistance >= 0 ? current : previous;
+                final float insideDistance = previousDistance >= 0 ? previousDistance : currentDistance;
+                final float outsideDistance = previousDistance >= 0 ? currentDistance : previousDistance;
+                final float t = insideDistance / (insideDistance - outsideDistance);
+                final int offset = CLIP_POINT_SIZE * outputCount++;
+                for (int k = 0; k < CLIP_POINT_SIZE; ++k) {
+                    output[offset + k] = input[inside + k] + t * (input[outside + k] - input[inside + k]);
+                }
+            }
+            if (currentDistance >= 0) {
+                System.arraycopy(input, current, output, CLIP_POINT_SIZE * outputCount++, CLIP_POINT_SIZE);
+            }
+            previous = current;
+            previousDistance = currentDistance;
+        }
+
+        clipPoints = output;
+        clipPointsSwap = input;
+        return outputCount;
+    }
+
+    private void ensureCapacity(final int pointCount) {
+        if (clipPoints.length < CLIP_POINT_SIZE * pointCount) {
+            clipPoints = new float[CLIP_POINT_SIZE * pointCount];
+            clipPointsSwap = new float[CLIP_POINT_SIZE * pointCount];
+            screenPoints = new float[SCREEN_POINT_SIZE * pointCount];
+        }
+    }
+
+    // Расстояние со знаком до плоскости номер plane (бит 1 << plane в маске), внутри оно неотрицательно
+    private static float distance(final int plane, final float x, final float y, final float z, final float w) {
+        switch (plane) {
+            case 0:
+                return x + VIEWPORT_EXTENT * w;
+            case 1:
+                return VIEWPORT_EXTENT * w - x;
+            case 2:
+                return y + VIEWPORT_EXTENT * w;
+            case 3:
+                return VIEWPORT_EXTENT * w - y;
+            case 4:
+                return z + w;
+            case 5:
+                return w - z;
+            case 6:
+                return x + GUARD_BAND_EXTENT * w;
+            case 7:
+                return GUARD_BAND_EXTENT * w - x;
+            case 8:
+                return y + GUARD_BAND_EXTENT * w;
+            default:
+                return GUARD_BAND_EXTENT * w - y;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.cgvsu.render_engine;
+
+import java.util.Arrays;
+
+// Кадр в памяти: цвет в формате ARGB и глубина для каждого пикселя. От JavaFX не зависит,
+// массивы переиспользуются между кадрами и пересоздаются только при смене размера.
+public class FrameBuffer {
+
+    private int width;
+    private int height;
+    private int[] colors = new int[0];
+    private float[] depths = new float[0];
+
+    public FrameBuffer() {
+    }
+
+    public FrameBuffer(int width, int height) {
+        resize(width, height);
+    }
+
+    public void resize(int width, int height) {
+        if (width < 0 || height < 0) {
+            throw new IllegalArgumentException("Размер кадра не может быть отрицательным: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        final int size = width * height;
+        if (colors.length != size) {
+            colors = new int[size];
+            depths = new float[size];
+        }
+    }
+
+    public void clear(int color) {
+        Arrays.fill(colors, color);
+        Arrays.fill(depths, Float.POSITIVE_INFINITY);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // Строки идут подряд сверху вниз, пиксель (x, y) лежит по индексу y * width + x
+    public int[] getColors() {
+        return colors;
+    }
+
+    public float[] getDepths() {
+        return depths;
+    }
+}
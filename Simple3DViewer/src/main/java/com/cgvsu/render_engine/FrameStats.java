@@ -0,0 +1,238 @@
+package com.cgvsu.render_engine;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Замеры последних CAPACITY кадров RenderEngine: время каждой стадии по System.nanoTime, сколько вершин переведено,
+// сколько полигонов в видимых кусках и сколько байт выделил поток рендера, если JVM умеет это считать.
+//
+// Пишет только поток рендера, и без блокировок: кадр сначала заполняет свою ячейку кольцевого буфера, а потом
+// публикуется увеличением frameCount. Читать можно из любого потока, но если в это время закончится кадр,
+// номера кадров сдвинутся на один, а отставший на целый круг читатель увидит ячейку, которую уже переписывают.
+// Для статистики это допустимо.
+public class FrameStats {
+
+    public enum Stage {
+        // Матрицы кадра и выбор уровня детализации
+        SETUP,
+        // Отсечение кусков и перевод вершин на экран
+        TRANSFORM,
+        // Ребра на холст или закраска треугольников в FrameBuffer
+        DRAW,
+        // Готовый FrameBuffer на холст
+        PRESENT
+    }
+
+    public static final int CAPACITY = 1024;
+
+    // Так помечается размер выделенной памяти, если JVM его не считает
+    public static final long NOT_AVAILABLE = -1;
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN = allocationCounter();
+
+    private final long[] frameStarts = new long[CAPACITY];
+    private final long[] frameTimes = new long[CAPACITY];
+    private final long[][] stageTimes = new long[STAGES.length][CAPACITY];
+    private final long[] vertexCounts = new long[CAPACITY];
+    private final long[] polygonCounts = new long[CAPACITY];
+    private final long[] allocatedBytes = new long[CAPACITY];
+    private final AtomicLong frameCount = new AtomicLong();
+
+    // Текущий кадр
+    private long frameStart;
+    private long stageStart;
+    private long allocatedAtStart;
+    private final long[] currentStageTimes = new long[STAGES.length];
+    private long currentVertexCount;
+    private long currentPolygonCount;
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        try {
+            if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                    && bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+                return bean;
+            }
+        } catch (UnsupportedOperationException ignored) {
+        }
+        return null;
+    }
+
+    private static long currentThreadAllocatedBytes() {
+        return THREAD_BEAN != null ? THREAD_BEAN.getCurrentThreadAllocatedBytes() : NOT_AVAILABLE;
+    }
+
+    void beginFrame() {
+        frameStart = System.nanoTime();
+        stageStart = frameStart;
+        allocatedAtStart = currentThreadAllocatedBytes();
+        Arrays.fill(currentStageTimes, 0);
+        currentVertexCount = 0;
+        currentPolygonCount = 0;
+    }
+
+    // Время с конца предыдущей стадии (или с начала кадра) записывается на stage
+    void endStage(final Stage stage) {
+        final long now = System.nanoTime();
+        currentStageTimes[stage.ordinal()] += now - stageStart;
+        stageStart = now;
+    }
+
+    void addVertices(final int count) {
+        currentVertexCount += count;
+    }
+
+    void addPolygons(final int count) {
+        currentPolygonCount += count;
+    }
+
+    void endFrame() {
+        final long end = System.nanoTime();
+        final long allocatedAtEnd = currentThreadAllocatedBytes();
+        final long frameInd = frameCount.get();
+        final int slot = (int) (frameInd % CAPACITY);
+        frameStarts[slot] = frameStart;
+        frameTimes[slot] = end - frameStart;
+        for (int stage = 0; stage < STAGES.length; ++stage) {
+            stageTimes[stage][slot] = currentStageTimes[stage];
+        }
+        vertexCounts[slot] = currentVertexCount;
+        polygonCounts[slot] = currentPolygonCount;
+        allocatedBytes[slot] = allocatedAtStart == NOT_AVAILABLE ? NOT_AVAILABLE : allocatedAtEnd - allocatedAtStart;
+        // Запись в volatile после заполнения ячейки: кто прочитал новое значение, видит и ячейку
+        frameCount.set(frameInd + 1);
+    }
+
+    // Сколько кадров нарисовано за все время
+    public long getFrameCount() {
+        return frameCount.get();
+    }
+
+    // Сколько последних кадров хранится, не больше CAPACITY
+    public int size() {
+        return (int) Math.min(frameCount.get(), CAPACITY);
+    }
+
+    // i = 0 - самый старый из хранимых кадров, size() - 1 - последний
+    public long getFrameTime(int i) {
+        return frameTimes[slot(i)];
+    }
+
+    public long getFrameStart(int i) {
+        return frameStarts[slot(i)];
+    }
+
+    public long getStageTime(int i, Stage stage) {
+        return stageTimes[stage.ordinal()][slot(i)];
+    }
+
+    public long getVertexCount(int i) {
+        return vertexCounts[slot(i)];
+    }
+
+    public long getPolygonCount(int i) {
+        return polygonCounts[slot(i)];
+    }
+
+    public long getAllocatedBytes(int i) {
+        return allocatedBytes[slot(i)];
+    }
+
+    private int slot(int i) {
+        final long count = frameCount.get();
+        final int size = (int) Math.min(count, CAPACITY);
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Нет кадра с номером " + i + ", хранится " + size);
+        }
+        return (int) ((count - size + i) % CAPACITY);
+    }
+
+    // Кадров в секунду по последней секунде перед последним кадром. Рендер рисует только при изменениях,
+    // поэтому в простое число падает до нуля, а не держится на частоте экрана.
+    public double getFramesPerSecond() {
+        final int size = size();
+        if (size < 2) {
+            return 0;
+        }
+        final long last = getFrameStart(size - 1);
+        int first = size - 1;
+        while (first > 0 && last - getFrameStart(first - 1) < NANOS_PER_SECOND) {
+            --first;
+        }
+        if (first == size - 1) {
+            return 0;
+        }
+        return (double) (size - 1 - first) * NANOS_PER_SECOND / (last - getFrameStart(first));
+    }
+
+    // Время кадра в наносекундах, которое не превышают percentile процентов хранимых кадров
+    public long getFrameTimePercentile(double percentile) {
+        final int size = size();
+        if (size == 0) {
+            return 0;
+        }
+        long[] sorted = new long[size];
+        for (int i = 0; i < size; ++i) {
+            sorted[i] = getFrameTime(i);
+        }
+        Arrays.sort(sorted);
+        final int index = (int) Math.ceil(percentile / 100 * size) - 1;
+        return sorted[Math.max(0, Math.min(size - 1, index))];
+    }
+
+    // Одна строка на кадр, времена в наносекундах, allocated_bytes = -1, если JVM не считает выделения
+    public void writeCsv(Writer writer) throws IOException {
+        writer.write("frame,start_ns,total_ns");
+        for (Stage stage : STAGES) {
+            writer.write("," + stage.name().toLowerCase(Locale.ROOT) + "_ns");
+        }
+        writer.write(",vertices,polygons,allocated_bytes\n");
+
+        final long count = frameCount.get();
+        final int size = size();
+        for (int i = 0; i < size; ++i) {
+            StringBuilder line = new StringBuilder();
+            line.append(count - size + i).append(',').append(getFrameStart(i)).append(',').append(getFrameTime(i));
+            for (Stage stage : STAGES) {
+                line.append(',').append(getStageTime(i, stage));
+            }
+            line.append(',').append(getVertexCount(i))
+                    .append(',').append(getPolygonCount(i))
+                    .append(',').append(getAllocatedBytes(i))
+                    .append('\n');
+            writer.write(line.toString());
+        }
+    }
+
+    // Сводка и те же кадры, что в CSV. allocated_bytes равно null, если JVM не считает выделения.
+    public void writeJson(Writer writer) throws IOException {
+        final long count = frameCount.get();
+        final int size = size();
+        writer.write(String.format(Locale.ROOT,
+                "{\n  \"summary\": {\"frames\": %d, \"fps\": %.2f, \"p50_ns\": %d, \"p99_ns\": %d},\n  \"frames\": [",
+                count, getFramesPerSecond(), getFrameTimePercentile(50), getFrameTimePercentile(99)));
+        for (int i = 0; i < size; ++i) {
+            StringBuilder frame = new StringBuilder(i == 0 ? "\n    {" : ",\n    {");
+            frame.append("\"frame\": ").append(count - size + i)
+                    .append(", \"start_ns\": ").append(getFrameStart(i))
+                    .append(", \"total_ns\": ").append(getFrameTime(i));
+            for (Stage stage : STAGES) {
+                frame.append(", \"").append(stage.name().toLowerCase(Locale.ROOT)).append("_ns\": ")
+                        .append(getStageTime(i, stage));
+            }
+            final long allocated = getAllocatedBytes(i);
+            frame.append(", \"vertices\": ").append(getVertexCount(i))
+                    .append(", \"polygons\": ").append(getPolygonCount(i))
+                    .append(", \"allocated_bytes\": ").append(allocated == NOT_AVAILABLE ? "null" : allocated)
+                    .append('}');
+            writer.write(frame.toString());
+        }
+        writer.write("\n  ]\n}\n");
+    }
+}
@@ -0,0 +1,65 @@
+package com.cgvsu.render_engine;
+
+import com.cgvsu.math.Matrix4f;
+
+// Шесть плоскостей видимого объема в координатах модели. Берутся прямо из матрицы модель-вид-проекция:
+// точка видна, если для ее образа (x, y, z, w) выполнено |x|, |y| <= VIEWPORT_EXTENT * w и |z| <= w,
+// а каждое такое неравенство линейно по координатам исходной точки.
+class Frustum {
+
+    static final int OUTSIDE = 0;
+    static final int INTERSECTING = 1;
+    static final int INSIDE = 2;
+
+    private static final int PLANE_COUNT = 6;
+
+    // a, b, c, d на плоскость: внутри те точки, где a * x + b * y + c * z + d >= 0
+    private final float[] planes = new float[4 * PLANE_COUNT];
+
+    void update(final Matrix4f matrix) {
+        final float k = GraphicConveyor.VIEWPORT_EXTENT;
+        // Строки матрицы дают x, y, z и w образа точки
+        final float[] m = matrix.getData();
+        setPlane(0, m[0] + k * m[12], m[1] + k * m[13], m[2] + k * m[14], m[3] + k * m[15]);
+        setPlane(1, k * m[12] - m[0], k * m[13] - m[1], k * m[14] - m[2], k * m[15] - m[3]);
+        setPlane(2, m[4] + k * m[12], m[5] + k * m[13], m[6] + k * m[14], m[7] + k * m[15]);
+        setPlane(3, k * m[12] - m[4], k * m[13] - m[5], k * m[14] - m[6], k * m[15] - m[7]);
+        setPlane(4, m[8] + m[12], m[9] + m[13], m[10] + m[14], m[11] + m[15]);
+        setPlane(5, m[12] - m[8], m[13] - m[9], m[14] - m[10], m[15] - m[11]);
+    }
+
+    // Параллелепипед bounds[offset..offset + 6) в виде minX, minY, minZ, maxX, maxY, maxZ
+    int classify(final float[] bounds, final int offset) {
+        final float minX = bounds[offset];
+        final float minY = bounds[offset + 1];
+        final float minZ = bounds[offset + 2];
+        final float maxX = bounds[offset + 3];
+        final float maxY = bounds[offset + 4];
+        final float maxZ = bounds[offset + 5];
+
+        int result = INSIDE;
+        for (int plane = 0; plane < PLANE_COUNT; ++plane) {
+            final float a = planes[4 * plane];
+            final float b = planes[4 * plane + 1];
+            final float c = planes[4 * plane + 2];
+            final float d = planes[4 * plane + 3];
+            // Самая внутренняя и самая внешняя относительно плоскости вершины параллелепипеда
+            final float farthestInside = a * (a > 0 ? maxX : minX) + b * (b > 0 ? maxY : minY) + c * (c > 0 ? maxZ : minZ) + d;
+            if (farthestInside < 0) {
+                return OUTSIDE;
+            }
+            final float farthestOutside = a * (a > 0 ? minX : maxX) + b * (b > 0 ? minY : maxY) + c * (c > 0 ? minZ : maxZ) + d;
+            if (farthestOutside < 0) {
+                result = INTERSECTING;
+            }
+        }
+        return result;
+    }
+
+    private void setPlane(final int plane, final float a, final float b, final float c, final float d) {
+        planes[4 * plane] = a;
+        planes[4 * plane + 1] = b;
+        planes[4 * plane + 2] = c;
+        planes[4 * plane + 3] = d;
+    }
+}
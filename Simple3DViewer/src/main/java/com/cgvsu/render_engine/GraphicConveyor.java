@@ -1,40 +1,50 @@
 package com.cgvsu.render_engine;
-import javax.vecmath.*;
+
+import com.cgvsu.math.Matrix4f;
+import com.cgvsu.math.Vector2f;
+import com.cgvsu.math.Vector3f;
 
 public class GraphicConveyor {
 
+    private static final Vector3f DEFAULT_UP = new Vector3f(0F, 1.0F, 0F);
+
     public static Matrix4f rotateScaleTranslate() {
-        float[] matrix = new float[]{
-                1, 0, 0, 0,
-                0, 1, 0, 0,
-                0, 0, 1, 0,
-                0, 0, 0, 1};
-        return new Matrix4f(matrix);
+        return Matrix4f.identity();
     }
 
-    public static Matrix4f lookAt(Vector3f eye, Vector3f target) {
-        return lookAt(eye, target, new Vector3f(0F, 1.0F, 0F));
+    public static void rotateScaleTranslate(Matrix4f result) {
+        result.setIdentity();
     }
 
-    public static Matrix4f lookAt(Vector3f eye, Vector3f target, Vector3f up) {
-        Vector3f resultX = new Vector3f();
-        Vector3f resultY = new Vector3f();
-        Vector3f resultZ = new Vector3f();
+    // Сначала масштаб scale, потом поворот на углы rotation (радианы, вокруг x, затем y, затем z), потом перенос
+    public static Matrix4f rotateScaleTranslate(Vector3f scale, Vector3f rotation, Vector3f translation) {
+        Matrix4f result = new Matrix4f();
+        rotateScaleTranslate(scale, rotation, translation, result);
+        return result;
+    }
 
-        resultZ.sub(target, eye);
-        resultX.cross(up, resultZ);
-        resultY.cross(resultZ, resultX);
+    public static void rotateScaleTranslate(
+            Vector3f scale, Vector3f rotation, Vector3f translation, Matrix4f result) {
+        result.setRotateScaleTranslate(
+                scale.getX(), scale.getY(), scale.getZ(),
+                rotation.getX(), rotation.getY(), rotation.getZ(),
+                translation.getX(), translation.getY(), translation.getZ());
+    }
 
-        resultX.normalize();
-        resultY.normalize();
-        resultZ.normalize();
+    public static Matrix4f lookAt(Vector3f eye, Vector3f target) {
+        return lookAt(eye, target, DEFAULT_UP);
+    }
 
-        float[] matrix = new float[]{
-                resultX.x, resultY.x, resultZ.x, 0,
-                resultX.y, resultY.y, resultZ.y, 0,
-                resultX.z, resultY.z, resultZ.z, 0,
-                -resultX.dot(eye), -resultY.dot(eye), -resultZ.dot(eye), 1};
-        return new Matrix4f(matrix);
+    public static void lookAt(Vector3f eye, Vector3f target, Matrix4f result) {
+        lookAt(eye, target, DEFAULT_UP, result);
+    }
+
+    public static Matrix4f lookAt(Vector3f eye, Vector3f target, Vector3f up) {
+        return new Matrix4f().setLookAt(eye, target, up);
+    }
+
+    public static void lookAt(Vector3f eye, Vector3f target, Vector3f up, Matrix4f result) {
+        result.setLookAt(eye, target, up);
     }
 
     public static Matrix4f perspective(
@@ -42,25 +52,150 @@ public class GraphicConveyor {
             final float aspectRatio,
             final float nearPlane,
             final float farPlane) {
-        Matrix4f result = new Matrix4f();
-        float tangentMinusOnDegree = (float) (1.0F / (Math.tan(fov * 0.5F)));
-        result.m00 = tangentMinusOnDegree / aspectRatio;
-        result.m11 = tangentMinusOnDegree;
-        result.m22 = (farPlane + nearPlane) / (farPlane - nearPlane);
-        result.m23 = 1.0F;
-        result.m32 = 2 * (nearPlane * farPlane) / (nearPlane - farPlane);
-        return result;
+        return new Matrix4f().setPerspective(fov, aspectRatio, nearPlane, farPlane);
+    }
+
+    public static void perspective(
+            final float fov,
+            final float aspectRatio,
+            final float nearPlane,
+            final float farPlane,
+            final Matrix4f result) {
+        result.setPerspective(fov, aspectRatio, nearPlane, farPlane);
     }
 
     public static Vector3f multiplyMatrix4ByVector3(final Matrix4f matrix, final Vector3f vertex) {
-        final float x = (vertex.x * matrix.m00) + (vertex.y * matrix.m10) + (vertex.z * matrix.m20) + matrix.m30;
-        final float y = (vertex.x * matrix.m01) + (vertex.y * matrix.m11) + (vertex.z * matrix.m21) + matrix.m31;
-        final float z = (vertex.x * matrix.m02) + (vertex.y * matrix.m12) + (vertex.z * matrix.m22) + matrix.m32;
-        final float w = (vertex.x * matrix.m03) + (vertex.y * matrix.m13) + (vertex.z * matrix.m23) + matrix.m33;
+        final float[] m = matrix.getData();
+        final float x = m[0] * vertex.getX() + m[1] * vertex.getY() + m[2] * vertex.getZ() + m[3];
+        final float y = m[4] * vertex.getX() + m[5] * vertex.getY() + m[6] * vertex.getZ() + m[7];
+        final float z = m[8] * vertex.getX() + m[9] * vertex.getY() + m[10] * vertex.getZ() + m[11];
+        final float w = m[12] * vertex.getX() + m[13] * vertex.getY() + m[14] * vertex.getZ() + m[15];
         return new Vector3f(x / w, y / w, z / w);
     }
 
-    public static Point2f vertexToPoint(final Vector3f vertex, final int width, final int height) {
-        return new Point2f(vertex.x * width + width / 2.0F, -vertex.y * height + height / 2.0F);
+    public static Vector2f vertexToPoint(final Vector3f vertex, final int width, final int height) {
+        return new Vector2f(vertex.getX() * width + width / 2.0F, -vertex.getY() * height + height / 2.0F);
+    }
+
+    // Раскладка преобразованной вершины в буфере кадра: координаты в пространстве отсечения (до деления на w)
+    // и то, что из них получается на экране
+    public static final int TRANSFORMED_VERTEX_SIZE = 7;
+    public static final int CLIP_X = 0;
+    public static final int CLIP_Y = 1;
+    public static final int CLIP_Z = 2;
+    public static final int CLIP_W = 3;
+    public static final int SCREEN_X = 4;
+    public static final int SCREEN_Y = 5;
+    public static final int DEPTH = 6;
+
+    // vertexToPoint растягивает x / w на всю ширину экрана, поэтому видна только часть [-0.5, 0.5] по x и y
+    public static final float VIEWPORT_EXTENT = 0.5F;
+
+    // Переводит вершины с номерами vertexIndices[from..to) и пишет каждую в result по ее номеру.
+    // Экранные координаты имеют смысл только для вершин перед камерой, остальные сначала отсекаются.
+    public static void transformVertices(
+            final Matrix4f matrix,
+            final float[] vertices,
+            final int[] vertexIndices,
+            final int from, final int to,
+            final int width, final int height,
+            final float[] result) {
+        // Элементы матрицы читаются в локальные переменные один раз, чтобы в цикле остались только
+        // умножения и сложения над регистрами
+        final float[] m = matrix.getData();
+        final float m00 = m[0], m01 = m[1], m02 = m[2], m03 = m[3];
+        final float m10 = m[4], m11 = m[5], m12 = m[6], m13 = m[7];
+        final float m20 = m[8], m21 = m[9], m22 = m[10], m23 = m[11];
+        final float m30 = m[12], m31 = m[13], m32 = m[14], m33 = m[15];
+        for (int i = from; i < to; ++i) {
+            final int vertexInd = vertexIndices[i];
+            final float x = vertices[3 * vertexInd];
+            final float y = vertices[3 * vertexInd + 1];
+            final float z = vertices[3 * vertexInd + 2];
+            final float clipX = m00 * x + m01 * y + m02 * z + m03;
+            final float clipY = m10 * x + m11 * y + m12 * z + m13;
+            final float clipZ = m20 * x + m21 * y + m22 * z + m23;
+            final float w = m30 * x + m31 * y + m32 * z + m33;
+
+            final int offset = TRANSFORMED_VERTEX_SIZE * vertexInd;
+            result[offset + CLIP_X] = clipX;
+            result[offset + CLIP_Y] = clipY;
+            result[offset + CLIP_Z] = clipZ;
+            result[offset + CLIP_W] = w;
+            clipToScreen(clipX, clipY, clipZ, w, width, height, result, offset + SCREEN_X);
+        }
+    }
+
+    // Векторная версия доступна, только если при запуске подключен модуль jdk.incubator.vector
+    private static final boolean VECTORIZED = isVectorApiAvailable();
+
+    public static boolean isVectorized() {
+        return VECTORIZED;
+    }
+
+    private static boolean isVectorApiAvailable() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return false;
+        }
+        try {
+            return VectorizedTransform.LANES > 1;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    // Пакетный вариант для координат, разложенных по массивам xs, ys, zs: переводит вершины [from, to) и пишет
+    // экранные x, y, глубину и w вершины i в выходные массивы под номером i - from. По w <= 0 видно,
+    // что вершина за камерой и ее экранные координаты смысла не имеют.
+    public static void transformVertices(
+            final Matrix4f matrix,
+            final float[] xs, final float[] ys, final float[] zs,
+            final int from, final int to,
+            final int width, final int height,
+            final float[] screenXs, final float[] screenYs, final float[] depths, final float[] ws) {
+        int i = from;
+        if (VECTORIZED) {
+            i = VectorizedTransform.transformVertices(
+                    matrix.getData(), xs, ys, zs, from, to, width, height, screenXs, screenYs, depths, ws);
+        }
+        transformVerticesScalar(matrix, xs, ys, zs, i, to, from, width, height, screenXs, screenYs, depths, ws);
+    }
+
+    // Результат для вершины i пишется под номером i - offset
+    static void transformVerticesScalar(
+            final Matrix4f matrix,
+            final float[] xs, final float[] ys, final float[] zs,
+            final int from, final int to, final int offset,
+            final int width, final int height,
+            final float[] screenXs, final float[] screenYs, final float[] depths, final float[] ws) {
+        final float[] m = matrix.getData();
+        final float m00 = m[0], m01 = m[1], m02 = m[2], m03 = m[3];
+        final float m10 = m[4], m11 = m[5], m12 = m[6], m13 = m[7];
+        final float m20 = m[8], m21 = m[9], m22 = m[10], m23 = m[11];
+        final float m30 = m[12], m31 = m[13], m32 = m[14], m33 = m[15];
+        for (int i = from; i < to; ++i) {
+            final float x = xs[i];
+            final float y = ys[i];
+            final float z = zs[i];
+            final float clipX = m00 * x + m01 * y + m02 * z + m03;
+            final float clipY = m10 * x + m11 * y + m12 * z + m13;
+            final float clipZ = m20 * x + m21 * y + m22 * z + m23;
+            final float w = m30 * x + m31 * y + m32 * z + m33;
+            final int resultInd = i - offset;
+            screenXs[resultInd] = clipX / w * width + width / 2.0F;
+            screenYs[resultInd] = -clipY / w * height + height / 2.0F;
+            depths[resultInd] = clipZ / w;
+            ws[resultInd] = w;
+        }
+    }
+
+    // То же, что деление на w и затем vertexToPoint: в result пишутся экранные x, y и глубина z / w
+    public static void clipToScreen(
+            final float clipX, final float clipY, final float clipZ, final float w,
+            final int width, final int height,
+            final float[] result, final int offset) {
+        result[offset] = clipX / w * width + width / 2.0F;
+        result[offset + 1] = -clipY / w * height + height / 2.0F;
+        result[offset + 2] = clipZ / w;
     }
 }
@@ -0,0 +1,153 @@
+package com.cgvsu.render_engine;
+
+import com.cgvsu.model.Model;
+import com.cgvsu.model.ModelSimplifier;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+// Цепочка упрощенных версий модели. Уровень i получен кластеризацией вершин по кубам с ребром getCellSize(i),
+// кубы каждого следующего уровня вдвое крупнее, а полигонов у него хотя бы вдвое меньше.
+// Погрешность уровня - порядка ребра куба: на таком расстоянии от исходной поверхности могут оказаться его вершины.
+//
+// Строится долго, поэтому загрузчик строит цепочку в фоне после того, как модель уже показана,
+// а до тех пор рисуется исходная модель.
+public class LevelOfDetail {
+
+    // Упрощать дальше нет смысла: такая модель и так рисуется мгновенно
+    private static final int MIN_POLYGON_COUNT = 512;
+    // Уровень сохраняется, только если полигонов у него не больше этой доли от предыдущего
+    private static final float MAX_POLYGON_RATIO = 0.5F;
+
+    private static final Map<Model, LevelOfDetail> CACHE = Collections.synchronizedMap(new WeakHashMap<>());
+
+    // Исходная модель в цепочку не входит: значение в CACHE не должно ссылаться на ключ
+    private final Model[] levels;
+    private final float[] cellSizes;
+    private final int cornerCount;
+
+    // Ограничивающая сфера исходной модели
+    private final float centerX;
+    private final float centerY;
+    private final float centerZ;
+    private final float radius;
+
+    private LevelOfDetail(Model model, List<Model> levels, List<Float> cellSizes,
+                          float centerX, float centerY, float centerZ, float radius) {
+        this.levels = levels.toArray(new Model[0]);
+        this.cellSizes = new float[cellSizes.size()];
+        for (int i = 0; i < this.cellSizes.length; ++i) {
+            this.cellSizes[i] = cellSizes.get(i);
+        }
+        this.cornerCount = model.getPolygonCornerCount();
+        this.centerX = centerX;
+        this.centerY = centerY;
+        this.centerZ = centerZ;
+        this.radius = radius;
+    }
+
+    // Цепочка, если она уже построена и модель с тех пор не менялась, иначе null
+    public static LevelOfDetail get(Model model) {
+        LevelOfDetail result = CACHE.get(model);
+        return result != null && result.cornerCount == model.getPolygonCornerCount() ? result : null;
+    }
+
+    // Строит цепочку и данные для рендера каждого уровня, чтобы переключение уровней не тормозило кадр
+    public static LevelOfDetail build(Model model) {
+        LevelOfDetail existing = get(model);
+        if (existing != null) {
+            return existing;
+        }
+
+        final float[] vertices = model.getVertexData();
+        final int nVertices = model.getVertexCount();
+        float minX = Float.POSITIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY;
+        float minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+        float maxZ = Float.NEGATIVE_INFINITY;
+        for (int vertexInd = 0; vertexInd < nVertices; ++vertexInd) {
+            minX = Math.min(minX, vertices[3 * vertexInd]);
+            minY = Math.min(minY, vertices[3 * vertexInd + 1]);
+            minZ = Math.min(minZ, vertices[3 * vertexInd + 2]);
+            maxX = Math.max(maxX, vertices[3 * vertexInd]);
+            maxY = Math.max(maxY, vertices[3 * vertexInd + 1]);
+            maxZ = Math.max(maxZ, vertices[3 * vertexInd + 2]);
+        }
+
+        List<Model> levels = new ArrayList<>();
+        List<Float> cellSizes = new ArrayList<>();
+        final float extent = Math.max(maxX - minX, Math.max(maxY - minY, maxZ - minZ));
+        if (nVertices > 0 && extent > 0 && model.getPolygonCount() > MIN_POLYGON_COUNT) {
+            // Начинаем с кубов, которых на поверхности примерно столько же, сколько полигонов
+            final int cellsPerAxis = Math.min(ModelSimplifier.MAX_CELLS_PER_AXIS,
+                    Integer.highestOneBit((int) Math.sqrt(model.getPolygonCount())));
+            float cellSize = extent / cellsPerAxis;
+            Model previous = model;
+            while (previous.getPolygonCount() > MIN_POLYGON_COUNT && cellSize < 2 * extent) {
+                Model simplified = ModelSimplifier.simplify(previous, minX, minY, minZ, cellSize);
+                if (simplified.getPolygonCount() <= MAX_POLYGON_RATIO * previous.getPolygonCount()) {
+                    MeshRenderData.of(simplified);
+                    levels.add(simplified);
+                    cellSizes.add(cellSize);
+                    previous = simplified;
+                }
+                cellSize *= 2;
+            }
+        }
+
+        final float radius = (float) Math.sqrt((maxX - minX) * (maxX - minX)
+                + (maxY - minY) * (maxY - minY) + (maxZ - minZ) * (maxZ - minZ)) / 2;
+        LevelOfDetail result = new LevelOfDetail(model, levels, cellSizes,
+                (minX + maxX) / 2, (minY + maxY) / 2, (minZ + maxZ) / 2, nVertices > 0 ? radius : 0);
+        CACHE.put(model, result);
+        return result;
+    }
+
+    // Упрощенных уровней, не считая исходной модели
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    // Уровень 1 - первое упрощение, 0 - исходная модель, ее здесь нет
+    public Model getLevel(int level) {
+        return levels[level - 1];
+    }
+
+    public float getCellSize(int level) {
+        return level == 0 ? 0 : cellSizes[level - 1];
+    }
+
+    public float getCenterX() {
+        return centerX;
+    }
+
+    public float getCenterY() {
+        return centerY;
+    }
+
+    public float getCenterZ() {
+        return centerZ;
+    }
+
+    public float getRadius() {
+        return radius;
+    }
+
+    // Примерный объем памяти под упрощенные уровни вместе с их данными для рендера, в байтах
+    public long estimateMemoryBytes() {
+        long result = Float.BYTES * (long) cellSizes.length;
+        for (Model level : levels) {
+            result += level.estimateMemoryBytes();
+            MeshRenderData renderData = MeshRenderData.get(level);
+            if (renderData != null) {
+                result += renderData.estimateMemoryBytes();
+            }
+        }
+        return result;
+    }
+}
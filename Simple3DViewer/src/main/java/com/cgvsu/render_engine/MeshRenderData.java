@@ -0,0 +1,421 @@
+package com.cgvsu.render_engine;
+
+import com.cgvsu.model.Model;
+import com.cgvsu.model.Triangulation;
+import com.cgvsu.util.IntList;
+import com.cgvsu.util.LongIntHashMap;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+// То, что рендеру нужно знать о модели помимо ее самой и что дорого считать каждый кадр.
+// Строится один раз на модель и живет, пока жива модель.
+//
+// Полигоны разбиты на куски по CHUNK_SIZE близких в пространстве полигонов. У каждого куска есть ограничивающий
+// параллелепипед, список вершин и диапазон ребер, так что кусок вне поля зрения отбрасывается целиком, не трогая
+// ни вершин, ни ребер. Близость обеспечивает сортировка полигонов по коду Мортона первой вершины.
+public class MeshRenderData {
+
+    public static final int CHUNK_SIZE = 1024;
+
+    // Метки второго полигона ребра в getEdgePolygons
+    public static final int NO_POLYGON = -1;
+    public static final int SHARED_BY_MANY = -2;
+
+    // Разрядность координаты в коде Мортона, 3 * 10 бит помещаются в int
+    private static final int MORTON_BITS = 10;
+    private static final int MORTON_MAX = (1 << MORTON_BITS) - 1;
+
+    private static final Map<Model, MeshRenderData> CACHE = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final int cornerCount;
+
+    // Номера полигонов в порядке обхода, куску c принадлежат polygonOrder[c * CHUNK_SIZE .. (c + 1) * CHUNK_SIZE)
+    private final int[] polygonOrder;
+    private final int chunkCount;
+    // minX, minY, minZ, maxX, maxY, maxZ на кусок
+    private final float[] chunkBounds;
+    // То же для всей модели. Копия модели вне поля зрения отбрасывается одной проверкой, а не по кускам.
+    private final float[] bounds = new float[6];
+    // Вершины куска c: chunkVertices[chunkVertexStarts[c] .. chunkVertexStarts[c + 1]). Вершина на границе
+    // кусков входит в каждый из них.
+    private final int[] chunkVertexStarts;
+    private final int[] chunkVertices;
+    // Координаты вершин из chunkVertices, разложенные по трем массивам в том же порядке, чтобы кусок
+    // переводился пакетно, читая память подряд
+    private final float[] chunkVertexXs;
+    private final float[] chunkVertexYs;
+    private final float[] chunkVertexZs;
+
+    // Пары индексов вершин: ребро i соединяет вершины edges[2 * i] и edges[2 * i + 1].
+    // Ребра идут в порядке обхода полигонов, поэтому конец одного ребра часто совпадает с началом следующего.
+    // Ребро принадлежит куску, полигон которого встретил его первым: ребра куска c имеют номера
+    // chunkEdgeStarts[c] .. chunkEdgeStarts[c + 1].
+    private final int[] edges;
+    private final int edgeCount;
+    private final int[] chunkEdgeStarts;
+
+    // Для отсечения задних граней. Плоскость полигона polygonOrder[i]: нормаль по методу Ньюэла (не единичная,
+    // направлена туда, откуда обход виден против часовой стрелки) в polygonPlanes[4 * i .. 4 * i + 3)
+    // и ее скалярное произведение с первой вершиной в polygonPlanes[4 * i + 3].
+    private final float[] polygonPlanes;
+    // Полигоны ребра i (номера в polygonOrder) в edgePolygons[2 * i] и edgePolygons[2 * i + 1].
+    // У ребра на краю сетки второго нет (NO_POLYGON), ребро трех и более полигонов помечено SHARED_BY_MANY.
+    private final int[] edgePolygons;
+
+    // Полигоны, разбитые на треугольники, для закраски
+    private final Triangulation triangulation;
+
+    private MeshRenderData(Model model) {
+        cornerCount = model.getPolygonCornerCount();
+
+        final int nPolygons = model.getPolygonCount();
+        polygonOrder = sortPolygons(model);
+        chunkCount = (nPolygons + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        chunkBounds = new float[6 * chunkCount];
+        chunkVertexStarts = new int[chunkCount + 1];
+        chunkEdgeStarts = new int[chunkCount + 1];
+
+        IntList chunkVertexList = buildChunkVertices(model);
+        buildBounds();
+        chunkVertexList.trimToSize();
+        chunkVertices = chunkVertexList.elements();
+        chunkVertexXs = new float[chunkVertices.length];
+        chunkVertexYs = new float[chunkVertices.length];
+        chunkVertexZs = new float[chunkVertices.length];
+        final float[] vertices = model.getVertexData();
+        for (int i = 0; i < chunkVertices.length; ++i) {
+            chunkVertexXs[i] = vertices[3 * chunkVertices[i]];
+            chunkVertexYs[i] = vertices[3 * chunkVertices[i] + 1];
+            chunkVertexZs[i] = vertices[3 * chunkVertices[i] + 2];
+        }
+
+        IntList edgePolygonList = new IntList(model.getPolygonCornerCount());
+        IntList edgeList = buildEdges(model, edgePolygonList);
+        edgeList.trimToSize();
+        edges = edgeList.elements();
+        edgeCount = edgeList.size() / 2;
+        edgePolygonList.trimToSize();
+        edgePolygons = edgePolygonList.elements();
+
+        polygonPlanes = buildPolygonPlanes(model);
+        triangulation = Triangulation.of(model);
+    }
+
+    // Долго только в первый раз, поэтому загрузчик вызывает его заранее в фоновом потоке
+    public static MeshRenderData of(Model model) {
+        MeshRenderData data = CACHE.get(model);
+        // Модель могли дополнить после построения, тогда данные устарели
+        if (data == null || data.cornerCount != model.getPolygonCornerCount()) {
+            data = new MeshRenderData(model);
+            CACHE.put(model, data);
+        }
+        return data;
+    }
+
+    // Данные, если они уже построены и модель с тех пор не менялась, иначе null. Сама ничего не строит.
+    public static MeshRenderData get(Model model) {
+        MeshRenderData data = CACHE.get(model);
+        return data != null && data.cornerCount == model.getPolygonCornerCount() ? data : null;
+    }
+
+    public int[] getEdges() {
+        return edges;
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    public int[] getPolygonOrder() {
+        return polygonOrder;
+    }
+
+    public float[] getChunkBounds() {
+        return chunkBounds;
+    }
+
+    // Для модели без полигонов - пустой объем: минимум больше максимума
+    public float[] getBounds() {
+        return bounds;
+    }
+
+    public int[] getChunkVertexStarts() {
+        return chunkVertexStarts;
+    }
+
+    public int[] getChunkVertices() {
+        return chunkVertices;
+    }
+
+    public float[] getChunkVertexXs() {
+        return chunkVertexXs;
+    }
+
+    public float[] getChunkVertexYs() {
+        return chunkVertexYs;
+    }
+
+    public float[] getChunkVertexZs() {
+        return chunkVertexZs;
+    }
+
+    public float[] getPolygonPlanes() {
+        return polygonPlanes;
+    }
+
+    public int[] getEdgePolygons() {
+        return edgePolygons;
+    }
+
+    public Triangulation getTriangulation() {
+        return triangulation;
+    }
+
+    public int[] getChunkEdgeStarts() {
+        return chunkEdgeStarts;
+    }
+
+    // Примерный объем памяти под массивы в байтах, вместе с разбиением на треугольники
+    public long estimateMemoryBytes() {
+        final long ints = (long) polygonOrder.length + chunkVertexStarts.length + chunkVertices.length
+                + edges.length + chunkEdgeStarts.length + edgePolygons.length;
+        final long floats = (long) chunkBounds.length + bounds.length
+                + chunkVertexXs.length + chunkVertexYs.length + chunkVertexZs.length + polygonPlanes.length;
+        return Integer.BYTES * ints + Float.BYTES * floats + triangulation.estimateMemoryBytes();
+    }
+
+    public int getChunkPolygonStart(int chunkInd) {
+        return chunkInd * CHUNK_SIZE;
+    }
+
+    public int getChunkPolygonEnd(int chunkInd) {
+        return Math.min((chunkInd + 1) * CHUNK_SIZE, polygonOrder.length);
+    }
+
+    private static int[] sortPolygons(Model model) {
+        final float[] vertices = model.getVertexData();
+        final int nVertices = model.getVertexCount();
+        final int[] polygonStarts = model.getPolygonStarts();
+        final int[] polygonVertexIndices = model.getPolygonVertexIndices();
+        final int nPolygons = model.getPolygonCount();
+
+        float minX = Float.POSITIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY;
+        float minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+        float maxZ = Float.NEGATIVE_INFINITY;
+        for (int vertexInd = 0; vertexInd < nVertices; ++vertexInd) {
+            minX = Math.min(minX, vertices[3 * vertexInd]);
+            minY = Math.min(minY, vertices[3 * vertexInd + 1]);
+            minZ = Math.min(minZ, vertices[3 * vertexInd + 2]);
+            maxX = Math.max(maxX, vertices[3 * vertexInd]);
+            maxY = Math.max(maxY, vertices[3 * vertexInd + 1]);
+            maxZ = Math.max(maxZ, vertices[3 * vertexInd + 2]);
+        }
+        final float scaleX = maxX > minX ? MORTON_MAX / (maxX - minX) : 0;
+        final float scaleY = maxY > minY ? MORTON_MAX / (maxY - minY) : 0;
+        final float scaleZ = maxZ > minZ ? MORTON_MAX / (maxZ - minZ) : 0;
+
+        // Код Мортона в старших битах, номер полигона в младших: после сортировки порядок восстанавливается без пар
+        long[] keys = new long[nPolygons];
+        for (int polygonInd = 0; polygonInd < nPolygons; ++polygonInd) {
+            long code = 0;
+            if (polygonStarts[polygonInd] != polygonStarts[polygonInd + 1]) {
+                final int vertexInd = polygonVertexIndices[polygonStarts[polygonInd]];
+                code = mortonCode(
+                        quantize(vertices[3 * vertexInd], minX, scaleX),
+                        quantize(vertices[3 * vertexInd + 1], minY, scaleY),
+                        quantize(vertices[3 * vertexInd + 2], minZ, scaleZ));
+            }
+            keys[polygonInd] = (code << 32) | polygonInd;
+        }
+        Arrays.parallelSort(keys);
+
+        int[] result = new int[nPolygons];
+        for (int i = 0; i < nPolygons; ++i) {
+            result[i] = (int) keys[i];
+        }
+        return result;
+    }
+
+    private static int quantize(float coordinate, float min, float scale) {
+        final int result = (int) ((coordinate - min) * scale);
+        return Math.max(0, Math.min(MORTON_MAX, result));
+    }
+
+    private static long mortonCode(int x, int y, int z) {
+        return spreadBits(x) | (spreadBits(y) << 1) | (spreadBits(z) << 2);
+    }
+
+    // Раздвигает 10 младших бит так, что между соседними встают по два нуля
+    private static long spreadBits(int value) {
+        long result = value & 0x3FF;
+        result = (result | (result << 16)) & 0x30000FFL;
+        result = (result | (result << 8)) & 0x300F00FL;
+        result = (result | (result << 4)) & 0x30C30C3L;
+        result = (result | (result << 2)) & 0x9249249L;
+        return result;
+    }
+
+    private IntList buildChunkVertices(Model model) {
+        final float[] vertices = model.getVertexData();
+        final int[] polygonStarts = model.getPolygonStarts();
+        final int[] polygonVertexIndices = model.getPolygonVertexIndices();
+
+        // В lastChunk отмечается, в какой кусок вершина попала последней, чтобы не добавить ее в кусок дважды
+        int[] lastChunk = new int[model.getVertexCount()];
+        Arrays.fill(lastChunk, -1);
+        IntList result = new IntList(model.getVertexCount() + model.getVertexCount() / 4);
+
+        for (int chunkInd = 0; chunkInd < chunkCount; ++chunkInd) {
+            chunkVertexStarts[chunkInd] = result.size();
+            float minX = Float.POSITIVE_INFINITY;
+            float minY = Float.POSITIVE_INFINITY;
+            float minZ = Float.POSITIVE_INFINITY;
+            float maxX = Float.NEGATIVE_INFINITY;
+            float maxY = Float.NEGATIVE_INFINITY;
+            float maxZ = Float.NEGATIVE_INFINITY;
+
+            final int chunkEnd = getChunkPolygonEnd(chunkInd);
+            for (int i = getChunkPolygonStart(chunkInd); i < chunkEnd; ++i) {
+                final int polygonInd = polygonOrder[i];
+                for (int cornerInd = polygonStarts[polygonInd]; cornerInd < polygonStarts[polygonInd + 1]; ++cornerInd) {
+                    final int vertexInd = polygonVertexIndices[cornerInd];
+                    if (lastChunk[vertexInd] == chunkInd) {
+                        continue;
+                    }
+                    lastChunk[vertexInd] = chunkInd;
+                    result.add(vertexInd);
+
+                    minX = Math.min(minX, vertices[3 * vertexInd]);
+                    minY = Math.min(minY, vertices[3 * vertexInd + 1]);
+                    minZ = Math.min(minZ, vertices[3 * vertexInd + 2]);
+                    maxX = Math.max(maxX, vertices[3 * vertexInd]);
+                    maxY = Math.max(maxY, vertices[3 * vertexInd + 1]);
+                    maxZ = Math.max(maxZ, vertices[3 * vertexInd + 2]);
+                }
+            }
+
+            final int offset = 6 * chunkInd;
+            chunkBounds[offset] = minX;
+            chunkBounds[offset + 1] = minY;
+            chunkBounds[offset + 2] = minZ;
+            chunkBounds[offset + 3] = maxX;
+            chunkBounds[offset + 4] = maxY;
+            chunkBounds[offset + 5] = maxZ;
+        }
+        chunkVertexStarts[chunkCount] = result.size();
+        return result;
+    }
+
+    private void buildBounds() {
+        for (int axis = 0; axis < 3; ++axis) {
+            bounds[axis] = Float.POSITIVE_INFINITY;
+            bounds[axis + 3] = Float.NEGATIVE_INFINITY;
+        }
+        for (int chunkInd = 0; chunkInd < chunkCount; ++chunkInd) {
+            for (int axis = 0; axis < 3; ++axis) {
+                bounds[axis] = Math.min(bounds[axis], chunkBounds[6 * chunkInd + axis]);
+                bounds[axis + 3] = Math.max(bounds[axis + 3], chunkBounds[6 * chunkInd + axis + 3]);
+            }
+        }
+    }
+
+    // Общее ребро соседних полигонов попадает в список один раз. Ключ ребра - пара индексов вершин,
+    // меньший в старших 32 битах, так что направление обхода не важно.
+    private IntList buildEdges(Model model, IntList edgePolygonList) {
+        final int[] polygonStarts = model.getPolygonStarts();
+        final int[] polygonVertexIndices = model.getPolygonVertexIndices();
+        final int nCorners = model.getPolygonCornerCount();
+
+        // У замкнутой сетки каждое ребро делят два полигона, то есть ребер примерно вдвое меньше, чем углов
+        LongIntHashMap edgeIndices = new LongIntHashMap(nCorners / 2, -1);
+        IntList result = new IntList(nCorners);
+
+        for (int chunkInd = 0; chunkInd < chunkCount; ++chunkInd) {
+            chunkEdgeStarts[chunkInd] = result.size() / 2;
+            final int chunkEnd = getChunkPolygonEnd(chunkInd);
+            for (int i = getChunkPolygonStart(chunkInd); i < chunkEnd; ++i) {
+                final int polygonInd = polygonOrder[i];
+                final int polygonStart = polygonStarts[polygonInd];
+                final int polygonEnd = polygonStarts[polygonInd + 1];
+                if (polygonStart == polygonEnd) {
+                    continue;
+                }
+
+                int previous = polygonVertexIndices[polygonEnd - 1];
+                for (int cornerInd = polygonStart; cornerInd < polygonEnd; ++cornerInd) {
+                    final int current = polygonVertexIndices[cornerInd];
+                    if (current != previous) {
+                        final long key = ((long) Math.min(previous, current) << 32) | Math.max(previous, current);
+                        final int edgeInd = edgeIndices.putIfAbsent(key, result.size() / 2);
+                        if (edgeInd < 0) {
+                            result.add(previous, current);
+                            edgePolygonList.add(i, NO_POLYGON);
+                        } else if (edgePolygonList.get(2 * edgeInd) != i) {
+                            final int second = edgePolygonList.get(2 * edgeInd + 1);
+                            if (second == NO_POLYGON) {
+                                edgePolygonList.set(2 * edgeInd + 1, i);
+                            } else if (second != i) {
+                                edgePolygonList.set(2 * edgeInd + 1, SHARED_BY_MANY);
+                            }
+                        }
+                    }
+                    previous = current;
+                }
+            }
+        }
+        chunkEdgeStarts[chunkCount] = result.size() / 2;
+        return result;
+    }
+
+    private float[] buildPolygonPlanes(Model model) {
+        final float[] vertices = model.getVertexData();
+        final int[] polygonStarts = model.getPolygonStarts();
+        final int[] polygonVertexIndices = model.getPolygonVertexIndices();
+
+        float[] result = new float[4 * polygonOrder.length];
+        for (int i = 0; i < polygonOrder.length; ++i) {
+            final int polygonInd = polygonOrder[i];
+            final int polygonStart = polygonStarts[polygonInd];
+            final int polygonEnd = polygonStarts[polygonInd + 1];
+            if (polygonStart == polygonEnd) {
+                continue;
+            }
+
+            float normalX = 0;
+            float normalY = 0;
+            float normalZ = 0;
+            int previousInd = polygonVertexIndices[polygonEnd - 1];
+            for (int cornerInd = polygonStart; cornerInd < polygonEnd; ++cornerInd) {
+                final int vertexInd = polygonVertexIndices[cornerInd];
+                final float x = vertices[3 * vertexInd];
+                final float y = vertices[3 * vertexInd + 1];
+                final float z = vertices[3 * vertexInd + 2];
+                final float previousX = vertices[3 * previousInd];
+                final float previousY = vertices[3 * previousInd + 1];
+                final float previousZ = vertices[3 * previousInd + 2];
+                normalX += (previousY - y) * (previousZ + z);
+                normalY += (previousZ - z) * (previousX + x);
+                normalZ += (previousX - x) * (previousY + y);
+                previousInd = vertexInd;
+            }
+
+            final int firstInd = polygonVertexIndices[polygonStart];
+            result[4 * i] = normalX;
+            result[4 * i + 1] = normalY;
+            result[4 * i + 2] = normalZ;
+            result[4 * i + 3] = normalX * vertices[3 * firstInd] + normalY * vertices[3 * firstInd + 1]
+                    + normalZ * vertices[3 * firstInd + 2];
+        }
+        return result;
+    }
+}
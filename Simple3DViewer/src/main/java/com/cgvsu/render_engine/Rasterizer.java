@@ -0,0 +1,151 @@
+package com.cgvsu.render_engine;
+
+// Заполняет треугольники в FrameBuffer с проверкой глубины.
+// Вершины переводятся в целые координаты с шагом 1/16 пикселя, и функции ребер считаются в long без погрешности.
+// Поэтому соседние треугольники с общим ребром не дают ни дыр, ни двойной закраски (правило верхнего и левого ребра),
+// а результат для пикселя не зависит от того, с какого места начат обход.
+public class Rasterizer {
+
+    private static final int SUBPIXEL_BITS = 4;
+    private static final int SUBPIXEL_SCALE = 1 << SUBPIXEL_BITS;
+    private static final int HALF_PIXEL = SUBPIXEL_SCALE / 2;
+
+    // Треугольники с вершинами дальше этого расстояния от экрана не рисуются, чтобы произведения в функциях ребер
+    // не переполнялись. После Clipper такие координаты возможны только на очень большом холсте.
+    private static final float GUARD_BAND = 1 << 22;
+
+    public void fillTriangle(
+            final FrameBuffer frameBuffer,
+            final float x0, final float y0, final float z0,
+            final float x1, final float y1, final float z1,
+            final float x2, final float y2, final float z2,
+            final int color) {
+        fillTriangle(frameBuffer, x0, y0, z0, x1, y1, z1, x2, y2, z2, color,
+                0, 0, frameBuffer.getWidth() - 1, frameBuffer.getHeight() - 1);
+    }
+
+    // Закрашивает только пиксели из прямоугольника [clipMinX, clipMaxX] x [clipMinY, clipMaxY]. Пиксели в нем
+    // получают то же, что при закраске всего треугольника, так что треугольник можно рисовать по частям.
+    public void fillTriangle(
+            final FrameBuffer frameBuffer,
+            final float x0, final float y0, final float z0,
+            final float x1, final float y1, final float z1,
+            final float x2, final float y2, final float z2,
+            final int color,
+            final int clipMinX, final int clipMinY,
+            final int clipMaxX, final int clipMaxY) {
+        if (!isInGuardBand(x0, y0) || !isInGuardBand(x1, y1) || !isInGuardBand(x2, y2)) {
+            return;
+        }
+
+        final long ax = toFixed(x0);
+        final long ay = toFixed(y0);
+        long bx = toFixed(x1);
+        long by = toFixed(y1);
+        long cx = toFixed(x2);
+        long cy = toFixed(y2);
+        float bz = z1;
+        float cz = z2;
+
+        long area = (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+        if (area == 0) {
+            return;
+        }
+        if (area < 0) {
+            // Приводим к одному обходу, чтобы внутренние точки давали неотрицательные функции ребер
+            long t = bx;
+            bx = cx;
+            cx = t;
+            t = by;
+            by = cy;
+            cy = t;
+            float tz = bz;
+            bz = cz;
+            cz = tz;
+            area = -area;
+        }
+
+        final int width = frameBuffer.getWidth();
+        final int minX = Math.max(clipMinX, pixelFloor(Math.min(ax, Math.min(bx, cx))));
+        final int maxX = Math.min(clipMaxX, pixelCeil(Math.max(ax, Math.max(bx, cx))));
+        final int minY = Math.max(clipMinY, pixelFloor(Math.min(ay, Math.min(by, cy))));
+        final int maxY = Math.min(clipMaxY, pixelCeil(Math.max(ay, Math.max(by, cy))));
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        // Функция ребра p -> q в точке s: (qx - px) * (sy - py) - (qy - py) * (sx - px).
+        // Шаг на пиксель вправо меняет ее на -(qy - py) * SUBPIXEL_SCALE, шаг вниз на (qx - px) * SUBPIXEL_SCALE.
+        final long startX = (long) minX * SUBPIXEL_SCALE + HALF_PIXEL;
+        final long startY = (long) minY * SUBPIXEL_SCALE + HALF_PIXEL;
+
+        final long stepX0 = -(cy - by) * SUBPIXEL_SCALE;
+        final long stepY0 = (cx - bx) * SUBPIXEL_SCALE;
+        final long stepX1 = -(ay - cy) * SUBPIXEL_SCALE;
+        final long stepY1 = (ax - cx) * SUBPIXEL_SCALE;
+        final long stepX2 = -(by - ay) * SUBPIXEL_SCALE;
+        final long stepY2 = (bx - ax) * SUBPIXEL_SCALE;
+
+        // Пиксель ровно на ребре принадлежит треугольнику, только если ребро верхнее или левое.
+        // Для остальных ребер функция сдвинута на 1, и проверка >= 0 становится строгой.
+        final long bias0 = isTopLeft(bx, by, cx, cy) ? 0 : 1;
+        final long bias1 = isTopLeft(cx, cy, ax, ay) ? 0 : 1;
+        final long bias2 = isTopLeft(ax, ay, bx, by) ? 0 : 1;
+        long row0 = edge(bx, by, cx, cy, startX, startY) - bias0;
+        long row1 = edge(cx, cy, ax, ay, startX, startY) - bias1;
+        long row2 = edge(ax, ay, bx, by, startX, startY) - bias2;
+
+        final double inverseArea = 1.0 / area;
+        final int[] colors = frameBuffer.getColors();
+        final float[] depths = frameBuffer.getDepths();
+
+        for (int y = minY; y <= maxY; ++y) {
+            long e0 = row0;
+            long e1 = row1;
+            long e2 = row2;
+            int index = y * width + minX;
+            for (int x = minX; x <= maxX; ++x, ++index) {
+                if ((e0 | e1 | e2) >= 0) {
+                    // Глубина после деления на w линейна по экрану, поэтому барицентрические веса подходят без коррекции
+                    final float depth = (float) (((e0 + bias0) * (double) z0 + (e1 + bias1) * (double) bz
+                            + (e2 + bias2) * (double) cz) * inverseArea);
+                    if (depth < depths[index]) {
+                        depths[index] = depth;
+                        colors[index] = color;
+                    }
+                }
+                e0 += stepX0;
+                e1 += stepX1;
+                e2 += stepX2;
+            }
+            row0 += stepY0;
+            row1 += stepY1;
+            row2 += stepY2;
+        }
+    }
+
+    static boolean isInGuardBand(float x, float y) {
+        return x > -GUARD_BAND && x < GUARD_BAND && y > -GUARD_BAND && y < GUARD_BAND;
+    }
+
+    private static long toFixed(float coordinate) {
+        return Math.round(coordinate * (double) SUBPIXEL_SCALE);
+    }
+
+    private static int pixelFloor(long fixed) {
+        return (int) Math.floorDiv(fixed, SUBPIXEL_SCALE);
+    }
+
+    private static int pixelCeil(long fixed) {
+        return (int) Math.floorDiv(fixed + SUBPIXEL_SCALE - 1, SUBPIXEL_SCALE);
+    }
+
+    private static long edge(long px, long py, long qx, long qy, long sx, long sy) {
+        return (qx - px) * (sy - py) - (qy - py) * (sx - px);
+    }
+
+    // При выбранном обходе (y направлен вниз) верхнее ребро горизонтально и идет вправо, а левые ребра идут вверх
+    private static boolean isTopLeft(long px, long py, long qx, long qy) {
+        return (py == qy && qx > px) || qy < py;
+    }
+}
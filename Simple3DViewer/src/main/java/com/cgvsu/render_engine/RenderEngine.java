@@ -1,58 +1,742 @@
 package com.cgvsu.render_engine;
 
-import java.util.ArrayList;
-
-import com.cgvsu.math.Vector3f;
 import javafx.scene.canvas.GraphicsContext;
-import javax.vecmath.*;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import com.cgvsu.math.Matrix4f;
+import com.cgvsu.math.Vector3f;
 import com.cgvsu.model.Model;
+import com.cgvsu.scene.ModelInstance;
+import com.cgvsu.scene.Scene;
+
+import java.util.Arrays;
+import java.util.List;
+
 import static com.cgvsu.render_engine.GraphicConveyor.*;
 
 public class RenderEngine {
 
-    public static void render(
+    private static final int BACKGROUND_COLOR = 0xFFFFFFFF;
+    // Яркость грани, повернутой к камере ребром, и прибавка для грани, смотрящей прямо на камеру
+    private static final int MIN_BRIGHTNESS = 48;
+    private static final int BRIGHTNESS_RANGE = 192;
+
+    // Сколько ребер уходит на холст одним путем beginPath/stroke. Каждый вызов strokeLine становится отдельной
+    // командой рисования, а путь из тысяч отрезков - одной, да и места в буфере команд он занимает меньше.
+    // 1 включает старую отрисовку отдельными strokeLine.
+    public static final int DEFAULT_LINE_BATCH_SIZE = 4096;
+
+    // Уровень детализации годится, если ребро его куба кластеризации на экране не длиннее стольких пикселей
+    private static final float LOD_MAX_ERROR_PIXELS = 1.0F;
+    // На более грубый уровень переходим, только когда его погрешность меньше порога с таким запасом,
+    // иначе на границе модель мигала бы между уровнями при малейшем движении камеры
+    private static final float LOD_HYSTERESIS = 0.7F;
+
+    private RenderMode renderMode = RenderMode.WIREFRAME;
+    private int lineBatchSize = DEFAULT_LINE_BATCH_SIZE;
+    // Сколько потоков закрашивают кадр в режиме FILLED. Каркас рисует GraphicsContext, он всегда в одном потоке.
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+    private boolean backFaceCulling;
+    private boolean levelOfDetail = true;
+
+    // Модель прошлого кадра и выбранный для нее уровень детализации, отдельно для каждого места в списке копий
+    private Model[] lodModels = new Model[1];
+    private int[] lodLevels = new int[1];
+    // Самый подробный уровень среди копий прошлого кадра
+    private int lodLevel;
+
+    // Одна модель рисуется как сцена из одной копии с единичной матрицей. Копия создается заново,
+    // только когда модель сменилась.
+    private ModelInstance singleInstance;
+    private List<ModelInstance> singleInstanceList;
+
+    // Все буферы и матрицы живут между кадрами, так что кадр не создает объектов, пока не поменялся размер окна
+    // или модель не стала больше
+    private final FrameBuffer frameBuffer = new FrameBuffer();
+    private final Rasterizer rasterizer = new Rasterizer();
+    private final Frustum frustum = new Frustum();
+    private final Clipper clipper = new Clipper();
+    private final TriangleBatch triangleBatch = new TriangleBatch();
+    private final TileRenderer.ChunkSetup chunkSetup = this::setupChunk;
+    private TileRenderer tileRenderer;
+    private WritableImage image;
+
+    // Преобразованные вершины (раскладка TRANSFORMED_VERTEX_SIZE из GraphicConveyor) и их маски плоскостей.
+    // Заполняются только для вершин видимых кусков.
+    private float[] transformedVertices = new float[0];
+    private int[] outcodes = new int[0];
+    // Пакетный перевод куска целиком внутри поля зрения пишет сюда, а потом раскладывает по transformedVertices
+    private float[] chunkScreenXs = new float[0];
+    private float[] chunkScreenYs = new float[0];
+    private float[] chunkDepths = new float[0];
+    private float[] chunkWs = new float[0];
+
+    // Куски, прошедшие проверку видимости в этом кадре, и лежат ли они в поле зрения целиком
+    private int[] visibleChunks = new int[0];
+    private boolean[] visibleChunkInside = new boolean[0];
+    private int visibleChunkCount;
+
+    // Состояние текущего пути при отрисовке ребер пакетами
+    private int edgesInBatch;
+    private int lastVertexInd;
+
+    // Кадр, модель и направление взгляда кадра, который сейчас закрашивается, для setupChunk
+    private FrameBuffer filledFrameBuffer;
+    private Model filledMesh;
+    private MeshRenderData filledRenderData;
+    private float viewDirectionX;
+    private float viewDirectionY;
+    private float viewDirectionZ;
+    // Переводит нормали полигонов копии из координат модели в мировые: обратная и транспонированная
+    // к линейной части матрицы модели, по строкам
+    private final float[] normalMatrix = new float[9];
+
+    // Положение камеры в координатах модели, с ним сравниваются плоскости полигонов
+    private float eyeX;
+    private float eyeY;
+    private float eyeZ;
+    // Повернут ли полигон polygonOrder[i] к камере. Заполняется в каркасном режиме только для видимых кусков.
+    private boolean[] frontFacing = new boolean[0];
+
+    private final FrameStats frameStats = new FrameStats();
+
+    private final Matrix4f modelMatrix = new Matrix4f();
+    private final Matrix4f viewMatrix = new Matrix4f();
+    private final Matrix4f projectionMatrix = new Matrix4f();
+    private final Matrix4f modelViewProjectionMatrix = new Matrix4f();
+    private final Matrix4f inverseModelMatrix = new Matrix4f();
+
+    public RenderMode getRenderMode() {
+        return renderMode;
+    }
+
+    public void setRenderMode(final RenderMode renderMode) {
+        this.renderMode = renderMode;
+    }
+
+    public int getLineBatchSize() {
+        return lineBatchSize;
+    }
+
+    public void setLineBatchSize(final int lineBatchSize) {
+        if (lineBatchSize < 1) {
+            throw new IllegalArgumentException("Размер пакета ребер должен быть положительным: " + lineBatchSize);
+        }
+        this.lineBatchSize = lineBatchSize;
+    }
+
+    public boolean isBackFaceCulling() {
+        return backFaceCulling;
+    }
+
+    // Грани, повернутые от камеры, не рисуются. Годится для замкнутых сеток с согласованным обходом:
+    // у каждой видимой точки такой сетки есть грань, повернутая к камере.
+    public void setBackFaceCulling(final boolean backFaceCulling) {
+        this.backFaceCulling = backFaceCulling;
+    }
+
+    public boolean isLevelOfDetail() {
+        return levelOfDetail;
+    }
+
+    // Вдали рисовать упрощенные версии модели из LevelOfDetail, если они уже построены
+    public void setLevelOfDetail(final boolean levelOfDetail) {
+        this.levelOfDetail = levelOfDetail;
+    }
+
+    // Уровень детализации последнего кадра, 0 - исходная модель. Для сцены - самый подробный из уровней копий.
+    public int getLevelOfDetailLevel() {
+        return lodLevel;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    // 1 - закраска в вызывающем потоке. Кадр от числа потоков не зависит.
+    public void setThreadCount(final int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Число потоков должно быть положительным: " + threadCount);
+        }
+        if (tileRenderer != null && tileRenderer.getThreadCount() != threadCount) {
+            tileRenderer.shutdown();
+            tileRenderer = null;
+        }
+        this.threadCount = threadCount;
+    }
+
+    // Замеры последних кадров, обновляются каждым вызовом render
+    public FrameStats getFrameStats() {
+        return frameStats;
+    }
+
+    public void render(
             final GraphicsContext graphicsContext,
             final Camera camera,
             final Model mesh,
             final int width,
             final int height)
     {
-        Matrix4f modelMatrix = rotateScaleTranslate();
-        Matrix4f viewMatrix = camera.getViewMatrix();
-        Matrix4f projectionMatrix = camera.getProjectionMatrix();
+        render(graphicsContext, camera, instancesOf(mesh), width, height);
+    }
+
+    // Копии рисуются по очереди в один кадр с общим буфером глубины. Преобразованные вершины и прочие буферы кадра
+    // переиспользуются от копии к копии, а данные для рендера строятся один раз на модель, так что память
+    // от числа копий не растет.
+    public void render(
+            final GraphicsContext graphicsContext,
+            final Camera camera,
+            final Scene scene,
+            final int width,
+            final int height)
+    {
+        render(graphicsContext, camera, scene.getInstances(), width, height);
+    }
+
+    private void render(
+            final GraphicsContext graphicsContext,
+            final Camera camera,
+            final List<ModelInstance> instances,
+            final int width,
+            final int height)
+    {
+        frameStats.beginFrame();
+        beginFrame(camera, instances.size());
+        frameStats.endStage(FrameStats.Stage.SETUP);
+
+        if (renderMode == RenderMode.FILLED) {
+            if (width > 0 && height > 0) {
+                frameBuffer.resize(width, height);
+                renderFilled(frameBuffer, camera, instances);
+                present(graphicsContext);
+                frameStats.endStage(FrameStats.Stage.PRESENT);
+            }
+        } else {
+            for (int instanceInd = 0; instanceInd < instances.size(); ++instanceInd) {
+                final Model drawnMesh = beginInstance(instances.get(instanceInd), instanceInd, camera, height);
+                if (drawnMesh == null) {
+                    continue;
+                }
+                final MeshRenderData renderData = MeshRenderData.of(drawnMesh);
+                frameStats.endStage(FrameStats.Stage.SETUP);
+                cullAndTransform(drawnMesh, renderData, width, height);
+                frameStats.endStage(FrameStats.Stage.TRANSFORM);
+                renderWireframe(graphicsContext, renderData, width, height);
+                frameStats.endStage(FrameStats.Stage.DRAW);
+            }
+        }
+        frameStats.endFrame();
+    }
+
+    // Кадр без холста и без JavaFX, размером с output. Всегда закраской, независимо от getRenderMode():
+    // каркас рисует GraphicsContext.
+    public void render(final FrameBuffer output, final Camera camera, final Model mesh) {
+        render(output, camera, instancesOf(mesh));
+    }
+
+    public void render(final FrameBuffer output, final Camera camera, final Scene scene) {
+        render(output, camera, scene.getInstances());
+    }
+
+    private void render(final FrameBuffer output, final Camera camera, final List<ModelInstance> instances) {
+        frameStats.beginFrame();
+        beginFrame(camera, instances.size());
+        frameStats.endStage(FrameStats.Stage.SETUP);
+        if (output.getWidth() > 0 && output.getHeight() > 0) {
+            renderFilled(output, camera, instances);
+        }
+        frameStats.endFrame();
+    }
+
+    // Сколько памяти держит модель вместе с тем, что рендер построил для нее: данными для рендера,
+    // разбиением на треугольники и уровнями детализации. Все это лежит в слабых таблицах по модели и живет,
+    // пока жива сама модель, так что кэш моделей должен считать и это. Непостроенное не считается.
+    public static long estimateRetainedBytes(final Model model) {
+        long result = model.estimateMemoryBytes();
+        final MeshRenderData renderData = MeshRenderData.get(model);
+        if (renderData != null) {
+            result += renderData.estimateMemoryBytes();
+        }
+        final LevelOfDetail lod = LevelOfDetail.get(model);
+        if (lod != null) {
+            result += lod.estimateMemoryBytes();
+        }
+        return result;
+    }
+
+    // Забывает модели прошлых кадров и отдает буферы, выросшие под самую большую из них. После этого движок
+    // не держит ни модель, ни ее данные для рендера, и их может собрать сборщик мусора. Следующий кадр
+    // заново выделит буферы под свою модель.
+    public void clear() {
+        singleInstance = null;
+        singleInstanceList = null;
+        Arrays.fill(lodModels, null);
+        transformedVertices = new float[0];
+        outcodes = new int[0];
+        chunkScreenXs = new float[0];
+        chunkScreenYs = new float[0];
+        chunkDepths = new float[0];
+        chunkWs = new float[0];
+        visibleChunks = new int[0];
+        visibleChunkInside = new boolean[0];
+        frontFacing = new boolean[0];
+    }
+
+    private List<ModelInstance> instancesOf(final Model mesh) {
+        if (singleInstance == null || singleInstance.getModel() != mesh) {
+            singleInstance = new ModelInstance(mesh);
+            singleInstanceList = List.of(singleInstance);
+        }
+        return singleInstanceList;
+    }
+
+    // Матрицы камеры, общие для всех копий кадра
+    private void beginFrame(final Camera camera, final int instanceCount) {
+        camera.getViewMatrix(viewMatrix);
+        camera.getProjectionMatrix(projectionMatrix);
+        if (lodLevels.length < instanceCount) {
+            lodModels = Arrays.copyOf(lodModels, instanceCount);
+            lodLevels = Arrays.copyOf(lodLevels, instanceCount);
+        }
+        lodLevel = instanceCount > 0 ? Integer.MAX_VALUE : 0;
+    }
+
+    // Матрицы копии и положение камеры в координатах ее модели. Возвращает модель, которую надо рисовать:
+    // саму модель копии или ее упрощенный уровень, или null, если матрица копии вырождена и рисовать нечего.
+    private Model beginInstance(
+            final ModelInstance instance, final int instanceInd, final Camera camera, final int height) {
+        modelMatrix.set(instance.getModelMatrix());
+        try {
+            inverseModelMatrix.setInverse(modelMatrix);
+        } catch (ArithmeticException e) {
+            return null;
+        }
+
+        // Векторы-столбцы: сначала модель, потом вид и проекция, поэтому P * V * M
+        modelViewProjectionMatrix.mul(projectionMatrix, viewMatrix);
+        modelViewProjectionMatrix.mul(modelMatrix);
+
+        final float[] m = inverseModelMatrix.getData();
+        if (backFaceCulling) {
+            final Vector3f position = camera.getPosition();
+            eyeX = m[0] * position.getX() + m[1] * position.getY() + m[2] * position.getZ() + m[3];
+            eyeY = m[4] * position.getX() + m[5] * position.getY() + m[6] * position.getZ() + m[7];
+            eyeZ = m[8] * position.getX() + m[9] * position.getY() + m[10] * position.getZ() + m[11];
+        }
+        for (int row = 0; row < 3; ++row) {
+            for (int column = 0; column < 3; ++column) {
+                normalMatrix[3 * row + column] = m[4 * column + row];
+            }
+        }
+
+        final Model drawnMesh = selectLevelOfDetail(instance.getModel(), camera, height, instanceInd);
+        lodLevel = Math.min(lodLevel, lodLevels[instanceInd]);
+        return drawnMesh;
+    }
+
+    // Самый грубый уровень, погрешность которого на экране не больше LOD_MAX_ERROR_PIXELS. Погрешность считается
+    // для ближайшей к камере точки ограничивающей сферы, так что дальние части модели видны не хуже ближних.
+    private Model selectLevelOfDetail(final Model mesh, final Camera camera, final int height, final int slot) {
+        final LevelOfDetail lod = levelOfDetail ? LevelOfDetail.get(mesh) : null;
+        if (mesh != lodModels[slot] || lod == null) {
+            lodModels[slot] = mesh;
+            lodLevels[slot] = 0;
+        }
+        if (lod == null || lod.getLevelCount() == 0) {
+            return mesh;
+        }
+        final int previousLevel = lodLevels[slot];
+
+        final float[] m = modelMatrix.getData();
+        final float centerX = m[0] * lod.getCenterX() + m[1] * lod.getCenterY() + m[2] * lod.getCenterZ() + m[3];
+        final float centerY = m[4] * lod.getCenterX() + m[5] * lod.getCenterY() + m[6] * lod.getCenterZ() + m[7];
+        final float centerZ = m[8] * lod.getCenterX() + m[9] * lod.getCenterY() + m[10] * lod.getCenterZ() + m[11];
+        // Наибольшее растяжение, которое дает матрица модели
+        final float scale = (float) Math.sqrt(Math.max(m[0] * m[0] + m[4] * m[4] + m[8] * m[8],
+                Math.max(m[1] * m[1] + m[5] * m[5] + m[9] * m[9], m[2] * m[2] + m[6] * m[6] + m[10] * m[10])));
+        final Vector3f position = camera.getPosition();
+        final float dx = position.getX() - centerX;
+        final float dy = position.getY() - centerY;
+        final float dz = position.getZ() - centerZ;
+        final float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz) - lod.getRadius() * scale;
+        if (!(distance > 0)) {
+            lodLevels[slot] = 0;
+            return mesh;
+        }
+        // Экранный y равен clipY / w * height, а clipY = m11 * y для проекции без сдвига
+        final float pixelsPerUnit = projectionMatrix.get(1, 1) * height * scale / distance;
+
+        int level = 0;
+        while (level < lod.getLevelCount() && lod.getCellSize(level + 1) * pixelsPerUnit <= LOD_MAX_ERROR_PIXELS) {
+            ++level;
+        }
+        if (level > previousLevel) {
+            int coarser = previousLevel;
+            while (coarser < level
+                    && lod.getCellSize(coarser + 1) * pixelsPerUnit <= LOD_MAX_ERROR_PIXELS * LOD_HYSTERESIS) {
+                ++coarser;
+            }
+            level = coarser;
+        }
+        lodLevels[slot] = level;
+        return level == 0 ? mesh : lod.getLevel(level);
+    }
+
+    // Куски модели вне поля зрения отбрасываются целиком, а вершины остальных переводятся на экран.
+    // Вершина на границе кусков переводится один раз на каждый видимый кусок, в который входит.
+    private void cullAndTransform(final Model mesh, final MeshRenderData renderData, final int width, final int height) {
+        final int nVertices = mesh.getVertexCount();
+        if (outcodes.length < nVertices) {
+            transformedVertices = new float[TRANSFORMED_VERTEX_SIZE * nVertices];
+            outcodes = new int[nVertices];
+        }
+        final int nChunks = renderData.getChunkCount();
+        if (visibleChunks.length < nChunks) {
+            visibleChunks = new int[nChunks];
+            visibleChunkInside = new boolean[nChunks];
+        }
+
+        frustum.update(modelViewProjectionMatrix);
+        final float[] vertices = mesh.getVertexData();
+        final float[] chunkBounds = renderData.getChunkBounds();
+        final int[] chunkVertexStarts = renderData.getChunkVertexStarts();
+        final int[] chunkVertices = renderData.getChunkVertices();
+
+        visibleChunkCount = 0;
+        // Копия целиком вне поля зрения или целиком внутри него проверяется один раз, а не по кускам
+        final int meshVisibility = nChunks > 0 ? frustum.classify(renderData.getBounds(), 0) : Frustum.OUTSIDE;
+        if (meshVisibility == Frustum.OUTSIDE) {
+            return;
+        }
+        for (int chunkInd = 0; chunkInd < nChunks; ++chunkInd) {
+            final int visibility = meshVisibility == Frustum.INSIDE
+                    ? Frustum.INSIDE
+                    : frustum.classify(chunkBounds, 6 * chunkInd);
+            if (visibility == Frustum.OUTSIDE) {
+                continue;
+            }
+            final int from = chunkVertexStarts[chunkInd];
+            final int to = chunkVertexStarts[chunkInd + 1];
+            frameStats.addVertices(to - from);
+            frameStats.addPolygons(renderData.getChunkPolygonEnd(chunkInd) - renderData.getChunkPolygonStart(chunkInd));
+            if (visibility == Frustum.INSIDE) {
+                transformInsideChunk(renderData, from, to, width, height);
+            } else {
+                // Координаты отсечения и маски нужны только там, где кусок пересекает границу видимого объема
+                transformVertices(modelViewProjectionMatrix, vertices, chunkVertices, from, to, width, height, transformedVertices);
+                Clipper.computeOutcodes(transformedVertices, chunkVertices, from, to, outcodes);
+            }
+            visibleChunks[visibleChunkCount] = chunkInd;
+            visibleChunkInside[visibleChunkCount] = visibility == Frustum.INSIDE;
+            ++visibleChunkCount;
+        }
+    }
+
+    // Куску целиком внутри поля зрения нужны только экранные координаты и глубина. Они считаются пакетно по
+    // разложенным подряд координатам куска и затем раскладываются по номерам вершин.
+    private void transformInsideChunk(
+            final MeshRenderData renderData,
+            final int from, final int to,
+            final int width, final int height) {
+        final int count = to - from;
+        if (chunkScreenXs.length < count) {
+            chunkScreenXs = new float[count];
+            chunkScreenYs = new float[count];
+            chunkDepths = new float[count];
+            chunkWs = new float[count];
+        }
+        transformVertices(
+                modelViewProjectionMatrix,
+                renderData.getChunkVertexXs(), renderData.getChunkVertexYs(), renderData.getChunkVertexZs(),
+                from, to, width, height,
+                chunkScreenXs, chunkScreenYs, chunkDepths, chunkWs);
+
+        final int[] chunkVertices = renderData.getChunkVertices();
+        final float[] points = transformedVertices;
+        for (int i = 0; i < count; ++i) {
+            final int offset = TRANSFORMED_VERTEX_SIZE * chunkVertices[from + i];
+            points[offset + SCREEN_X] = chunkScreenXs[i];
+            points[offset + SCREEN_Y] = chunkScreenYs[i];
+            points[offset + DEPTH] = chunkDepths[i];
+        }
+    }
+
+    private void renderWireframe(
+            final GraphicsContext graphicsContext,
+            final MeshRenderData renderData,
+            final int width,
+            final int height)
+    {
+        final float[] points = transformedVertices;
+        // Общие ребра соседних полигонов рисуются один раз
+        final int[] edges = renderData.getEdges();
+        final int[] chunkEdgeStarts = renderData.getChunkEdgeStarts();
+        // Ребро видно, если повернут к камере хотя бы один из его полигонов. Второй полигон может лежать
+        // в невидимом куске, и его флаг тогда устарел, но такое ребро целиком вне поля зрения и все равно отсекается.
+        final int[] edgePolygons = renderData.getEdgePolygons();
+        if (backFaceCulling) {
+            computeFrontFacing(renderData);
+        }
+
+        edgesInBatch = 0;
+        lastVertexInd = -1;
+        graphicsContext.beginPath();
+        for (int i = 0; i < visibleChunkCount; ++i) {
+            final int chunkInd = visibleChunks[i];
+            final boolean inside = visibleChunkInside[i];
+            final int chunkEdgeEnd = chunkEdgeStarts[chunkInd + 1];
+            for (int edgeInd = chunkEdgeStarts[chunkInd]; edgeInd < chunkEdgeEnd; ++edgeInd) {
+                if (backFaceCulling && !frontFacing[edgePolygons[2 * edgeInd]]) {
+                    final int second = edgePolygons[2 * edgeInd + 1];
+                    if (second == MeshRenderData.NO_POLYGON || (second >= 0 && !frontFacing[second])) {
+                        continue;
+                    }
+                }
+                final int fromInd = edges[2 * edgeInd];
+                final int toInd = edges[2 * edgeInd + 1];
+                if (!inside) {
+                    final int fromCode = outcodes[fromInd];
+                    final int toCode = outcodes[toInd];
+                    if ((fromCode & toCode & Clipper.OUTSIDE_VIEW) != 0) {
+                        continue;
+                    }
+                    final int clipMask = (fromCode | toCode) & Clipper.NEEDS_CLIPPING;
+                    if (clipMask != 0) {
+                        if (clipper.clipLine(points, fromInd, toInd, clipMask, width, height)) {
+                            drawEdge(graphicsContext, clipper.lineX0, clipper.lineY0, clipper.lineX1, clipper.lineY1, -1, -1);
+                        }
+                        continue;
+                    }
+                }
+                final int from = TRANSFORMED_VERTEX_SIZE * fromInd;
+                final int to = TRANSFORMED_VERTEX_SIZE * toInd;
+                drawEdge(graphicsContext,
+                        points[from + SCREEN_X], points[from + SCREEN_Y],
+                        points[to + SCREEN_X], points[to + SCREEN_Y],
+                        fromInd, toInd);
+            }
+        }
+        if (edgesInBatch > 0) {
+            graphicsContext.stroke();
+        }
+    }
+
+    // fromInd и toInd - номера вершин концов, -1 для обрезанного конца
+    private void drawEdge(
+            final GraphicsContext graphicsContext,
+            final double x0, final double y0, final double x1, final double y1,
+            final int fromInd, final int toInd)
+    {
+        if (lineBatchSize == 1) {
+            graphicsContext.strokeLine(x0, y0, x1, y1);
+            return;
+        }
+
+        // Ребро, продолжающее предыдущее, обходится без moveTo
+        if (fromInd < 0 || fromInd != lastVertexInd) {
+            graphicsContext.moveTo(x0, y0);
+        }
+        graphicsContext.lineTo(x1, y1);
+        lastVertexInd = toInd;
+
+        if (++edgesInBatch == lineBatchSize) {
+            graphicsContext.stroke();
+            graphicsContext.beginPath();
+            edgesInBatch = 0;
+            lastVertexInd = -1;
+        }
+    }
+
+    private void computeFrontFacing(final MeshRenderData renderData) {
+        final float[] planes = renderData.getPolygonPlanes();
+        final int nPolygons = renderData.getPolygonOrder().length;
+        if (frontFacing.length < nPolygons) {
+            frontFacing = new boolean[nPolygons];
+        }
+        for (int i = 0; i < visibleChunkCount; ++i) {
+            final int chunkInd = visibleChunks[i];
+            final int chunkPolygonEnd = renderData.getChunkPolygonEnd(chunkInd);
+            for (int orderInd = renderData.getChunkPolygonStart(chunkInd); orderInd < chunkPolygonEnd; ++orderInd) {
+                frontFacing[orderInd] = isFrontFacing(planes, orderInd);
+            }
+        }
+    }
+
+    // Полигон виден спереди, если камера лежит по ту сторону его плоскости, куда смотрит нормаль.
+    // Вырожденные полигоны с нулевой нормалью считаются видимыми.
+    private boolean isFrontFacing(final float[] planes, final int orderInd) {
+        final int offset = 4 * orderInd;
+        return planes[offset] * eyeX + planes[offset + 1] * eyeY + planes[offset + 2] * eyeZ >= planes[offset + 3];
+    }
+
+    private void renderFilled(
+            final FrameBuffer output,
+            final Camera camera,
+            final List<ModelInstance> instances)
+    {
+        final int width = output.getWidth();
+        final int height = output.getHeight();
+
+        // Грани освещаются со стороны камеры: чем прямее грань смотрит вдоль взгляда, тем она светлее
+        final Vector3f position = camera.getPosition();
+        final Vector3f target = camera.getTarget();
+        float viewX = target.getX() - position.getX();
+        float viewY = target.getY() - position.getY();
+        float viewZ = target.getZ() - position.getZ();
+        final float viewLength = (float) Math.sqrt(viewX * viewX + viewY * viewY + viewZ * viewZ);
+        if (viewLength > 0) {
+            viewX /= viewLength;
+            viewY /= viewLength;
+            viewZ /= viewLength;
+        }
+        viewDirectionX = viewX;
+        viewDirectionY = viewY;
+        viewDirectionZ = viewZ;
+        filledFrameBuffer = output;
+
+        try {
+            if (threadCount > 1 && tileRenderer == null) {
+                tileRenderer = new TileRenderer(threadCount);
+            }
+            // В один поток кадр очищается сразу, а TileRenderer очищает свои квадраты сам при первой закраске
+            boolean cleared = threadCount == 1;
+            if (cleared) {
+                output.clear(BACKGROUND_COLOR);
+            }
+            for (int instanceInd = 0; instanceInd < instances.size(); ++instanceInd) {
+                final Model drawnMesh = beginInstance(instances.get(instanceInd), instanceInd, camera, height);
+                if (drawnMesh == null) {
+                    continue;
+                }
+                final MeshRenderData renderData = MeshRenderData.of(drawnMesh);
+                frameStats.endStage(FrameStats.Stage.SETUP);
+                cullAndTransform(drawnMesh, renderData, width, height);
+                frameStats.endStage(FrameStats.Stage.TRANSFORM);
+                if (visibleChunkCount == 0 && cleared) {
+                    continue;
+                }
 
-        Matrix4f modelViewProjectionMatrix = new Matrix4f(modelMatrix);
-        modelViewProjectionMatrix.mul(viewMatrix);
-        modelViewProjectionMatrix.mul(projectionMatrix);
+                filledMesh = drawnMesh;
+                filledRenderData = renderData;
+                if (threadCount > 1) {
+                    tileRenderer.render(output, BACKGROUND_COLOR, !cleared, visibleChunkCount, chunkSetup);
+                    cleared = true;
+                } else {
+                    for (int i = 0; i < visibleChunkCount; ++i) {
+                        triangleBatch.clear();
+                        setupChunk(i, clipper, triangleBatch);
+                        for (int triangleInd = 0; triangleInd < triangleBatch.size(); ++triangleInd) {
+                            triangleBatch.fill(rasterizer, output, triangleInd, 0, 0, width - 1, height - 1);
+                        }
+                    }
+                }
+                frameStats.endStage(FrameStats.Stage.DRAW);
+            }
+            if (!cleared) {
+                output.clear(BACKGROUND_COLOR);
+            }
+        } finally {
+            filledFrameBuffer = null;
+            filledMesh = null;
+            filledRenderData = null;
+        }
+    }
 
-        final int nPolygons = mesh.polygons.size();
-        for (int polygonInd = 0; polygonInd < nPolygons; ++polygonInd) {
-            final int nVerticesInPolygon = mesh.polygons.get(polygonInd).getVertexIndices().size();
+    // Освещает и режет полигоны видимого куска с номером visibleInd и складывает получившиеся треугольники в out.
+    // В многопоточном режиме вызывается из нескольких потоков сразу, поэтому пишет только в out и clipper.
+    private void setupChunk(final int visibleInd, final Clipper clipper, final TriangleBatch out) {
+        final Model mesh = filledMesh;
+        final MeshRenderData renderData = filledRenderData;
+        final int width = filledFrameBuffer.getWidth();
+        final int height = filledFrameBuffer.getHeight();
+        final float viewX = viewDirectionX;
+        final float viewY = viewDirectionY;
+        final float viewZ = viewDirectionZ;
+        final float[] n = normalMatrix;
 
-            ArrayList<Point2f> resultPoints = new ArrayList<>();
-            for (int vertexInPolygonInd = 0; vertexInPolygonInd < nVerticesInPolygon; ++vertexInPolygonInd) {
-                Vector3f vertex = mesh.vertices.get(mesh.polygons.get(polygonInd).getVertexIndices().get(vertexInPolygonInd));
+        final float[] points = transformedVertices;
+        // Нормали по методу Ньюэла посчитаны заранее, они годятся и для неплоских полигонов
+        final float[] planes = renderData.getPolygonPlanes();
+        final int[] polygonStarts = mesh.getPolygonStarts();
+        final int[] polygonVertexIndices = mesh.getPolygonVertexIndices();
+        final int[] polygonOrder = renderData.getPolygonOrder();
+        // Треугольники полигонов построены при загрузке, невыпуклые полигоны в них уже разрезаны правильно
+        final int[] polygonTriangleStarts = renderData.getTriangulation().getPolygonTriangleStarts();
+        final int[] triangleVertexIndices = renderData.getTriangulation().getTriangleVertexIndices();
 
-                javax.vecmath.Vector3f vertexVecmath = new javax.vecmath.Vector3f(vertex.getX(), vertex.getY(), vertex.getZ());
+        final int chunkInd = visibleChunks[visibleInd];
+        final boolean inside = visibleChunkInside[visibleInd];
+        final int chunkPolygonEnd = renderData.getChunkPolygonEnd(chunkInd);
+        for (int orderInd = renderData.getChunkPolygonStart(chunkInd); orderInd < chunkPolygonEnd; ++orderInd) {
+            final int polygonInd = polygonOrder[orderInd];
+            final int polygonStart = polygonStarts[polygonInd];
+            final int polygonEnd = polygonStarts[polygonInd + 1];
+            if (polygonEnd - polygonStart < 3) {
+                continue;
+            }
+            if (backFaceCulling && !isFrontFacing(planes, orderInd)) {
+                continue;
+            }
 
-                Point2f resultPoint = vertexToPoint(multiplyMatrix4ByVector3(modelViewProjectionMatrix, vertexVecmath), width, height);
-                resultPoints.add(resultPoint);
+            int clipMask = 0;
+            if (!inside) {
+                int commonCode = -1;
+                for (int cornerInd = polygonStart; cornerInd < polygonEnd; ++cornerInd) {
+                    final int code = outcodes[polygonVertexIndices[cornerInd]];
+                    commonCode &= code;
+                    clipMask |= code;
+                }
+                if ((commonCode & Clipper.OUTSIDE_VIEW) != 0) {
+                    continue;
+                }
+                clipMask &= Clipper.NEEDS_CLIPPING;
             }
 
-            for (int vertexInPolygonInd = 1; vertexInPolygonInd < nVerticesInPolygon; ++vertexInPolygonInd) {
-                graphicsContext.strokeLine(
-                        resultPoints.get(vertexInPolygonInd - 1).x,
-                        resultPoints.get(vertexInPolygonInd - 1).y,
-                        resultPoints.get(vertexInPolygonInd).x,
-                        resultPoints.get(vertexInPolygonInd).y);
+            // Нормаль в мировых координатах, свет считается там же, где направление взгляда
+            final float planeX = planes[4 * orderInd];
+            final float planeY = planes[4 * orderInd + 1];
+            final float planeZ = planes[4 * orderInd + 2];
+            final float normalX = n[0] * planeX + n[1] * planeY + n[2] * planeZ;
+            final float normalY = n[3] * planeX + n[4] * planeY + n[5] * planeZ;
+            final float normalZ = n[6] * planeX + n[7] * planeY + n[8] * planeZ;
+            final float normalLength = (float) Math.sqrt(normalX * normalX + normalY * normalY + normalZ * normalZ);
+            final float lighting = normalLength > 0
+                    ? Math.abs(normalX * viewX + normalY * viewY + normalZ * viewZ) / normalLength
+                    : 0;
+            final int brightness = MIN_BRIGHTNESS + (int) (BRIGHTNESS_RANGE * lighting);
+            final int color = 0xFF000000 | (brightness << 16) | (brightness << 8) | brightness;
+
+            final int triangleEnd = polygonTriangleStarts[polygonInd + 1];
+            for (int triangleInd = polygonTriangleStarts[polygonInd]; triangleInd < triangleEnd; ++triangleInd) {
+                if (clipMask == 0) {
+                    out.add(points,
+                            TRANSFORMED_VERTEX_SIZE * triangleVertexIndices[3 * triangleInd] + SCREEN_X,
+                            TRANSFORMED_VERTEX_SIZE * triangleVertexIndices[3 * triangleInd + 1] + SCREEN_X,
+                            TRANSFORMED_VERTEX_SIZE * triangleVertexIndices[3 * triangleInd + 2] + SCREEN_X,
+                            color);
+                } else {
+                    // Обрезанный треугольник остается выпуклым, и его можно резать веером
+                    final int nClipped = clipper.clipPolygon(points, triangleVertexIndices,
+                            3 * triangleInd, 3 * triangleInd + 3, clipMask, width, height);
+                    final float[] clipped = clipper.getScreenPoints();
+                    for (int clippedInd = 2; clippedInd < nClipped; ++clippedInd) {
+                        out.add(clipped, 0, Clipper.SCREEN_POINT_SIZE * (clippedInd - 1),
+                                Clipper.SCREEN_POINT_SIZE * clippedInd, color);
+                    }
+                }
             }
+        }
+    }
 
-            if (nVerticesInPolygon > 0)
-                graphicsContext.strokeLine(
-                        resultPoints.get(nVerticesInPolygon - 1).x,
-                        resultPoints.get(nVerticesInPolygon - 1).y,
-                        resultPoints.get(0).x,
-                        resultPoints.get(0).y);
+    // Весь кадр уходит на холст одним вызовом
+    private void present(final GraphicsContext graphicsContext) {
+        final int width = frameBuffer.getWidth();
+        final int height = frameBuffer.getHeight();
+        if (image == null || (int) image.getWidth() != width || (int) image.getHeight() != height) {
+            image = new WritableImage(width, height);
         }
+        image.getPixelWriter().setPixels(0, 0, width, height,
+                PixelFormat.getIntArgbInstance(), frameBuffer.getColors(), 0, width);
+        graphicsContext.drawImage(image, 0, 0);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,8 @@
+package com.cgvsu.render_engine;
+
+public enum RenderMode {
+    // Только ребра полигонов
+    WIREFRAME,
+    // Закрашенные треугольники с буфером глубины
+    FILLED
+}
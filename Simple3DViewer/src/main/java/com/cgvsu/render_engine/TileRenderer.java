@@ -0,0 +1,240 @@
+package com.cgvsu.render_engine;
+
+import com.cgvsu.util.IntList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Закраска в несколько потоков. Кадр делится на квадраты TILE_SIZE x TILE_SIZE, и каждый квадрат целиком
+// закрашивает один поток из фиксированного пула: потоки пишут в разные пиксели FrameBuffer и обходятся без блокировок.
+//
+// Треугольники строятся тоже параллельно, группами подряд идущих видимых кусков, и раскладываются по квадратам,
+// которые задевают. Квадрат проходит группы по порядку, а треугольники группы в порядке построения, то есть каждый
+// пиксель видит те же треугольники в том же порядке, что и при закраске в один поток. Поэтому кадр совпадает
+// с однопоточным до бита, в том числе там, где глубины равны.
+//
+// Чтобы память не росла вместе с моделью, куски идут порциями по MAX_PORTION_CHUNKS: построить, закрасить, дальше.
+class TileRenderer {
+
+    // Строит в out треугольники видимого куска с номером visibleInd. Вызывается из разных потоков сразу,
+    // clipper у каждого потока свой.
+    interface ChunkSetup {
+        void setup(int visibleInd, Clipper clipper, TriangleBatch out);
+    }
+
+    static final int TILE_SIZE = 64;
+    // Групп на поток больше одной, чтобы поток, которому достались простые куски, взял следующую группу
+    private static final int GROUPS_PER_THREAD = 4;
+    // Соседние куски лежат рядом и на экране, поэтому порция должна покрывать заметную часть кадра,
+    // иначе всю закраску порции делают несколько потоков, чьи квадраты она задела
+    private static final int MAX_PORTION_CHUNKS = 512;
+
+    private final int threadCount;
+    private final ExecutorService executor;
+    private final List<Callable<Void>> setupTasks = new ArrayList<>();
+    private final List<Callable<Void>> fillTasks = new ArrayList<>();
+    private final AtomicInteger nextWorkInd = new AtomicInteger();
+    private final Rasterizer rasterizer = new Rasterizer();
+
+    // Треугольники группы и номера тех из них, что задевают квадрат: bins[group][tile]
+    private final TriangleBatch[] batches;
+    private final IntList[][] bins;
+
+    // Состояние текущего кадра
+    private FrameBuffer frameBuffer;
+    private ChunkSetup chunkSetup;
+    private int backgroundColor;
+    private int tilesX;
+    private int tileCount;
+    private int portionStart;
+    private int portionEnd;
+    private int groupCount;
+    private boolean firstPortion;
+
+    TileRenderer(final int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Число потоков должно быть положительным: " + threadCount);
+        }
+        this.threadCount = threadCount;
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "render-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        final int maxGroupCount = GROUPS_PER_THREAD * threadCount;
+        batches = new TriangleBatch[maxGroupCount];
+        bins = new IntList[maxGroupCount][];
+        for (int group = 0; group < maxGroupCount; ++group) {
+            batches[group] = new TriangleBatch();
+            bins[group] = new IntList[0];
+        }
+
+        for (int i = 0; i < threadCount; ++i) {
+            final Clipper clipper = new Clipper();
+            setupTasks.add(() -> {
+                int group;
+                while ((group = nextWorkInd.getAndIncrement()) < groupCount) {
+                    setupGroup(group, clipper);
+                }
+                return null;
+            });
+            fillTasks.add(() -> {
+                int tile;
+                while ((tile = nextWorkInd.getAndIncrement()) < tileCount) {
+                    fillTile(tile);
+                }
+                return null;
+            });
+        }
+    }
+
+    int getThreadCount() {
+        return threadCount;
+    }
+
+    // Закрашивает треугольники видимых кусков [0, chunkCount), а если clear, сначала очищает frameBuffer цветом
+    // backgroundColor. Без очистки рисует поверх того, что уже есть в кадре, с учетом его глубины.
+    void render(
+            final FrameBuffer frameBuffer,
+            final int backgroundColor,
+            final boolean clear,
+            final int chunkCount,
+            final ChunkSetup chunkSetup) {
+        this.frameBuffer = frameBuffer;
+        this.backgroundColor = backgroundColor;
+        this.chunkSetup = chunkSetup;
+        tilesX = (frameBuffer.getWidth() + TILE_SIZE - 1) / TILE_SIZE;
+        tileCount = tilesX * ((frameBuffer.getHeight() + TILE_SIZE - 1) / TILE_SIZE);
+        if (bins[0].length != tileCount) {
+            for (int group = 0; group < bins.length; ++group) {
+                bins[group] = new IntList[tileCount];
+                for (int tile = 0; tile < tileCount; ++tile) {
+                    bins[group][tile] = new IntList();
+                }
+            }
+        }
+
+        try {
+            // Даже без видимых кусков нужен один проход, чтобы очистить кадр
+            portionStart = 0;
+            firstPortion = clear;
+            do {
+                portionEnd = Math.min(chunkCount, portionStart + MAX_PORTION_CHUNKS);
+                groupCount = Math.min(batches.length, portionEnd - portionStart);
+                runAll(setupTasks);
+                runAll(fillTasks);
+                portionStart = portionEnd;
+                firstPortion = false;
+            } while (portionStart < chunkCount);
+        } finally {
+            this.frameBuffer = null;
+            this.chunkSetup = null;
+        }
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    private void runAll(final List<Callable<Void>> tasks) {
+        nextWorkInd.set(0);
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Отрисовка прервана", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    // Группа group получает куски [portionStart + group * n / groupCount, portionStart + (group + 1) * n / groupCount)
+    private void setupGroup(final int group, final Clipper clipper) {
+        final int portionSize = portionEnd - portionStart;
+        final int from = portionStart + (int) ((long) group * portionSize / groupCount);
+        final int to = portionStart + (int) ((long) (group + 1) * portionSize / groupCount);
+        final TriangleBatch batch = batches[group];
+        batch.clear();
+        for (int visibleInd = from; visibleInd < to; ++visibleInd) {
+            chunkSetup.setup(visibleInd, clipper, batch);
+        }
+
+        final IntList[] groupBins = bins[group];
+        for (IntList bin : groupBins) {
+            bin.clear();
+        }
+        final int width = frameBuffer.getWidth();
+        final int height = frameBuffer.getHeight();
+        final float[] points = batch.getPoints();
+        for (int triangleInd = 0; triangleInd < batch.size(); ++triangleInd) {
+            final int offset = TriangleBatch.TRIANGLE_SIZE * triangleInd;
+            final float x0 = points[offset];
+            final float y0 = points[offset + 1];
+            final float x1 = points[offset + 3];
+            final float y1 = points[offset + 4];
+            final float x2 = points[offset + 6];
+            final float y2 = points[offset + 7];
+            // Такие треугольники растеризатор все равно пропустит
+            if (!Rasterizer.isInGuardBand(x0, y0) || !Rasterizer.isInGuardBand(x1, y1)
+                    || !Rasterizer.isInGuardBand(x2, y2)) {
+                continue;
+            }
+            // С запасом в пиксель: лишний квадрат ничего не закрасит, а пропущенный дал бы дыру
+            final int minX = Math.max(0, (int) Math.floor(Math.min(x0, Math.min(x1, x2))) - 1);
+            final int maxX = Math.min(width - 1, (int) Math.ceil(Math.max(x0, Math.max(x1, x2))) + 1);
+            final int minY = Math.max(0, (int) Math.floor(Math.min(y0, Math.min(y1, y2))) - 1);
+            final int maxY = Math.min(height - 1, (int) Math.ceil(Math.max(y0, Math.max(y1, y2))) + 1);
+            if (minX > maxX || minY > maxY) {
+                continue;
+            }
+            for (int tileY = minY / TILE_SIZE; tileY <= maxY / TILE_SIZE; ++tileY) {
+                for (int tileX = minX / TILE_SIZE; tileX <= maxX / TILE_SIZE; ++tileX) {
+                    groupBins[tileY * tilesX + tileX].add(triangleInd);
+                }
+            }
+        }
+    }
+
+    private void fillTile(final int tile) {
+        final int width = frameBuffer.getWidth();
+        final int minX = (tile % tilesX) * TILE_SIZE;
+        final int minY = (tile / tilesX) * TILE_SIZE;
+        final int maxX = Math.min(width, minX + TILE_SIZE) - 1;
+        final int maxY = Math.min(frameBuffer.getHeight(), minY + TILE_SIZE) - 1;
+
+        if (firstPortion) {
+            final int[] colors = frameBuffer.getColors();
+            final float[] depths = frameBuffer.getDepths();
+            for (int y = minY; y <= maxY; ++y) {
+                Arrays.fill(colors, y * width + minX, y * width + maxX + 1, backgroundColor);
+                Arrays.fill(depths, y * width + minX, y * width + maxX + 1, Float.POSITIVE_INFINITY);
+            }
+        }
+
+        for (int group = 0; group < groupCount; ++group) {
+            final IntList bin = bins[group][tile];
+            final TriangleBatch batch = batches[group];
+            for (int i = 0; i < bin.size(); ++i) {
+                batch.fill(rasterizer, frameBuffer, bin.get(i), minX, minY, maxX, maxY);
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.cgvsu.render_engine;
+
+import java.util.Arrays;
+
+// Треугольники, готовые к закраске, в порядке построения: экранные x, y и глубина трех вершин и цвет.
+// Массивы растут по мере надобности и переиспользуются между кадрами.
+class TriangleBatch {
+
+    static final int TRIANGLE_SIZE = 9;
+
+    private float[] points = new float[TRIANGLE_SIZE * 1024];
+    private int[] colors = new int[1024];
+    private int size;
+
+    // Вершины берутся из source по смещениям first, second, third, у каждой подряд x, y и глубина
+    void add(final float[] source, final int first, final int second, final int third, final int color) {
+        if (size == colors.length) {
+            points = Arrays.copyOf(points, 2 * points.length);
+            colors = Arrays.copyOf(colors, 2 * colors.length);
+        }
+        final int offset = TRIANGLE_SIZE * size;
+        points[offset] = source[first];
+        points[offset + 1] = source[first + 1];
+        points[offset + 2] = source[first + 2];
+        points[offset + 3] = source[second];
+        points[offset + 4] = source[second + 1];
+        points[offset + 5] = source[second + 2];
+        points[offset + 6] = source[third];
+        points[offset + 7] = source[third + 1];
+        points[offset + 8] = source[third + 2];
+        colors[size] = color;
+        ++size;
+    }
+
+    void fill(
+            final Rasterizer rasterizer, final FrameBuffer frameBuffer, final int triangleInd,
+            final int clipMinX, final int clipMinY, final int clipMaxX, final int clipMaxY) {
+        final int offset = TRIANGLE_SIZE * triangleInd;
+        rasterizer.fillTriangle(frameBuffer,
+                points[offset], points[offset + 1], points[offset + 2],
+                points[offset + 3], points[offset + 4], points[offset + 5],
+                points[offset + 6], points[offset + 7], points[offset + 8],
+                colors[triangleInd],
+                clipMinX, clipMinY, clipMaxX, clipMaxY);
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    float[] getPoints() {
+        return points;
+    }
+}
@@ -0,0 +1,55 @@
+package com.cgvsu.render_engine;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorSpecies;
+
+// Векторная версия GraphicConveyor.transformVertices для координат, разложенных по отдельным массивам.
+// Класс трогает jdk.incubator.vector, поэтому загружается, только если модуль подключен
+// (java --add-modules jdk.incubator.vector ...), иначе GraphicConveyor считает то же самое скалярно.
+//
+// Умножения и сложения идут в том же порядке, что и в скалярном цикле, и без fma, поэтому результат
+// совпадает с ним до бита.
+final class VectorizedTransform {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    static final int LANES = SPECIES.length();
+
+    private VectorizedTransform() {
+    }
+
+    // Обрабатывает [from, from + k * LANES) и возвращает, докуда дошел. Хвост досчитывает вызывающий.
+    static int transformVertices(
+            final float[] m,
+            final float[] xs, final float[] ys, final float[] zs,
+            final int from, final int to,
+            final int width, final int height,
+            final float[] screenXs, final float[] screenYs, final float[] depths, final float[] ws) {
+        final float m00 = m[0], m01 = m[1], m02 = m[2], m03 = m[3];
+        final float m10 = m[4], m11 = m[5], m12 = m[6], m13 = m[7];
+        final float m20 = m[8], m21 = m[9], m22 = m[10], m23 = m[11];
+        final float m30 = m[12], m31 = m[13], m32 = m[14], m33 = m[15];
+        final float halfWidth = width / 2.0F;
+        final float halfHeight = height / 2.0F;
+
+        final int end = from + SPECIES.loopBound(to - from);
+        int i = from;
+        for (; i < end; i += LANES) {
+            final FloatVector x = FloatVector.fromArray(SPECIES, xs, i);
+            final FloatVector y = FloatVector.fromArray(SPECIES, ys, i);
+            final FloatVector z = FloatVector.fromArray(SPECIES, zs, i);
+
+            final FloatVector clipX = x.mul(m00).add(y.mul(m01)).add(z.mul(m02)).add(m03);
+            final FloatVector clipY = x.mul(m10).add(y.mul(m11)).add(z.mul(m12)).add(m13);
+            final FloatVector clipZ = x.mul(m20).add(y.mul(m21)).add(z.mul(m22)).add(m23);
+            final FloatVector w = x.mul(m30).add(y.mul(m31)).add(z.mul(m32)).add(m33);
+
+            final int resultInd = i - from;
+            clipX.div(w).mul((float) width).add(halfWidth).intoArray(screenXs, resultInd);
+            clipY.neg().div(w).mul((float) height).add(halfHeight).intoArray(screenYs, resultInd);
+            clipZ.div(w).intoArray(depths, resultInd);
+            w.intoArray(ws, resultInd);
+        }
+        return i;
+    }
+}
@@ -0,0 +1,95 @@
+package com.cgvsu.scene;
+
+import com.cgvsu.math.Matrix4f;
+import com.cgvsu.math.Vector3f;
+import com.cgvsu.model.Model;
+
+// Копия модели в сцене: ссылка на общую Model и свои масштаб, поворот и перенос. Вершины копии не хранятся,
+// так что сотня копий занимает в памяти столько же, сколько одна модель, плюс матрица на каждую.
+public class ModelInstance {
+
+    private final Model model;
+
+    private float scaleX = 1;
+    private float scaleY = 1;
+    private float scaleZ = 1;
+    // Углы в радианах, поворот сначала вокруг x, потом y, потом z
+    private float angleX;
+    private float angleY;
+    private float angleZ;
+    private float translationX;
+    private float translationY;
+    private float translationZ;
+
+    // Пересчитывается при первом запросе после изменения
+    private final Matrix4f modelMatrix = new Matrix4f();
+    private boolean modelMatrixValid;
+    private long version;
+
+    public ModelInstance(Model model) {
+        if (model == null) {
+            throw new IllegalArgumentException("У копии должна быть модель");
+        }
+        this.model = model;
+    }
+
+    public Model getModel() {
+        return model;
+    }
+
+    public Vector3f getScale() {
+        return new Vector3f(scaleX, scaleY, scaleZ);
+    }
+
+    public ModelInstance setScale(float x, float y, float z) {
+        scaleX = x;
+        scaleY = y;
+        scaleZ = z;
+        changed();
+        return this;
+    }
+
+    public Vector3f getRotation() {
+        return new Vector3f(angleX, angleY, angleZ);
+    }
+
+    public ModelInstance setRotation(float x, float y, float z) {
+        angleX = x;
+        angleY = y;
+        angleZ = z;
+        changed();
+        return this;
+    }
+
+    public Vector3f getTranslation() {
+        return new Vector3f(translationX, translationY, translationZ);
+    }
+
+    public ModelInstance setTranslation(float x, float y, float z) {
+        translationX = x;
+        translationY = y;
+        translationZ = z;
+        changed();
+        return this;
+    }
+
+    // Матрица модели T * R * S. Возвращается внутренняя матрица, менять ее нельзя.
+    public Matrix4f getModelMatrix() {
+        if (!modelMatrixValid) {
+            modelMatrix.setRotateScaleTranslate(
+                    scaleX, scaleY, scaleZ, angleX, angleY, angleZ, translationX, translationY, translationZ);
+            modelMatrixValid = true;
+        }
+        return modelMatrix;
+    }
+
+    // Растет при каждом изменении масштаба, поворота или переноса
+    public long getVersion() {
+        return version;
+    }
+
+    private void changed() {
+        modelMatrixValid = false;
+        ++version;
+    }
+}
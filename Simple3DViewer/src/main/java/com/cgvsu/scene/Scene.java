@@ -0,0 +1,67 @@
+package com.cgvsu.scene;
+
+import com.cgvsu.model.Model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Набор копий моделей, которые рисуются в одном кадре. Копии одной модели делят ее вершины и все, что
+// RenderEngine для нее построил: данные для рендера, треугольники, уровни детализации.
+public class Scene {
+
+    private final List<ModelInstance> instances = new ArrayList<>();
+    // Вместе с версиями копий дает getVersion. Удаление прибавляет версию удаленной копии,
+    // чтобы сумма не уменьшилась.
+    private long structureVersion;
+
+    public ModelInstance add(Model model) {
+        ModelInstance instance = new ModelInstance(model);
+        add(instance);
+        return instance;
+    }
+
+    public void add(ModelInstance instance) {
+        if (instance == null) {
+            throw new IllegalArgumentException("Копия не может быть null");
+        }
+        instances.add(instance);
+        ++structureVersion;
+    }
+
+    public boolean remove(ModelInstance instance) {
+        if (!instances.remove(instance)) {
+            return false;
+        }
+        structureVersion += instance.getVersion() + 1;
+        return true;
+    }
+
+    public void clear() {
+        for (ModelInstance instance : instances) {
+            structureVersion += instance.getVersion() + 1;
+        }
+        instances.clear();
+    }
+
+    public List<ModelInstance> getInstances() {
+        return Collections.unmodifiableList(instances);
+    }
+
+    public int size() {
+        return instances.size();
+    }
+
+    public boolean isEmpty() {
+        return instances.isEmpty();
+    }
+
+    // Растет при любом изменении сцены: добавлении и удалении копий и изменении матрицы любой копии
+    public long getVersion() {
+        long result = structureVersion;
+        for (ModelInstance instance : instances) {
+            result += instance.getVersion();
+        }
+        return result;
+    }
+}
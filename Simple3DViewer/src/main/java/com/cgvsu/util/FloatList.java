@@ -0,0 +1,114 @@
+package com.cgvsu.util;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+// Растущий массив float без упаковки в Float. Нужен там, где ArrayList<Float> или список векторов
+// слишком дорог по памяти: на каждое число там приходится отдельный объект.
+public class FloatList {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private float[] data;
+    private int size;
+
+    public FloatList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public FloatList(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Вместимость не может быть отрицательной: " + capacity);
+        }
+        data = new float[capacity];
+    }
+
+    // Оборачивает готовый массив без копирования, все его элементы считаются значащими
+    public static FloatList wrap(float[] values) {
+        FloatList result = new FloatList(0);
+        result.data = values;
+        result.size = values.length;
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public float get(int index) {
+        Objects.checkIndex(index, size);
+        return data[index];
+    }
+
+    public void set(int index, float value) {
+        Objects.checkIndex(index, size);
+        data[index] = value;
+    }
+
+    public void add(float value) {
+        ensureCapacity(size + 1);
+        data[size++] = value;
+    }
+
+    public void add(float first, float second) {
+        ensureCapacity(size + 2);
+        data[size] = first;
+        data[size + 1] = second;
+        size += 2;
+    }
+
+    public void add(float first, float second, float third) {
+        ensureCapacity(size + 3);
+        data[size] = first;
+        data[size + 1] = second;
+        data[size + 2] = third;
+        size += 3;
+    }
+
+    public void addAll(float[] values, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, values.length);
+        ensureCapacity(size + length);
+        System.arraycopy(values, offset, data, size, length);
+        size += length;
+    }
+
+    public void addAll(FloatList other) {
+        addAll(other.data, 0, other.size);
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new OutOfMemoryError("Слишком большой массив");
+        }
+        if (capacity > data.length) {
+            int grown = data.length + (data.length >> 1) + 1;
+            if (grown < capacity || grown < 0) {
+                grown = capacity;
+            }
+            data = Arrays.copyOf(data, grown);
+        }
+    }
+
+    public void trimToSize() {
+        if (size < data.length) {
+            data = Arrays.copyOf(data, size);
+        }
+    }
+
+    // Возвращает внутренний массив без копирования. Значащие только первые size() элементов,
+    // и после следующего add массив может быть заменен другим.
+    public float[] elements() {
+        return data;
+    }
+
+    public float[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+}
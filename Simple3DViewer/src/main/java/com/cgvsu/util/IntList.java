@@ -0,0 +1,125 @@
+package com.cgvsu.util;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+// Растущий массив int без упаковки в Integer, пара к FloatList
+public class IntList {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] data;
+    private int size;
+
+    public IntList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntList(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Вместимость не может быть отрицательной: " + capacity);
+        }
+        data = new int[capacity];
+    }
+
+    // Оборачивает готовый массив без копирования, все его элементы считаются значащими
+    public static IntList wrap(int[] values) {
+        IntList result = new IntList(0);
+        result.data = values;
+        result.size = values.length;
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int get(int index) {
+        Objects.checkIndex(index, size);
+        return data[index];
+    }
+
+    public void set(int index, int value) {
+        Objects.checkIndex(index, size);
+        data[index] = value;
+    }
+
+    public void add(int value) {
+        ensureCapacity(size + 1);
+        data[size++] = value;
+    }
+
+    public void add(int first, int second) {
+        ensureCapacity(size + 2);
+        data[size] = first;
+        data[size + 1] = second;
+        size += 2;
+    }
+
+    public void add(int first, int second, int third) {
+        ensureCapacity(size + 3);
+        data[size] = first;
+        data[size + 1] = second;
+        data[size + 2] = third;
+        size += 3;
+    }
+
+    public void addAll(int[] values, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, values.length);
+        ensureCapacity(size + length);
+        System.arraycopy(values, offset, data, size, length);
+        size += length;
+    }
+
+    public void addAll(IntList other) {
+        addAll(other.data, 0, other.size);
+    }
+
+    public void addRepeated(int value, int count) {
+        ensureCapacity(size + count);
+        Arrays.fill(data, size, size + count, value);
+        size += count;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    // Отбрасывает элементы с номерами от size и дальше
+    public void truncate(int size) {
+        Objects.checkIndex(size, this.size + 1);
+        this.size = size;
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new OutOfMemoryError("Слишком большой массив");
+        }
+        if (capacity > data.length) {
+            int grown = data.length + (data.length >> 1) + 1;
+            if (grown < capacity || grown < 0) {
+                grown = capacity;
+            }
+            data = Arrays.copyOf(data, grown);
+        }
+    }
+
+    public void trimToSize() {
+        if (size < data.length) {
+            data = Arrays.copyOf(data, size);
+        }
+    }
+
+    // Возвращает внутренний массив без копирования. Значащие только первые size() элементов,
+    // и после следующего add массив может быть заменен другим.
+    public int[] elements() {
+        return data;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+}
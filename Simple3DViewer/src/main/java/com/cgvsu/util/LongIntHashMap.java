@@ -0,0 +1,179 @@
+package com.cgvsu.util;
+
+import java.util.Arrays;
+
+// Хэш-таблица long -> int с открытой адресацией и линейным пробированием, без упаковки ключей и значений.
+// Удаления нет: таблица нужна для построения индексов вроде "ребро -> номер ребра", где ключи только добавляются.
+public class LongIntHashMap {
+    private static final int MIN_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    // Этим ключом помечаются свободные ячейки, поэтому сам он хранится отдельно от таблицы
+    private static final long FREE_KEY = 0;
+
+    private final int missingValue;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+
+    private boolean hasFreeKey;
+    private int freeKeyValue;
+
+    // missingValue возвращается для ключей, которых нет в таблице
+    public LongIntHashMap(int expectedSize, int missingValue) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Ожидаемый размер не может быть отрицательным: " + expectedSize);
+        }
+        this.missingValue = missingValue;
+        allocate(capacityFor(expectedSize));
+    }
+
+    public int size() {
+        return size + (hasFreeKey ? 1 : 0);
+    }
+
+    public int get(long key) {
+        if (key == FREE_KEY) {
+            return hasFreeKey ? freeKeyValue : missingValue;
+        }
+        int slot = slotOf(key);
+        while (true) {
+            final long current = keys[slot];
+            if (current == key) {
+                return values[slot];
+            }
+            if (current == FREE_KEY) {
+                return missingValue;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public boolean containsKey(long key) {
+        if (key == FREE_KEY) {
+            return hasFreeKey;
+        }
+        int slot = slotOf(key);
+        while (true) {
+            final long current = keys[slot];
+            if (current == key) {
+                return true;
+            }
+            if (current == FREE_KEY) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    // Кладет значение, только если ключа еще нет. Возвращает прежнее значение или missingValue, если ключ добавлен.
+    // Так проверка и вставка обходятся одним поиском.
+    public int putIfAbsent(long key, int value) {
+        if (key == FREE_KEY) {
+            if (hasFreeKey) {
+                return freeKeyValue;
+            }
+            hasFreeKey = true;
+            freeKeyValue = value;
+            return missingValue;
+        }
+        int slot = slotOf(key);
+        while (true) {
+            final long current = keys[slot];
+            if (current == key) {
+                return values[slot];
+            }
+            if (current == FREE_KEY) {
+                keys[slot] = key;
+                values[slot] = value;
+                if (++size >= resizeThreshold) {
+                    rehash(keys.length * 2);
+                }
+                return missingValue;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public void put(long key, int value) {
+        if (key == FREE_KEY) {
+            hasFreeKey = true;
+            freeKeyValue = value;
+            return;
+        }
+        int slot = slotOf(key);
+        while (true) {
+            final long current = keys[slot];
+            if (current == key) {
+                values[slot] = value;
+                return;
+            }
+            if (current == FREE_KEY) {
+                keys[slot] = key;
+                values[slot] = value;
+                if (++size >= resizeThreshold) {
+                    rehash(keys.length * 2);
+                }
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE_KEY);
+        size = 0;
+        hasFreeKey = false;
+    }
+
+    private int slotOf(long key) {
+        // Перемешивание из MurmurHash3, чтобы ключи из соседних индексов не ложились подряд
+        long hash = key * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 32;
+        hash ^= hash >>> 16;
+        return (int) hash & mask;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        final long needed = (long) Math.ceil(expectedSize / (double) LOAD_FACTOR) + 1;
+        if (needed > MAX_CAPACITY) {
+            throw new OutOfMemoryError("Слишком большая хэш-таблица");
+        }
+        int capacity = MIN_CAPACITY;
+        while (capacity < needed) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash(int capacity) {
+        if (capacity > MAX_CAPACITY) {
+            throw new OutOfMemoryError("Слишком большая хэш-таблица");
+        }
+        final long[] oldKeys = keys;
+        final int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; ++i) {
+            final long key = oldKeys[i];
+            if (key != FREE_KEY) {
+                int slot = slotOf(key);
+                while (keys[slot] != FREE_KEY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
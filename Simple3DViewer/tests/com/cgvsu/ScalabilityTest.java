@@ -0,0 +1,188 @@
+package com.cgvsu;
+
+import com.cgvsu.math.Vector3f;
+import com.cgvsu.model.Model;
+import com.cgvsu.objreader.ObjGenerator;
+import com.cgvsu.objreader.ObjReader;
+import com.cgvsu.render_engine.Camera;
+import com.cgvsu.render_engine.FrameBuffer;
+import com.cgvsu.render_engine.RenderEngine;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+
+// Загрузка и рендер моделей из ObjGenerator растущего размера. По замерам строится наклон log(замер) от log(граней):
+// 1 - линейный рост, 2 - квадратичный. Тест падает, если наклон заметно больше единицы.
+//
+// По умолчанию размеры маленькие, чтобы тест шел секунды, и проверяется только память (выделенная и занятая
+// моделью): от нагрузки машины она не зависит. Время на таких размерах - в основном постоянные расходы кадра
+// и шум, и его наклон ничего не говорит. Проверка времени включается ключом -Dscalability.timing=true
+// или заданием своих размеров, и тогда по умолчанию размеры крупнее. Настоящие размеры:
+// -Dscalability.faces=1000000,10000000,50000000 (и -Xmx с запасом: 50M граней в памяти - несколько гигабайт)
+class ScalabilityTest {
+
+    private static final boolean TIMING = Boolean.parseBoolean(System.getProperty("scalability.timing",
+            String.valueOf(System.getProperty("scalability.faces") != null)));
+    // На крупных размерах постоянные расходы уже не заметны на фоне работы, пропорциональной модели
+    private static final String DEFAULT_FACE_COUNTS = TIMING
+            ? "250000,500000,1000000,2000000"
+            : "20000,40000,80000,160000";
+    private static final long[] FACE_COUNTS = Arrays.stream(
+            System.getProperty("scalability.faces", DEFAULT_FACE_COUNTS).split(","))
+            .mapToLong(count -> Long.parseLong(count.trim()))
+            .toArray();
+    // Время шумит сильнее памяти, и на маленьких моделях его занижают постоянные расходы
+    private static final double MAX_TIME_EXPONENT =
+            Double.parseDouble(System.getProperty("scalability.maxTimeExponent", "1.3"));
+    private static final double MAX_MEMORY_EXPONENT =
+            Double.parseDouble(System.getProperty("scalability.maxMemoryExponent", "1.1"));
+    // Растущие списки удваивают вместимость, поэтому выделенная за чтение память растет ступеньками
+    private static final double MAX_ALLOCATION_EXPONENT =
+            Double.parseDouble(System.getProperty("scalability.maxAllocationExponent", "1.25"));
+    // Из нескольких повторов берется лучший: так меньше влияют сборка мусора и JIT
+    private static final int REPETITIONS = 3;
+    private static final int FRAME_SIZE = 256;
+    private static final long SEED = 1;
+
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @TempDir
+    static Path directory;
+
+    @Test
+    public void testObjReaderScaling() throws IOException {
+        for (ObjGenerator.Shape shape : ObjGenerator.Shape.values()) {
+            // Первый прогон на самом маленьком файле только прогревает JIT
+            ObjReader.read(generate(shape, FACE_COUNTS[0]));
+
+            final int n = FACE_COUNTS.length;
+            long[] faces = new long[n];
+            long[] times = new long[n];
+            long[] allocated = new long[n];
+            long[] retained = new long[n];
+            for (int i = 0; i < n; ++i) {
+                final Path path = generate(shape, FACE_COUNTS[i]);
+                times[i] = Long.MAX_VALUE;
+                allocated[i] = Long.MAX_VALUE;
+                for (int repetition = 0; repetition < REPETITIONS; ++repetition) {
+                    System.gc();
+                    final long allocatedBefore = THREAD_BEAN.getCurrentThreadAllocatedBytes();
+                    final long start = System.nanoTime();
+                    Model model = ObjReader.read(path);
+                    times[i] = Math.min(times[i], System.nanoTime() - start);
+                    allocated[i] = Math.min(allocated[i], THREAD_BEAN.getCurrentThreadAllocatedBytes() - allocatedBefore);
+                    faces[i] = model.getPolygonCount();
+                    retained[i] = model.estimateMemoryBytes();
+                }
+            }
+
+            assertTimeLinear("ObjReader " + shape + " time, ns", faces, times);
+            assertLinear("ObjReader " + shape + " allocated, bytes", faces, allocated, MAX_ALLOCATION_EXPONENT);
+            assertLinear("ObjReader " + shape + " model, bytes", faces, retained, MAX_MEMORY_EXPONENT);
+        }
+    }
+
+    @Test
+    public void testRenderEngineScaling() throws IOException {
+        for (ObjGenerator.Shape shape : ObjGenerator.Shape.values()) {
+            RenderEngine renderEngine = new RenderEngine();
+            renderEngine.setThreadCount(1);
+            renderEngine.setLevelOfDetail(false);
+            FrameBuffer frameBuffer = new FrameBuffer(FRAME_SIZE, FRAME_SIZE);
+            Camera camera = new Camera(
+                    new Vector3f(2.0F, 1.5F, 3.0F), new Vector3f(0, 0, 0), 1.0F, 1.0F, 0.1F, 100);
+            renderEngine.render(frameBuffer, camera, ObjReader.read(generate(shape, FACE_COUNTS[0])));
+
+            final int n = FACE_COUNTS.length;
+            long[] faces = new long[n];
+            long[] firstFrameTimes = new long[n];
+            long[] firstFrameAllocated = new long[n];
+            long[] frameTimes = new long[n];
+            for (int i = 0; i < n; ++i) {
+                final Path path = generate(shape, FACE_COUNTS[i]);
+                firstFrameTimes[i] = Long.MAX_VALUE;
+                firstFrameAllocated[i] = Long.MAX_VALUE;
+                frameTimes[i] = Long.MAX_VALUE;
+                for (int repetition = 0; repetition < REPETITIONS; ++repetition) {
+                    // Данные для рендера запоминаются по модели, поэтому для каждого первого кадра модель новая
+                    Model model = ObjReader.read(path);
+                    faces[i] = model.getPolygonCount();
+                    System.gc();
+
+                    // Первый кадр еще строит данные для рендера, часть работы идет в потоках ForkJoinPool
+                    final long allocatedBefore = allThreadsAllocatedBytes();
+                    long start = System.nanoTime();
+                    renderEngine.render(frameBuffer, camera, model);
+                    firstFrameTimes[i] = Math.min(firstFrameTimes[i], System.nanoTime() - start);
+                    firstFrameAllocated[i] = Math.min(firstFrameAllocated[i], allThreadsAllocatedBytes() - allocatedBefore);
+
+                    start = System.nanoTime();
+                    renderEngine.render(frameBuffer, camera, model);
+                    frameTimes[i] = Math.min(frameTimes[i], System.nanoTime() - start);
+                }
+            }
+
+            assertTimeLinear("RenderEngine " + shape + " first frame, ns", faces, firstFrameTimes);
+            assertLinear("RenderEngine " + shape + " first frame allocated, bytes",
+                    faces, firstFrameAllocated, MAX_ALLOCATION_EXPONENT);
+            assertTimeLinear("RenderEngine " + shape + " frame, ns", faces, frameTimes);
+        }
+    }
+
+    private static Path generate(ObjGenerator.Shape shape, long faceCount) throws IOException {
+        final Path path = directory.resolve(shape.name().toLowerCase(Locale.ROOT) + "-" + faceCount + ".obj");
+        if (!path.toFile().exists()) {
+            ObjGenerator.write(path, shape, faceCount, SEED);
+        }
+        return path;
+    }
+
+    // Потоки, которые закончились между замерами, не учитываются, поэтому это оценка снизу
+    private static long allThreadsAllocatedBytes() {
+        long total = 0;
+        for (long allocated : THREAD_BEAN.getThreadAllocatedBytes(THREAD_BEAN.getAllThreadIds())) {
+            total += Math.max(0, allocated);
+        }
+        return total;
+    }
+
+    private static void assertTimeLinear(String name, long[] faces, long[] values) {
+        if (TIMING) {
+            assertLinear(name, faces, values, MAX_TIME_EXPONENT);
+        }
+    }
+
+    // Наклон прямой, которая по методу наименьших квадратов ближе всего к точкам (log(faces), log(values))
+    private static void assertLinear(String name, long[] faces, long[] values, double maxExponent) {
+        final int n = faces.length;
+        double meanX = 0;
+        double meanY = 0;
+        for (int i = 0; i < n; ++i) {
+            meanX += Math.log(faces[i]) / n;
+            meanY += Math.log(Math.max(1, values[i])) / n;
+        }
+        double covariance = 0;
+        double variance = 0;
+        for (int i = 0; i < n; ++i) {
+            final double dx = Math.log(faces[i]) - meanX;
+            covariance += dx * (Math.log(Math.max(1, values[i])) - meanY);
+            variance += dx * dx;
+        }
+        final double exponent = variance > 0 ? covariance / variance : 0;
+
+        StringBuilder report = new StringBuilder(String.format(Locale.ROOT, "%s: exponent %.2f", name, exponent));
+        for (int i = 0; i < n; ++i) {
+            report.append(String.format(Locale.ROOT, "%n  %,d faces -> %,d", faces[i], values[i]));
+        }
+        System.out.println(report);
+        Assertions.assertTrue(exponent <= maxExponent,
+                String.format(Locale.ROOT, "superlinear growth, allowed exponent %.2f%n%s", maxExponent, report));
+    }
+}
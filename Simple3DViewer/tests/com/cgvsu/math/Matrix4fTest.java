@@ -0,0 +1,72 @@
+package com.cgvsu.math;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class Matrix4fTest {
+
+    private static final float EPS = 1e-5f;
+
+    @Test
+    public void testMul01() {
+        // Сначала масштаб, потом перенос: точка (1, 1, 1) уходит в (2 + 1, 2 + 2, 2 + 3)
+        Matrix4f translation = new Matrix4f().setTranslation(1, 2, 3);
+        Matrix4f scale = new Matrix4f().setScale(2, 2, 2);
+        Matrix4f matrix = new Matrix4f().mul(translation, scale);
+
+        Vector4f result = matrix.transformPoint(new Vector3f(1, 1, 1), new Vector4f());
+        Assertions.assertEquals(3, result.getX(), EPS);
+        Assertions.assertEquals(4, result.getY(), EPS);
+        Assertions.assertEquals(5, result.getZ(), EPS);
+        Assertions.assertEquals(1, result.getW(), EPS);
+
+        // Результат можно писать в один из множителей
+        translation.mul(translation, scale);
+        for (int i = 0; i < 16; i++) {
+            Assertions.assertEquals(matrix.getData()[i], translation.getData()[i], EPS);
+        }
+    }
+
+    @Test
+    public void testInvert01() {
+        Matrix4f matrix = new Matrix4f().setRotationY(0.7f);
+        matrix.mul(new Matrix4f().setTranslation(-3, 5, 2));
+        Matrix4f product = new Matrix4f(matrix).invert().mul(matrix);
+        Matrix4f identity = Matrix4f.identity();
+        for (int i = 0; i < 16; i++) {
+            Assertions.assertEquals(identity.getData()[i], product.getData()[i], EPS);
+        }
+
+        Assertions.assertThrows(ArithmeticException.class, () -> new Matrix4f().invert());
+    }
+
+    @Test
+    public void testInvert02() {
+        // Перевод миллиметров в метры: определитель 1e-9, но матрица не вырождена
+        Matrix4f matrix = new Matrix4f().setRotateScaleTranslate(0.001f, 0.001f, 0.001f, 0.4f, 1.2f, -0.3f, 5, 0, -2);
+        // M * M^-1, а не M^-1 * M: у обратной матрицы перенос порядка тысяч, и погрешность float там больше EPS
+        Matrix4f product = new Matrix4f().mul(matrix, new Matrix4f(matrix).invert());
+        Matrix4f identity = Matrix4f.identity();
+        for (int i = 0; i < 16; i++) {
+            Assertions.assertEquals(identity.getData()[i], product.getData()[i], EPS);
+        }
+
+        // Сплющенная по одной оси матрица вырождена при любом масштабе
+        Assertions.assertThrows(ArithmeticException.class, () -> new Matrix4f().setScale(1000, 1000, 0).invert());
+    }
+
+    @Test
+    public void testRotateScaleTranslate01() {
+        // Готовая матрица совпадает с произведением T * Rz * Ry * Rx * S
+        Matrix4f expected = new Matrix4f().setTranslation(1, -2, 3);
+        expected.mul(new Matrix4f().setRotationZ(0.3f));
+        expected.mul(new Matrix4f().setRotationY(-1.1f));
+        expected.mul(new Matrix4f().setRotationX(2.0f));
+        expected.mul(new Matrix4f().setScale(2, 0.5f, -1));
+
+        Matrix4f matrix = new Matrix4f().setRotateScaleTranslate(2, 0.5f, -1, 2.0f, -1.1f, 0.3f, 1, -2, 3);
+        for (int i = 0; i < 16; i++) {
+            Assertions.assertEquals(expected.getData()[i], matrix.getData()[i], EPS);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.cgvsu.model;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class ModelSimplifierTest {
+
+    @Test
+    public void testSimplify01() {
+        // Сфера радиуса 1 из четырехугольников: упрощенная меньше, а вершины остаются рядом со сферой
+        final int nu = 64;
+        final int nv = 32;
+        float[] vertices = new float[3 * nu * (nv + 1)];
+        int vertexOffset = 0;
+        for (int j = 0; j <= nv; j++) {
+            final double theta = Math.PI * j / nv;
+            for (int i = 0; i < nu; i++) {
+                final double phi = 2 * Math.PI * i / nu;
+                vertices[vertexOffset++] = (float) (Math.sin(theta) * Math.cos(phi));
+                vertices[vertexOffset++] = (float) Math.cos(theta);
+                vertices[vertexOffset++] = (float) (Math.sin(theta) * Math.sin(phi));
+            }
+        }
+        int[] polygonStarts = new int[nu * nv + 1];
+        int[] polygonVertexIndices = new int[4 * nu * nv];
+        int cornerInd = 0;
+        for (int j = 0; j < nv; j++) {
+            for (int i = 0; i < nu; i++) {
+                polygonStarts[j * nu + i] = cornerInd;
+                polygonVertexIndices[cornerInd++] = j * nu + i;
+                polygonVertexIndices[cornerInd++] = j * nu + (i + 1) % nu;
+                polygonVertexIndices[cornerInd++] = (j + 1) * nu + (i + 1) % nu;
+                polygonVertexIndices[cornerInd++] = (j + 1) * nu + i;
+            }
+        }
+        polygonStarts[nu * nv] = cornerInd;
+        Model model = new Model(vertices, new float[0], new float[0],
+                polygonStarts, polygonVertexIndices, new int[0], new int[0]);
+
+        final float cellSize = 0.25F;
+        Model simplified = ModelSimplifier.simplify(model, -1, -1, -1, cellSize);
+        Assertions.assertTrue(simplified.getPolygonCount() > 0);
+        Assertions.assertTrue(simplified.getPolygonCount() < model.getPolygonCount() / 2);
+        Assertions.assertTrue(simplified.getVertexCount() < model.getVertexCount() / 2);
+
+        final float[] result = simplified.getVertexData();
+        for (int vertexInd = 0; vertexInd < simplified.getVertexCount(); vertexInd++) {
+            final double x = result[3 * vertexInd];
+            final double y = result[3 * vertexInd + 1];
+            final double z = result[3 * vertexInd + 2];
+            Assertions.assertEquals(1, Math.sqrt(x * x + y * y + z * z), cellSize);
+        }
+        final int[] resultStarts = simplified.getPolygonStarts();
+        for (int polygonInd = 0; polygonInd < simplified.getPolygonCount(); polygonInd++) {
+            Assertions.assertTrue(resultStarts[polygonInd + 1] - resultStarts[polygonInd] >= 3);
+        }
+    }
+}
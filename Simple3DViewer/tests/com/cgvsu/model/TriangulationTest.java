@@ -0,0 +1,53 @@
+package com.cgvsu.model;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class TriangulationTest {
+
+    private static final float EPS = 1e-5f;
+
+    @Test
+    public void testTriangulate01() {
+        // Квадрат режется веером из первой вершины, треугольник остается как есть
+        Model model = new Model(
+                new float[]{0, 0, 0, 1, 0, 0, 1, 1, 0, 0, 1, 0},
+                new float[0], new float[0],
+                new int[]{0, 4, 7},
+                new int[]{0, 1, 2, 3, 0, 1, 2},
+                new int[0], new int[0]);
+        Triangulation triangulation = Triangulation.of(model);
+
+        Assertions.assertEquals(3, triangulation.getTriangleCount());
+        Assertions.assertArrayEquals(new int[]{0, 1, 2, 0, 2, 3, 0, 1, 2}, triangulation.getTriangleVertexIndices());
+        Assertions.assertArrayEquals(new int[]{0, 0, 1}, triangulation.getTrianglePolygons());
+        Assertions.assertArrayEquals(new int[]{0, 2, 3}, triangulation.getPolygonTriangleStarts());
+    }
+
+    @Test
+    public void testTriangulate02() {
+        // Невыпуклый полигон в форме буквы L площадью 3. Веер из вершины 3 вылез бы за полигон,
+        // а правильное разбиение покрывает его без наложений: все треугольники обходятся в ту же сторону
+        // и в сумме дают ту же площадь.
+        float[] vertices = {0, 0, 0, 2, 0, 0, 2, 1, 0, 1, 1, 0, 1, 2, 0, 0, 2, 0};
+        Model model = new Model(vertices, new float[0], new float[0],
+                new int[]{0, 6},
+                new int[]{3, 4, 5, 0, 1, 2},
+                new int[0], new int[0]);
+        Triangulation triangulation = Triangulation.of(model);
+
+        Assertions.assertEquals(4, triangulation.getTriangleCount());
+        final int[] triangles = triangulation.getTriangleVertexIndices();
+        float totalArea = 0;
+        for (int triangleInd = 0; triangleInd < 4; triangleInd++) {
+            final int a = triangles[3 * triangleInd];
+            final int b = triangles[3 * triangleInd + 1];
+            final int c = triangles[3 * triangleInd + 2];
+            final float area = ((vertices[3 * b] - vertices[3 * a]) * (vertices[3 * c + 1] - vertices[3 * a + 1])
+                    - (vertices[3 * b + 1] - vertices[3 * a + 1]) * (vertices[3 * c] - vertices[3 * a])) / 2;
+            Assertions.assertTrue(area > 0);
+            totalArea += area;
+        }
+        Assertions.assertEquals(3, totalArea, EPS);
+    }
+}
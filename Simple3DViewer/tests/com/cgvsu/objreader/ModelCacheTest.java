@@ -0,0 +1,72 @@
+package com.cgvsu.objreader;
+
+import com.cgvsu.model.Model;
+import com.cgvsu.render_engine.LevelOfDetail;
+import com.cgvsu.render_engine.MeshRenderData;
+import com.cgvsu.render_engine.RenderEngine;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+class ModelCacheTest {
+
+    private static final int FILE_COUNT = 6;
+    private static final long FACE_COUNT = 20000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testRetainedBytes01() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        for (int i = 0; i < FILE_COUNT; ++i) {
+            Path path = directory.resolve("sphere" + i + ".obj");
+            ObjGenerator.write(path, ObjGenerator.Shape.SPHERE, FACE_COUNT, i);
+            paths.add(path);
+        }
+
+        // Данные для рендера и уровни весят больше самой модели, так что по одним массивам модели
+        // в бюджет поместились бы все файлы, а на деле помещаются два
+        Model sample = ObjReader.read(paths.get(0));
+        MeshRenderData.of(sample);
+        LevelOfDetail.build(sample);
+        final long retainedBytes = RenderEngine.estimateRetainedBytes(sample);
+        Assertions.assertTrue(retainedBytes > 2 * sample.estimateMemoryBytes());
+        final long maxBytes = retainedBytes * 5 / 2;
+        Assertions.assertTrue(FILE_COUNT * sample.estimateMemoryBytes() < maxBytes);
+        sample = null;
+
+        ModelCache cache = new ModelCache(maxBytes, RenderEngine::estimateRetainedBytes);
+        List<WeakReference<Model>> loaded = new ArrayList<>();
+        for (Path path : paths) {
+            // Как в окне: данные для рендера строятся после загрузки, уровни - еще позже
+            Model model = cache.load(path);
+            MeshRenderData.of(model);
+            cache.remeasure();
+            LevelOfDetail.build(model);
+            cache.remeasure();
+            loaded.add(new WeakReference<>(model));
+            Assertions.assertTrue(cache.getCurrentBytes() <= maxBytes);
+        }
+        Assertions.assertEquals(2, cache.getModelCount());
+
+        // Живы только модели, которые держит кэш, и вместе со всем построенным они укладываются в бюджет
+        for (int i = 0; i < 5; ++i) {
+            System.gc();
+        }
+        long reachableBytes = 0;
+        for (WeakReference<Model> reference : loaded) {
+            Model model = reference.get();
+            if (model != null) {
+                reachableBytes += RenderEngine.estimateRetainedBytes(model);
+            }
+        }
+        Assertions.assertTrue(reachableBytes <= maxBytes, reachableBytes + " > " + maxBytes);
+    }
+}
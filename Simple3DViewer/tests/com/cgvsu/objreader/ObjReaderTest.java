@@ -1,11 +1,24 @@
 package com.cgvsu.objreader;
 
 import com.cgvsu.math.Vector3f;
+import com.cgvsu.model.Model;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 class ObjReaderTest {
 
@@ -63,4 +76,126 @@ class ObjReaderTest {
             Assertions.assertEquals(expectedError, exception.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testParseFloat01() {
+        String[] words = {"1.01", "-0.5", "+2", "1e-3", "3.4028235e38", "0.30000001192092896", "1.", ".5", "-0", "NaN", "1e-42"};
+        for (String word : words) {
+            byte[] bytes = word.getBytes();
+            Assertions.assertEquals(Float.parseFloat(word), ObjTokenizer.parseFloat(bytes, 0, bytes.length));
+        }
+    }
+
+    // Длинные мантиссы рядом с серединой между соседними float: double из 16-18 цифр уже округлен,
+    // и второе округление до float уходит не в ту сторону
+    @Test
+    public void testParseFloat02() {
+        ArrayList<String> words = new ArrayList<>(Arrays.asList(
+                "0.90575566887855529", "0.9057556688785553", "1.00000005960464477", "16777217.0000000001"));
+        Random random = new Random(1);
+        for (int i = 0; i < 2000; ++i) {
+            final float value = Float.intBitsToFloat(random.nextInt(0x7F000000) & 0x7FFFFFFF);
+            if (!Float.isFinite(value) || value < Float.MIN_NORMAL) {
+                continue;
+            }
+            BigDecimal midpoint = new BigDecimal(value).add(new BigDecimal(Math.nextUp(value))).divide(BigDecimal.valueOf(2));
+            for (int digits = 15; digits <= 18; ++digits) {
+                words.add(midpoint.round(new MathContext(digits, RoundingMode.UP)).toString());
+                words.add(midpoint.round(new MathContext(digits, RoundingMode.DOWN)).toString());
+            }
+        }
+        for (String word : words) {
+            byte[] bytes = word.getBytes();
+            Assertions.assertEquals(Float.parseFloat(word), ObjTokenizer.parseFloat(bytes, 0, bytes.length), word);
+        }
+    }
+
+    @Test
+    public void testRead01() {
+        Model result = ObjReader.read("v 1 2 3\r\nv 4 5 6\nv 7 8 9\rvt 0.5 0.5\n\nf 1/1 2/1 3/1\n");
+        Assertions.assertEquals(3, result.vertices.size());
+        Assertions.assertEquals(1, result.textureVertices.size());
+        Assertions.assertEquals(1, result.polygons.size());
+        Assertions.assertEquals(Arrays.asList(0, 1, 2), result.polygons.get(0).getVertexIndices());
+        Assertions.assertEquals(Arrays.asList(0, 0, 0), result.polygons.get(0).getTextureVertexIndices());
+    }
+
+    @Test
+    public void testRead02() {
+        // Строка из одних пробелов в нумерацию не попадает, пустая строка попадает
+        try {
+            ObjReader.read("v 1 2 3\n   \n\nf 1/2/3/4\n");
+            Assertions.fail();
+        } catch (ObjReaderException exception) {
+            String expectedError = "Error parsing OBJ file on line: 3. Invalid element size.";
+            Assertions.assertEquals(expectedError, exception.getMessage());
+        }
+    }
+
+    @Test
+    public void testReadParallel01() throws IOException {
+        // Файл больше нескольких кусков, чтобы границы точно попали внутрь данных
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 200000; ++i) {
+            content.append("v ").append(i).append(" 0.5 -1.25\r\n");
+            if (i > 2) {
+                content.append("f ").append(i - 2).append("//1 ").append(i - 1).append("//1 ").append(i).append("//1\n");
+            }
+        }
+        content.append("\n   \nvn 0 0 x\n");
+        Path file = Files.createTempFile("parallel", ".obj");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Files.writeString(file, content.toString());
+            try {
+                ObjReader.readParallel(file, pool);
+                Assertions.fail();
+            } catch (ObjReaderException exception) {
+                // 200000 вершин, 199997 полигонов, пустая строка считается, строка из пробелов - нет
+                Assertions.assertEquals(399999, exception.getLineInd());
+            }
+
+            Files.writeString(file, content.substring(0, content.lastIndexOf("vn")));
+            Model sequential = ObjReader.read(file);
+            Model parallel = ObjReader.readParallel(file, pool);
+            Assertions.assertEquals(sequential.vertices.size(), parallel.vertices.size());
+            Assertions.assertEquals(sequential.polygons.size(), parallel.polygons.size());
+            for (int i = 0; i < sequential.polygons.size(); ++i) {
+                Assertions.assertEquals(
+                        sequential.polygons.get(i).getVertexIndices(),
+                        parallel.polygons.get(i).getVertexIndices());
+            }
+        } finally {
+            pool.shutdown();
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testMeshCache01() throws IOException {
+        Path file = Files.createTempFile("cache", ".obj");
+        Path cache = MeshCache.cachePathFor(file);
+        try {
+            Files.writeString(file, "v 0 0 0\nv 1 0 0\nv 0 1 0\nf 1 2 3\n");
+            MeshCache.write(ObjReader.read(file), cache, file);
+            Assertions.assertEquals(3, MeshCache.read(cache, file).getVertexCount());
+
+            // Последнее число в файле - индекс вершины последнего угла. Заголовок при этом остается верным.
+            try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.WRITE)) {
+                ByteBuffer index = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).putInt(0, 3);
+                channel.write(index, channel.size() - Integer.BYTES);
+            }
+            Assertions.assertNull(MeshCache.read(cache, file));
+
+            // Кэш, который не читается вовсе, тоже промах: модель берется из OBJ
+            Files.delete(cache);
+            Files.createDirectory(cache);
+            Files.createFile(cache.resolve("busy"));
+            Assertions.assertEquals(3, MeshCache.load(file).getVertexCount());
+            Files.delete(cache.resolve("busy"));
+        } finally {
+            Files.deleteIfExists(cache);
+            Files.delete(file);
+        }
+    }
+}
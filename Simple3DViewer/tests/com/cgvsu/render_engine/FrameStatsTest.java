@@ -0,0 +1,52 @@
+package com.cgvsu.render_engine;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+class FrameStatsTest {
+
+    @Test
+    public void testFrameStats01() throws IOException {
+        // Кольцевой буфер хранит только последние CAPACITY кадров, старые вытесняются
+        FrameStats stats = new FrameStats();
+        final int frames = FrameStats.CAPACITY + 10;
+        for (int i = 0; i < frames; ++i) {
+            stats.beginFrame();
+            stats.addVertices(i);
+            stats.addPolygons(2 * i);
+            stats.endStage(FrameStats.Stage.SETUP);
+            stats.endFrame();
+        }
+
+        Assertions.assertEquals(frames, stats.getFrameCount());
+        Assertions.assertEquals(FrameStats.CAPACITY, stats.size());
+        Assertions.assertEquals(10, stats.getVertexCount(0));
+        Assertions.assertEquals(2L * (frames - 1), stats.getPolygonCount(stats.size() - 1));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> stats.getFrameTime(FrameStats.CAPACITY));
+
+        StringWriter csv = new StringWriter();
+        stats.writeCsv(csv);
+        Assertions.assertEquals(FrameStats.CAPACITY + 1, csv.toString().split("\n").length);
+
+        // Концы строк одинаковые на любой платформе: заголовок, кадры, две закрывающие скобки
+        StringWriter json = new StringWriter();
+        stats.writeJson(json);
+        Assertions.assertFalse(json.toString().contains("\r"));
+        Assertions.assertEquals(FrameStats.CAPACITY + 5, json.toString().split("\n").length);
+    }
+
+    @Test
+    public void testFrameStats02() {
+        FrameStats stats = new FrameStats();
+        Assertions.assertEquals(0, stats.getFrameTimePercentile(99));
+        for (int i = 0; i < 100; ++i) {
+            stats.beginFrame();
+            stats.endFrame();
+        }
+        Assertions.assertTrue(stats.getFrameTimePercentile(50) <= stats.getFrameTimePercentile(99));
+        Assertions.assertTrue(stats.getFrameTimePercentile(100) >= stats.getFrameTime(stats.size() - 1));
+    }
+}
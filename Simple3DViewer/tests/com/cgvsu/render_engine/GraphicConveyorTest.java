@@ -0,0 +1,45 @@
+package com.cgvsu.render_engine;
+
+import com.cgvsu.math.Matrix4f;
+import com.cgvsu.math.Vector2f;
+import com.cgvsu.math.Vector3f;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+class GraphicConveyorTest {
+
+    @Test
+    public void testTransformVertices01() {
+        // Пакетный перевод дает то же, что перевод по одной вершине, в том числе на хвосте короче вектора
+        final int count = 37;
+        Random random = new Random(1);
+        float[] xs = new float[count];
+        float[] ys = new float[count];
+        float[] zs = new float[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = random.nextFloat() * 10 - 5;
+            ys[i] = random.nextFloat() * 10 - 5;
+            zs[i] = random.nextFloat() * 10 - 5;
+        }
+        Matrix4f matrix = GraphicConveyor.perspective(1.0F, 1.5F, 0.1F, 100)
+                .mul(GraphicConveyor.lookAt(new Vector3f(3, 4, 20), new Vector3f(0, 0, 0)));
+
+        final int from = 3;
+        float[] screenXs = new float[count - from];
+        float[] screenYs = new float[count - from];
+        float[] depths = new float[count - from];
+        float[] ws = new float[count - from];
+        GraphicConveyor.transformVertices(matrix, xs, ys, zs, from, count, 600, 400, screenXs, screenYs, depths, ws);
+
+        for (int i = from; i < count; i++) {
+            Vector3f projected = GraphicConveyor.multiplyMatrix4ByVector3(matrix, new Vector3f(xs[i], ys[i], zs[i]));
+            Vector2f point = GraphicConveyor.vertexToPoint(projected, 600, 400);
+            Assertions.assertEquals(point.getX(), screenXs[i - from], 1e-3f);
+            Assertions.assertEquals(point.getY(), screenYs[i - from], 1e-3f);
+            Assertions.assertEquals(projected.getZ(), depths[i - from], 1e-6f);
+            Assertions.assertTrue(ws[i - from] > 0);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.cgvsu.render_engine;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class RasterizerTest {
+
+    private static final int BACKGROUND = 0;
+
+    @Test
+    public void testFillTriangle01() {
+        // Два треугольника квадрата с общей диагональю покрывают каждый пиксель ровно один раз
+        FrameBuffer frameBuffer = new FrameBuffer(8, 8);
+        frameBuffer.clear(BACKGROUND);
+        Rasterizer rasterizer = new Rasterizer();
+        rasterizer.fillTriangle(frameBuffer, 0, 0, 0, 8, 0, 0, 8, 8, 0, 1);
+        rasterizer.fillTriangle(frameBuffer, 0, 0, 0, 8, 8, 0, 0, 8, 0, 2);
+
+        int first = 0;
+        int second = 0;
+        for (int color : frameBuffer.getColors()) {
+            Assertions.assertNotEquals(BACKGROUND, color);
+            first += color == 1 ? 1 : 0;
+            second += color == 2 ? 1 : 0;
+        }
+        Assertions.assertEquals(64, first + second);
+        Assertions.assertEquals(36, first);
+    }
+
+    @Test
+    public void testFillTriangle02() {
+        // Ближний треугольник закрывает дальний независимо от порядка отрисовки
+        FrameBuffer frameBuffer = new FrameBuffer(4, 4);
+        frameBuffer.clear(BACKGROUND);
+        Rasterizer rasterizer = new Rasterizer();
+        rasterizer.fillTriangle(frameBuffer, -4, -4, 0.1f, 12, -4, 0.1f, -4, 12, 0.1f, 1);
+        rasterizer.fillTriangle(frameBuffer, -4, -4, 0.5f, 12, -4, 0.5f, -4, 12, 0.5f, 2);
+
+        for (int i = 0; i < 16; ++i) {
+            Assertions.assertEquals(1, frameBuffer.getColors()[i]);
+            Assertions.assertEquals(0.1f, frameBuffer.getDepths()[i], 1e-6f);
+        }
+    }
+}
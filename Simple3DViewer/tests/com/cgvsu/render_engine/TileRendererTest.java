@@ -0,0 +1,61 @@
+package com.cgvsu.render_engine;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+class TileRendererTest {
+
+    private static final int BACKGROUND = 0xFFFFFFFF;
+
+    @Test
+    public void testRender01() {
+        // Кадр из нескольких потоков совпадает с однопоточным до бита, хотя треугольники перекрываются,
+        // часто имеют равную глубину и вылезают за край кадра
+        final int width = 150;
+        final int height = 100;
+        final int chunkCount = 700;
+        final int trianglesPerChunk = 5;
+        Random random = new Random(1);
+        float[] points = new float[TriangleBatch.TRIANGLE_SIZE * chunkCount * trianglesPerChunk];
+        int[] colors = new int[chunkCount * trianglesPerChunk];
+        for (int i = 0; i < points.length; i++) {
+            if (i % 3 == 2) {
+                points[i] = random.nextInt(4);
+            } else {
+                points[i] = random.nextFloat() * 200 - 25;
+            }
+        }
+        for (int i = 0; i < colors.length; i++) {
+            colors[i] = random.nextInt();
+        }
+        TileRenderer.ChunkSetup setup = (visibleInd, clipper, out) -> {
+            for (int i = visibleInd * trianglesPerChunk; i < (visibleInd + 1) * trianglesPerChunk; i++) {
+                final int offset = TriangleBatch.TRIANGLE_SIZE * i;
+                out.add(points, offset, offset + 3, offset + 6, colors[i]);
+            }
+        };
+
+        FrameBuffer expected = new FrameBuffer(width, height);
+        expected.clear(BACKGROUND);
+        Rasterizer rasterizer = new Rasterizer();
+        TriangleBatch batch = new TriangleBatch();
+        for (int chunkInd = 0; chunkInd < chunkCount; chunkInd++) {
+            setup.setup(chunkInd, null, batch);
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            batch.fill(rasterizer, expected, i, 0, 0, width - 1, height - 1);
+        }
+
+        TileRenderer tileRenderer = new TileRenderer(3);
+        FrameBuffer actual = new FrameBuffer(width, height);
+        try {
+            tileRenderer.render(actual, BACKGROUND, true, chunkCount, setup);
+        } finally {
+            tileRenderer.shutdown();
+        }
+        Assertions.assertArrayEquals(expected.getColors(), actual.getColors());
+        Assertions.assertArrayEquals(expected.getDepths(), actual.getDepths());
+    }
+}
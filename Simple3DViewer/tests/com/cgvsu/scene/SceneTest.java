@@ -0,0 +1,56 @@
+package com.cgvsu.scene;
+
+import com.cgvsu.math.Matrix4f;
+import com.cgvsu.math.Vector3f;
+import com.cgvsu.math.Vector4f;
+import com.cgvsu.model.Model;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class SceneTest {
+
+    private static final float EPS = 1e-5f;
+
+    @Test
+    public void testVersion01() {
+        // Версия сцены растет при любом изменении, в том числе при удалении копии, которую успели подвигать
+        Model model = new Model();
+        Scene scene = new Scene();
+        long version = scene.getVersion();
+
+        ModelInstance first = scene.add(model);
+        Assertions.assertTrue(scene.getVersion() > version);
+        version = scene.getVersion();
+
+        ModelInstance second = scene.add(model);
+        second.setTranslation(1, 2, 3).setScale(2, 2, 2);
+        Assertions.assertTrue(scene.getVersion() > version);
+        version = scene.getVersion();
+
+        Assertions.assertTrue(scene.remove(second));
+        Assertions.assertTrue(scene.getVersion() > version);
+        Assertions.assertFalse(scene.remove(second));
+        Assertions.assertSame(model, first.getModel());
+        Assertions.assertEquals(1, scene.size());
+    }
+
+    @Test
+    public void testModelMatrix01() {
+        // Точка (1, 0, 0): масштаб 2 дает (2, 0, 0), поворот на 90 градусов вокруг z - (0, 2, 0), перенос - (5, 2, -1)
+        ModelInstance instance = new ModelInstance(new Model())
+                .setScale(2, 2, 2)
+                .setRotation(0, 0, (float) (Math.PI / 2))
+                .setTranslation(5, 0, -1);
+        Matrix4f matrix = instance.getModelMatrix();
+
+        Vector4f result = matrix.transformPoint(new Vector3f(1, 0, 0), new Vector4f());
+        Assertions.assertEquals(5, result.getX(), EPS);
+        Assertions.assertEquals(2, result.getY(), EPS);
+        Assertions.assertEquals(-1, result.getZ(), EPS);
+
+        // Матрица пересчитывается после изменения
+        instance.setTranslation(0, 0, 0);
+        result = instance.getModelMatrix().transformPoint(new Vector3f(1, 0, 0), result);
+        Assertions.assertEquals(0, result.getX(), EPS);
+    }
+}